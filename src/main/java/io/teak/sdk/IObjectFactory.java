@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import io.teak.sdk.io.IAndroidDeviceInfo;
 import io.teak.sdk.io.IAndroidResources;
+import io.teak.sdk.io.ITransport;
 import io.teak.sdk.push.IPushProvider;
 import io.teak.sdk.store.IStore;
 
@@ -19,4 +20,12 @@ public interface IObjectFactory {
 
     @Nullable
     IPushProvider getPushProvider();
+
+    /**
+     * @return Transport for all SDK network traffic, or null to use the SDK's own.
+     */
+    @Nullable
+    default ITransport getTransport() {
+        return null;
+    }
 }
@@ -22,7 +22,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import io.teak.sdk.configuration.AppConfiguration;
 import io.teak.sdk.configuration.RemoteConfiguration;
-import io.teak.sdk.core.ThreadFactory;
+import io.teak.sdk.core.Executors;
 import io.teak.sdk.event.RemoteConfigurationEvent;
 import io.teak.sdk.io.ManifestParser;
 
@@ -199,18 +199,18 @@ public class IntegrationChecker {
 
         // Run checks on a background thread
         // Activity launch mode should be 'singleTask', 'singleTop' or 'singleInstance'
-        ThreadFactory.autoStart(this::checkActivityLaunchMode);
+        Executors.execute(this::checkActivityLaunchMode);
 
         TeakEvent.addEventListener(event -> {
             if (event.eventType.equals(RemoteConfigurationEvent.Type)) {
                 final RemoteConfiguration remoteConfiguration = ((RemoteConfigurationEvent) event).remoteConfiguration;
                 onRemoteConfigurationReady(remoteConfiguration);
             }
-        });
+        }, RemoteConfigurationEvent.Type);
 
         // If < API 26, the manifest checker will work properly, otherwise it will not
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
-            TeakConfiguration.addEventListener(configuration -> ThreadFactory.autoStart(this::checkAndroidManifest));
+            TeakConfiguration.addEventListener(configuration -> Executors.execute(this::checkAndroidManifest));
         }
     }
 
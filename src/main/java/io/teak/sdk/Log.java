@@ -1,9 +1,5 @@
 package io.teak.sdk;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -16,11 +12,11 @@ import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import io.teak.sdk.core.Executors;
+import io.teak.sdk.io.IHttpRequest;
+import io.teak.sdk.io.Transports;
 import io.teak.sdk.json.JSONObject;
 import io.teak.sdk.raven.Raven;
 
@@ -306,43 +302,13 @@ private void logEvent(final @NonNull LogEvent logEvent) {
     // Remote logging
     if (this.logRemotely) {
         this.remoteLogQueue.execute(() -> {
-            HttpsURLConnection connection = null;
             try {
                 URL endpoint = sendToRapidIngestion ? new URL("https://logs.gocarrot.com/dev.sdk.log." + logEvent.logLevel.name)
                                                     : new URL("https://logs.gocarrot.com/sdk.log." + logEvent.logLevel.name);
-                connection = (HttpsURLConnection) endpoint.openConnection();
-                connection.setRequestProperty("Accept-Charset", "UTF-8");
-                connection.setUseCaches(false);
-                connection.setDoOutput(true);
-                connection.setRequestProperty("Content-Type", "application/json");
-                //connection.setRequestProperty("Content-Encoding", "gzip");
-
-                //GZIPOutputStream wr = new GZIPOutputStream(connection.getOutputStream());
-                OutputStream wr = connection.getOutputStream();
-                wr.write(new JSONObject(payload).toString().getBytes());
-                wr.flush();
-                wr.close();
-
-                InputStream is;
-                if (connection.getResponseCode() < 400) {
-                    is = connection.getInputStream();
-                } else {
-                    is = connection.getErrorStream();
-                }
-                BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-                String line;
-                //noinspection MismatchedQueryAndUpdateOfStringBuilder
-                StringBuilder response = new StringBuilder();
-                while ((line = rd.readLine()) != null) {
-                    response.append(line);
-                    response.append('\r');
-                }
-                rd.close();
+                final Map<String, String> headers = new HashMap<>();
+                headers.put("Content-Type", "application/json");
+                Transports.getHttpRequest().synchronousRequest(endpoint, "POST", IHttpRequest.RequestBody.withHeaders(new JSONObject(payload).toString().getBytes(), headers));
             } catch (Exception ignored) {
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
             }
         });
     }
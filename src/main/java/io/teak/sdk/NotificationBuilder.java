@@ -40,21 +40,26 @@ import java.net.URL;
 import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.net.ssl.HttpsURLConnection;
-
+import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
 import io.teak.sdk.configuration.RemoteConfiguration;
 import io.teak.sdk.core.Result;
+import io.teak.sdk.io.ITransport;
+import io.teak.sdk.io.Transports;
 import io.teak.sdk.json.JSONArray;
 import io.teak.sdk.json.JSONObject;
 
 public class NotificationBuilder {
     public static final String DEFAULT_NOTIFICATION_CHANNEL_ID = "teak";
     private static final AtomicInteger pendingIntentRequestCode = new AtomicInteger();
+    private static final long BITMAP_DOWNLOAD_TIMEOUT_SECONDS = 30;
     public static class AssetLoadException extends Exception {
         AssetLoadException(String assetName, Exception cause) {
             super("Failed to load asset: " + assetName, cause);
@@ -665,12 +670,40 @@ public class NotificationBuilder {
                             uriBuilder.appendQueryParameter("remote_view_byte_limit", String.valueOf(config_notificationStripRemoteViewSizeBytes));
                         }
 
+                        // Decoded straight from the response stream, on the transport's thread
                         URL aURL = new URL(uriBuilder.toString());
-                        HttpsURLConnection conn = (HttpsURLConnection) aURL.openConnection();
-                        conn.setUseCaches(true);
-                        conn.connect();
-                        inputStream = conn.getInputStream();
-                        ret = BitmapFactory.decodeStream(inputStream);
+                        final Bitmap[] bitmap = new Bitmap[1];
+                        final Throwable[] failure = new Throwable[1];
+                        final boolean completed = Transports.executeCacheable(aURL, new HashMap<>(), new ITransport.Callback() {
+                            @Override
+                            public void onResponse(int statusCode, @NonNull Map<String, List<String>> headers, @NonNull InputStream body) {
+                                if (statusCode >= 400) {
+                                    failure[0] = new IOException("HTTP " + statusCode + " for " + bitmapUriString);
+                                    return;
+                                }
+
+                                try {
+                                    bitmap[0] = BitmapFactory.decodeStream(body);
+                                } catch (OutOfMemoryError e) {
+                                    failure[0] = e;
+                                }
+                            }
+
+                            @Override
+                            public void onFailure(@NonNull IOException e) {
+                                failure[0] = e;
+                            }
+                        },
+                            BITMAP_DOWNLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+                        if (failure[0] instanceof OutOfMemoryError) {
+                            throw (OutOfMemoryError) failure[0];
+                        } else if (failure[0] != null) {
+                            throw (Exception) failure[0];
+                        } else if (!completed) {
+                            throw new IOException("Timed out downloading " + bitmapUriString);
+                        }
+                        ret = bitmap[0];
                     }
                 } catch (Exception e) {
                     exception = e;
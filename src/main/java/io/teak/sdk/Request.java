@@ -1,31 +1,43 @@
 package io.teak.sdk;
 
-import java.math.BigInteger;
+import android.content.Context;
+
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import io.teak.sdk.configuration.EndpointPolicy;
 import io.teak.sdk.configuration.RemoteConfiguration;
-import io.teak.sdk.core.Executors;
+import io.teak.sdk.core.CircuitBreaker;
+import io.teak.sdk.core.DeferredRequestWorker;
+import io.teak.sdk.core.RequestDispatcher;
+import io.teak.sdk.core.RequestMetrics;
 import io.teak.sdk.core.Session;
+import io.teak.sdk.core.TrackEventAggregator;
+import io.teak.sdk.event.LifecycleEvent;
 import io.teak.sdk.event.RemoteConfigurationEvent;
 import io.teak.sdk.event.TrackEventEvent;
-import io.teak.sdk.io.DefaultHttpRequest;
+import io.teak.sdk.io.ConnectivityMonitor;
 import io.teak.sdk.io.IHttpRequest;
+import io.teak.sdk.io.PooledHttpRequest;
+import io.teak.sdk.io.RequestBodyBuffer;
+import io.teak.sdk.io.RequestJournal;
+import io.teak.sdk.io.StandardAttributes;
+import io.teak.sdk.io.Transports;
 import io.teak.sdk.json.JSONObject;
 
 public class Request implements Runnable {
@@ -39,39 +51,24 @@ public class Request implements Runnable {
     private final String requestId;
     private final Callback callback;
     protected boolean sent;
+    protected final List<Long> journalIds = new ArrayList<>();
+    @Nullable
+    private final StandardAttributes standardAttributes;
+    private long minimumRetryDelayMs;
+    private int retryIndex;
 
     @SuppressWarnings("WeakerAccess")
     protected final boolean blackhole;
     @SuppressWarnings("WeakerAccess")
-    protected final RetryConfiguration retry;
+    protected final EndpointPolicy.Retry retry;
     @SuppressWarnings("WeakerAccess")
-    protected final BatchConfiguration batch;
-
-    ///// Mini-configs
-
-    static class RetryConfiguration {
-        float jitter;
-        float[] times;
-        int retryIndex;
-
-        RetryConfiguration() {
-            this.jitter = 0.0f;
-            this.times = new float[] {};
-            this.retryIndex = 0;
-        }
-    }
-
-    public static class BatchConfiguration {
-        public long count;
-        public float time;
-        public float maximumWaitTime;
-
-        BatchConfiguration() {
-            this.count = 1;
-            this.time = 0.0f;
-            this.maximumWaitTime = 0.0f;
-        }
-    }
+    protected final EndpointPolicy.Batch batch;
+    @SuppressWarnings("WeakerAccess")
+    protected final boolean gzip;
+    @SuppressWarnings("WeakerAccess")
+    protected final RequestDispatcher.Priority priority;
+    @SuppressWarnings("WeakerAccess")
+    protected final boolean singleFlight;
 
     ///// Callback
 
@@ -89,13 +86,25 @@ public class Request implements Runnable {
         return Request.teakApiKey != null && Request.teakApiKey.length() > 0;
     }
 
-    private static final Map<String, Object> configurationPayload = new HashMap<>();
+    // Swapped, never modified, so request threads can read it while event threads update it
+    private static final AtomicReference<StandardAttributes> currentStandardAttributes = new AtomicReference<>(StandardAttributes.Empty);
+
+    private static void updateStandardAttributes(@NonNull Map<String, Object> values) {
+        StandardAttributes current;
+        do {
+            current = Request.currentStandardAttributes.get();
+        } while (!Request.currentStandardAttributes.compareAndSet(current, current.with(values)));
+    }
 
     // TODO: Can't do this as a static-init block, will screw up unit tests
     static {
         TeakConfiguration.addEventListener(configuration -> {
             Request.teakApiKey = configuration.appConfiguration.apiKey;
+            Request.journal = RequestJournal.open(configuration.appConfiguration.applicationContext);
+            Request.applicationContext = configuration.appConfiguration.applicationContext;
+            Request.connectivity = ConnectivityMonitor.open(configuration.appConfiguration.applicationContext, Request::onConnectivityChanged);
 
+            final Map<String, Object> configurationPayload = new HashMap<>();
             configurationPayload.put("sdk_version", Teak.Version);
             configurationPayload.put("game_id", configuration.appConfiguration.appId);
             configurationPayload.put("app_version", String.valueOf(configuration.appConfiguration.appVersion));
@@ -116,6 +125,7 @@ public class Request implements Runnable {
             if (configuration.debugConfiguration.isDebug()) {
                 configurationPayload.put("debug", true);
             }
+            Request.updateStandardAttributes(configurationPayload);
         });
     }
 
@@ -124,45 +134,353 @@ public class Request implements Runnable {
     protected static RemoteConfiguration remoteConfiguration;
 
     public static void registerStaticEventListeners() {
-        TeakEvent.addEventListener(event -> {
+        // Other listeners send requests as soon as they see these events, so this has to go first
+        TeakEvent.addStateListener(event -> {
             if (event.eventType.equals(RemoteConfigurationEvent.Type)) {
+                final boolean isFirstRemoteConfiguration = Request.remoteConfiguration == null;
                 Request.remoteConfiguration = ((RemoteConfigurationEvent) event).remoteConfiguration;
-                configurationPayload.putAll(Request.remoteConfiguration.dynamicParameters);
+                Request.updateStandardAttributes(Request.remoteConfiguration.dynamicParameters);
+                Request.dispatcher.setMaximumConcurrency(Request.remoteConfiguration.requestConcurrency);
+
+                // Replay anything left over from the last run once we know how endpoints are configured
+                if (isFirstRemoteConfiguration) {
+                    Request.dispatcher.execute(JOURNAL_LANE, Request::replayJournal);
+                }
+            } else if (event.eventType.equals(LifecycleEvent.Paused)) {
+                Request.isInBackground = true;
+                Request.scheduleDeferredRequestWorkIfNeeded();
+            } else if (event.eventType.equals(LifecycleEvent.Resumed)) {
+                Request.isInBackground = false;
             }
-        });
+        }, RemoteConfigurationEvent.Type, LifecycleEvent.Paused, LifecycleEvent.Resumed);
+    }
+
+    ///// Connectivity
+
+    private static Context applicationContext;
+    private static ConnectivityMonitor connectivity;
+    private static volatile boolean isInBackground;
+    private static final List<Request> deferredRequests = new ArrayList<>();
+
+    private static boolean isOffline() {
+        return Request.connectivity != null && !Request.connectivity.isConnected();
+    }
+
+    private static void onConnectivityChanged(boolean isConnected) {
+        Teak.log.i("request.connectivity", Helpers.mm.h("connected", isConnected));
+        if (isConnected) {
+            Request.flushDeferredRequests();
+        }
+    }
+
+    // Held in memory only; if the process dies, the journal has them
+    private static void deferUntilOnline(@NonNull Request request) {
+        synchronized (Request.deferredRequests) {
+            Request.deferredRequests.add(request);
+        }
+        Teak.log.i("request.deferred", Helpers.mm.h("request_id", request.requestId, "endpoint", request.endpoint));
+
+        // The network may have come back, and been flushed, between the caller's check and the add
+        if (!Request.isOffline()) {
+            Request.flushDeferredRequests();
+            return;
+        }
+        Request.scheduleDeferredRequestWorkIfNeeded();
+    }
+
+    private static int flushDeferredRequests() {
+        final List<Request> requests;
+        synchronized (Request.deferredRequests) {
+            requests = new ArrayList<>(Request.deferredRequests);
+            Request.deferredRequests.clear();
+        }
+
+        // Sent as one burst, so they share a freshly woken radio and warm connections
+        if (!requests.isEmpty()) {
+            Teak.log.i("request.deferred.flush", Helpers.mm.h("count", requests.size()));
+            for (Request request : requests) {
+                Request.dispatcher.execute(request.hostname, request.priority, request);
+            }
+        }
+        return requests.size();
+    }
+
+    /**
+     * Send anything that was deferred while offline, and wait for it to complete.
+     *
+     * @return true if everything completed within the timeout.
+     */
+    public static boolean flushDeferredRequests(long timeout, @NonNull TimeUnit unit) {
+        if (Request.flushDeferredRequests() == 0) return true;
+        return Request.dispatcher.awaitIdle(timeout, unit);
+    }
+
+    private static void scheduleDeferredRequestWorkIfNeeded() {
+        if (!Request.isInBackground || Request.applicationContext == null) return;
+
+        synchronized (Request.deferredRequests) {
+            if (Request.deferredRequests.isEmpty()) return;
+        }
+        DeferredRequestWorker.schedule(Request.applicationContext);
+    }
+
+    /**
+     * Requests which can wait for the network to come back; those with a callback have someone
+     * waiting on the result, so they are sent (and fail) right away.
+     */
+    protected boolean isDeferrable() {
+        return this.callback == null;
+    }
+
+    ///// Durable outbox
+
+    private static RequestJournal journal;
+    private static final String JOURNAL_LANE = "io.teak.sdk.RequestJournal";
+
+    // Requests with a callback are expecting a reply in this process, so only fire-and-forget
+    // requests are written to the journal.
+    private static long appendToJournal(@NonNull String hostname, @NonNull String method, @NonNull String endpoint, @NonNull Map<String, Object> payload, @NonNull Session session, @Nullable Callback callback) {
+        if (Request.journal == null || callback != null) {
+            return -1;
+        }
+
+        return Request.journal.append(hostname, method, endpoint, journalPayload(payload, session));
+    }
+
+    /**
+     * @return The journal id of each payload, in order, or -1 if they are not journaled.
+     */
+    @NonNull
+    private static List<Long> appendToJournal(@NonNull String hostname, @NonNull String method, @NonNull String endpoint, @NonNull List<Map<String, Object>> payloads, @NonNull Session session) {
+        if (Request.journal == null) {
+            return new ArrayList<>(Collections.nCopies(payloads.size(), -1L));
+        }
+
+        final List<Map<String, Object>> journalPayloads = new ArrayList<>(payloads.size());
+        for (Map<String, Object> payload : payloads) {
+            journalPayloads.add(journalPayload(payload, session));
+        }
+        return Request.journal.appendAll(hostname, method, endpoint, journalPayloads);
+    }
+
+    @NonNull
+    private static Map<String, Object> journalPayload(@NonNull Map<String, Object> payload, @NonNull Session session) {
+        final Map<String, Object> journalPayload = new HashMap<>(payload);
+        if (session.userId() != null) {
+            journalPayload.put("api_key", session.userId());
+        }
+        return journalPayload;
+    }
+
+    private static void replayJournal() {
+        if (Request.journal == null) return;
+
+        final List<RequestJournal.Entry> entries = Request.journal.takeEntriesFromPreviousRun();
+        if (entries.isEmpty()) return;
+
+        Teak.log.i("request.journal.replay", Helpers.mm.h("count", entries.size()));
+
+        // Batches are rebuilt per user, since 'api_key' lives at the top level of a track event
+        // batch. Live parsnip batches never carry it, so it is dropped from their events.
+        BatchedRequest batch = null;
+        String batchKey = null;
+        for (RequestJournal.Entry entry : entries) {
+            final Object apiKey = entry.payload.get("api_key");
+            final Map<String, Object> eventPayload = new HashMap<>(entry.payload);
+            eventPayload.remove("api_key");
+
+            final String key = entry.hostname + entry.endpoint + apiKey;
+            if (batch != null && key.equals(batchKey) && batch.add(entry.endpoint, eventPayload, null, entry.id)) {
+                continue;
+            }
+
+            batch = BatchedRequest.newBatchFor(entry.hostname, entry.endpoint, Session.NullSession);
+            batchKey = key;
+            if (batch != null) {
+                if (apiKey != null && batch instanceof BatchedTrackEventRequest) {
+                    batch.payload.put("api_key", apiKey);
+                }
+                if (batch.add(entry.endpoint, eventPayload, null, entry.id)) {
+                    continue;
+                }
+            }
+
+            final Request request = new Request(entry.hostname, entry.method, entry.endpoint, entry.payload, Session.NullSession, null, true);
+            request.journalIds.add(entry.id);
+            Request.dispatcher.execute(entry.hostname, request.priority, request);
+        }
+    }
+
+    ///// Single-flight
+
+    // Requests with a callback which are in flight, so that an identical request can wait for the
+    // same reply instead of making its own round trip.
+    private static final Map<SingleFlightKey, Request> singleFlightRequests = new HashMap<>();
+    private SingleFlightKey singleFlightKey;
+    private final List<Request> singleFlightJoined = new ArrayList<>();
+
+    private static class SingleFlightKey {
+        final String hostname;
+        final String method;
+        final String endpoint;
+        final Session session;
+        final Map<String, Object> payload;
+        final StandardAttributes standardAttributes;
+        final int hashCode;
+
+        SingleFlightKey(@NonNull Request request) {
+            this.hostname = request.hostname;
+            this.method = request.method;
+            this.endpoint = request.endpoint;
+            this.session = request.session;
+            this.payload = request.payload;
+            this.standardAttributes = request.standardAttributes;
+
+            int hashCode = String.valueOf(this.hostname).hashCode();
+            hashCode = 31 * hashCode + this.method.hashCode();
+            hashCode = 31 * hashCode + this.endpoint.hashCode();
+            hashCode = 31 * hashCode + System.identityHashCode(this.session);
+            hashCode = 31 * hashCode + this.payload.hashCode();
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SingleFlightKey)) return false;
+            final SingleFlightKey other = (SingleFlightKey) o;
+            return this.hashCode == other.hashCode &&
+                this.session == other.session &&
+                this.standardAttributes == other.standardAttributes &&
+                this.method.equals(other.method) &&
+                this.endpoint.equals(other.endpoint) &&
+                String.valueOf(this.hostname).equals(String.valueOf(other.hostname)) &&
+                this.payload.equals(other.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+    /**
+     * If an identical request is already in flight, add this request to it. Otherwise
+     * this request becomes the one in flight.
+     *
+     * @return true if this request joined another one, and should not be sent.
+     */
+    private boolean joinSingleFlight() {
+        if (!this.singleFlight || this.callback == null) return false;
+
+        final SingleFlightKey key = new SingleFlightKey(this);
+        final Request inFlight;
+        synchronized (Request.singleFlightRequests) {
+            inFlight = Request.singleFlightRequests.get(key);
+            if (inFlight == null) {
+                this.singleFlightKey = key;
+                Request.singleFlightRequests.put(key, this);
+                return false;
+            }
+            inFlight.singleFlightJoined.add(this);
+        }
+
+        Request.metrics.recordSingleFlightJoin(this.hostname, this.endpoint);
+        Teak.log.i("request.single_flight.join", Helpers.mm.h("request_id", this.requestId, "in_flight_request_id", inFlight.requestId));
+        return true;
+    }
+
+    /**
+     * Stop accepting identical requests.
+     *
+     * @return The requests which joined this one.
+     */
+    private List<Request> leaveSingleFlight() {
+        synchronized (Request.singleFlightRequests) {
+            if (this.singleFlightKey == null) return new ArrayList<>();
+
+            if (Request.singleFlightRequests.get(this.singleFlightKey) == this) {
+                Request.singleFlightRequests.remove(this.singleFlightKey);
+            }
+            this.singleFlightKey = null;
+
+            final List<Request> joined = new ArrayList<>(this.singleFlightJoined);
+            this.singleFlightJoined.clear();
+            return joined;
+        }
+    }
+
+    /**
+     * Stop accepting identical requests without a reply to share, and send the requests which
+     * joined this one on their own.
+     */
+    private void abandonSingleFlight() {
+        for (Request request : this.leaveSingleFlight()) {
+            Request.dispatcher.execute(request.hostname, request.priority, request);
+        }
     }
 
     ///// Batching
 
     private static abstract class BatchedRequest extends Request {
-        private ScheduledFuture<?> scheduledFuture;
+        private RequestDispatcher.Task scheduledTask;
         private final List<Callback> callbacks = new LinkedList<>();
         final List<Map<String, Object>> batchContents = new LinkedList<>();
+        long batchContentsBytes = 0L;
         long firstAddTime = 0L;
+        int eventCount = 0;
+        private boolean flushed;
 
         BatchedRequest(@Nullable String hostname, @NonNull String endpoint, @NonNull Session session, boolean addStandardAttributes) {
             super(hostname, endpoint, new HashMap<>(), session, null, addStandardAttributes);
         }
 
-        synchronized boolean add(@NonNull String endpoint, @Nullable Map<String, Object> payload, @Nullable Callback callback) {
-            if (this.sent) {
+        @Nullable
+        static BatchedRequest newBatchFor(@NonNull String hostname, @NonNull String endpoint, @NonNull Session session) {
+            if ("parsnip.gocarrot.com".equals(hostname) &&
+                !("/notification_received".equals(endpoint))) {
+                return new BatchedParsnipRequest(hostname, session);
+            } else if ("/me/events".equals(endpoint)) {
+                return new BatchedTrackEventRequest(hostname, session);
+            }
+            return null;
+        }
+
+        /**
+         * @return false if the batch will not take the event, because it is full or already on
+         *         its way. The caller should dispatchAndReplace() it, and add to the new batch.
+         */
+        synchronized boolean add(@NonNull String endpoint, @Nullable Map<String, Object> payload, @Nullable Callback callback, long journalId) {
+            if (this.sent || this.flushed) {
                 return false;
             }
 
-            if (this.scheduledFuture != null && !this.scheduledFuture.cancel(false)) {
-                requestExecutor.execute(this);
+            // Always take at least one event, or a batch could never be started
+            if (!this.batchContents.isEmpty() && (this.batchContents.size() >= this.batch.count || this.batch.time < 0.0f)) {
                 return false;
             }
 
-            if (this.batchContents.size() >= this.batch.count || this.batch.time < 0.0f) {
+            // Cut the batch before it gets too large to upload quickly, but always take at least
+            // one event, or an oversized event could never be sent
+            long payloadBytes = 0;
+            if (payload != null && this.batch.maximumBytes > 0) {
+                payloadBytes = this.estimateEventBytes(payload) + 1;
+                if (!this.batchContents.isEmpty() && this.batchContentsBytes + payloadBytes > this.batch.maximumBytes) {
+                    return false;
+                }
+            }
+
+            // Already handed to the dispatcher
+            if (this.scheduledTask != null && !this.scheduledTask.cancel()) {
                 return false;
             }
+            this.scheduledTask = null;
 
             if (this.firstAddTime == 0) {
                 this.firstAddTime = System.nanoTime();
 
                 if (this.batch.maximumWaitTime > 0.0f) {
-                    Request.requestExecutor.schedule(this, (long) (this.batch.maximumWaitTime * 1000.0f), TimeUnit.MILLISECONDS);
+                    Request.dispatcher.schedule(this.getHostname(), this.priority, this, (long) (this.batch.maximumWaitTime * 1000.0f), TimeUnit.MILLISECONDS);
                 }
             }
 
@@ -172,23 +490,106 @@ public class Request implements Runnable {
 
             if (payload != null) {
                 this.batchContents.add(payload);
+                this.batchContentsBytes += payloadBytes;
+                this.eventCount++;
             }
 
-            if (this.batch.time == 0.0f) {
-                Request.requestExecutor.execute(this);
+            if (journalId > 0) {
+                this.journalIds.add(journalId);
+            }
+
+            if (this.batch.time <= 0.0f) {
+                this.scheduledTask = Request.dispatcher.execute(this.getHostname(), this.priority, this);
             } else {
-                this.scheduledFuture = Request.requestExecutor.schedule(this, (long) (this.batch.time * 1000.0f), TimeUnit.MILLISECONDS);
+                this.scheduledTask = Request.dispatcher.schedule(this.getHostname(), this.priority, this, (long) (this.batch.time * 1000.0f), TimeUnit.MILLISECONDS);
             }
             return true;
         }
 
+        /**
+         * Send this batch now, instead of when its timer fires. Nothing more is added to it.
+         *
+         * @return The number of events sent early, 0 if the batch was empty or already on its way.
+         */
+        synchronized int flush() {
+            final int count = this.dispatchNow();
+            if (count > 0) {
+                Request.metrics.recordFlush(this.getHostname(), this.getEndpoint(), count);
+            }
+            return count;
+        }
+
+        /**
+         * Hand this batch to the dispatcher now. Nothing more is added to it.
+         *
+         * @return The number of events in the batch, 0 if it was empty or already on its way.
+         */
+        synchronized int dispatchNow() {
+            if (this.sent || this.flushed || this.eventCount == 0) {
+                return 0;
+            }
+
+            // Already handed to the dispatcher
+            if (this.scheduledTask != null && !this.scheduledTask.cancel()) {
+                return 0;
+            }
+
+            this.scheduledTask = null;
+            this.flushed = true;
+            Request.dispatcher.execute(this.getHostname(), this.priority, this);
+            return this.eventCount;
+        }
+
+        /**
+         * Dispatch this batch, which would not take another event, and replace it as the current
+         * batch.
+         *
+         * @return The current batch, which is never this one.
+         */
+        @NonNull
+        abstract BatchedRequest dispatchAndReplace(@NonNull String hostname, @NonNull Session session);
+
+        /**
+         * @return Roughly the number of bytes an event in the batch will be sent as.
+         */
+        long estimateEventBytes(@NonNull Map<String, Object> payload) {
+            return RequestBodyBuffer.estimateJson(payload);
+        }
+
+        /**
+         * @return The JSON an event in the batch will be sent as.
+         */
+        @NonNull
+        JSONObject eventJSON(@NonNull Map<String, Object> payload) {
+            return new JSONObject(payload);
+        }
+
         @Override
         public synchronized void run() {
             final long elapsedSinceFirstAdd = System.nanoTime() - this.firstAddTime;
             this.payload.put("ms_since_first_event", TimeUnit.NANOSECONDS.toMillis(elapsedSinceFirstAdd));
+
+            // Retries re-run the same batch, only count it once
+            if (!this.sent) {
+                Request.metrics.recordBatch(this.getHostname(), this.getEndpoint(), this.batchContents.size(), this.batch.count, TimeUnit.NANOSECONDS.toMillis(elapsedSinceFirstAdd));
+                if (this.batch.maximumBytes > 0) {
+                    Request.metrics.recordBatchBytes(this.getHostname(), this.getEndpoint(), this.batchContentsBytes, this.batch.maximumBytes);
+                }
+            }
             super.run();
         }
 
+        @Override
+        protected boolean isDeferrable() {
+            return true;
+        }
+
+        // Batches are analytics uploads, nobody is waiting on them
+        @Override
+        protected RequestDispatcher.Priority defaultPriority() {
+            return RequestDispatcher.Priority.Bulk;
+        }
+
         @Override
         protected void onRequestCompleted(int responseCode, String responseBody) {
             super.onRequestCompleted(responseCode, responseBody);
@@ -211,28 +612,91 @@ public class Request implements Runnable {
             }
         }
 
+        static int flushCurrentBatch() {
+            final BatchedParsnipRequest batch;
+            synchronized (mutex) {
+                batch = currentBatch;
+                currentBatch = null;
+            }
+            return batch == null ? 0 : batch.flush();
+        }
+
+        @NonNull
+        @Override
+        BatchedRequest dispatchAndReplace(@NonNull String hostname, @NonNull Session session) {
+            synchronized (mutex) {
+                if (currentBatch == this) {
+                    currentBatch = null;
+                }
+            }
+            this.dispatchNow();
+            return getCurrentBatch(hostname, session);
+        }
+
+        // Standard attributes as of when the batch was started. Sent once for the whole batch, if
+        // the server has enabled it, otherwise spliced into every event.
+        private final StandardAttributes attributes;
+        private final long attributesBytes;
+
         BatchedParsnipRequest(@Nullable String hostname, @NonNull Session session) {
             super(hostname, "/batch", session, false);
+
+            this.attributes = Request.currentStandardAttributes.get();
+            this.attributesBytes = RequestBodyBuffer.estimateJson(this.attributes);
+            if (this.batch.sharedAttributes) {
+                this.payload.put("attributes", this.attributes);
+            }
         }
 
         @Override
-        synchronized boolean add(@NonNull String endpoint, @Nullable Map<String, Object> payload, @Nullable Callback callback) {
-            final Map<String, Object> batchPayload = new HashMap<>(payload);
-
-            // Parsnip needs the standard attributes in every event
-            batchPayload.putAll(Request.configurationPayload);
+        synchronized boolean add(@NonNull String endpoint, @Nullable Map<String, Object> payload, @Nullable Callback callback, long journalId) {
+            final Map<String, Object> batchPayload;
+            if (this.batch.sharedAttributes) {
+                // Parsnip applies the batch attributes to every event, so an event only needs
+                // the values which differ from them
+                batchPayload = new HashMap<>();
+                for (Map.Entry<String, Object> entry : payload.entrySet()) {
+                    final Object shared = this.attributes.values.get(entry.getKey());
+                    if (shared == null || !shared.equals(entry.getValue())) {
+                        batchPayload.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            } else {
+                batchPayload = new HashMap<>(payload);
+            }
 
             // Parsnip event name
             batchPayload.put("name", endpoint.startsWith("/") ? endpoint.substring(1) : endpoint);
 
-            return super.add(endpoint, batchPayload, callback);
+            return super.add(endpoint, batchPayload, callback, journalId);
+        }
+
+        @NonNull
+        @Override
+        JSONObject eventJSON(@NonNull Map<String, Object> payload) {
+            // Parsnip needs the standard attributes in every event, unless they are shared
+            return this.batch.sharedAttributes ? super.eventJSON(payload) : this.attributes.splice(payload);
+        }
+
+        @Override
+        long estimateEventBytes(@NonNull Map<String, Object> payload) {
+            if (this.batch.sharedAttributes || this.attributes.values.isEmpty()) {
+                return super.estimateEventBytes(payload);
+            }
+
+            // The attributes are spliced in, one set of braces is dropped and a comma added
+            return super.estimateEventBytes(payload) + this.attributesBytes - 1;
         }
 
         @Override
         public synchronized void run() {
             synchronized (mutex) {
                 // Add batch elements
-                this.payload.put("events", this.batchContents);
+                final List<JSONObject> events = new ArrayList<>(this.batchContents.size());
+                for (Map<String, Object> event : this.batchContents) {
+                    events.add(this.eventJSON(event));
+                }
+                this.payload.put("events", events);
                 super.run();
             }
         }
@@ -242,6 +706,8 @@ public class Request implements Runnable {
         private static final Object mutex = new Object();
         private static BatchedTrackEventRequest currentBatch;
 
+        private final TrackEventAggregator aggregator = new TrackEventAggregator();
+
         static BatchedTrackEventRequest getCurrentBatch(@Nullable String hostname, @NonNull Session session) {
             synchronized (mutex) {
                 if (currentBatch == null || currentBatch.sent) {
@@ -251,66 +717,61 @@ public class Request implements Runnable {
             }
         }
 
-        private BatchedTrackEventRequest(@Nullable String hostname, @NonNull Session session) {
-            super(hostname, "/me/events", session, true);
+        static int flushCurrentBatch() {
+            final BatchedTrackEventRequest batch;
+            synchronized (mutex) {
+                batch = currentBatch;
+                currentBatch = null;
+            }
+            return batch == null ? 0 : batch.flush();
         }
 
+        @NonNull
         @Override
-        synchronized boolean add(@NonNull String endpoint, @Nullable Map<String, Object> payload, @Nullable Callback callback) {
-            // Check to see if current batchContents has action, and if so, sum the durations
-            ListIterator<Map<String, Object>> itr = this.batchContents.listIterator();
-            while (itr.hasNext()) {
-                final Map<String, Object> current = itr.next();
-                try {
-                    if (TrackEventEvent.payloadEquals(current, payload)) {
-                        current.put(TrackEventEvent.DurationKey,
-                            integerSafeSumOrCurrent(current.get(TrackEventEvent.DurationKey),
-                                payload.get(TrackEventEvent.DurationKey)));
-                        current.put(TrackEventEvent.CountKey,
-                            integerSafeSumOrCurrent(current.get(TrackEventEvent.CountKey),
-                                payload.get(TrackEventEvent.CountKey)));
-                        current.put(TrackEventEvent.SumOfSquaresKey,
-                            integerSafeSumOrCurrent(current.get(TrackEventEvent.SumOfSquaresKey),
-                                payload.get(TrackEventEvent.SumOfSquaresKey)));
-
-                        itr.set(current);
-                        return super.add(endpoint, null, callback);
-                    }
-                } catch (Exception ignored) {
+        BatchedRequest dispatchAndReplace(@NonNull String hostname, @NonNull Session session) {
+            synchronized (mutex) {
+                if (currentBatch == this) {
+                    currentBatch = null;
                 }
             }
+            this.dispatchNow();
+            return getCurrentBatch(hostname, session);
+        }
 
-            return super.add(endpoint, payload, callback);
+        private BatchedTrackEventRequest(@Nullable String hostname, @NonNull Session session) {
+            super(hostname, "/me/events", session, true);
         }
 
-        private static Object integerSafeSumOrCurrent(Object current, Object addition) {
-            if (current instanceof Number && addition instanceof Number) {
-                if (current instanceof BigInteger && addition instanceof BigInteger) {
-                    return ((BigInteger) current).add((BigInteger) addition);
-                } else {
-                    return ((Number) current).longValue() + ((Number) addition).longValue();
+        @Override
+        synchronized boolean add(@NonNull String endpoint, @Nullable Map<String, Object> payload, @Nullable Callback callback, long journalId) {
+            // If the batch already has a row for this action, sum the durations into it
+            if (payload != null && this.aggregator.hasRowFor(payload)) {
+                if (!super.add(endpoint, null, callback, journalId)) {
+                    return false;
                 }
+                this.aggregator.aggregate(payload);
+                this.eventCount++;
+                return true;
+            }
+
+            if (!super.add(endpoint, payload, callback, journalId)) {
+                return false;
+            }
+            if (payload != null) {
+                this.aggregator.addRow(payload);
             }
-            return current;
+            return true;
         }
 
         @Override
         public synchronized void run() {
             synchronized (mutex) {
-                // Turn SumOfSquares BigInteger into a string
-                ListIterator<Map<String, Object>> itr = this.batchContents.listIterator();
-                while (itr.hasNext()) {
-                    final Map<String, Object> current = itr.next();
-                    try {
-                        if (current.containsKey(TrackEventEvent.SumOfSquaresKey)) {
-                            Object sumOfSquares = current.get(TrackEventEvent.SumOfSquaresKey);
-                            if (sumOfSquares instanceof BigInteger) {
-                                current.put(TrackEventEvent.SumOfSquaresKey, ((BigInteger) sumOfSquares).toString(10));
-                                itr.set(current);
-                            }
-                        }
-                    } catch (Exception ignored) {
-                    }
+                // Write the sums back into the rows
+                this.aggregator.writeToRows();
+
+                // Sum of squares always goes as a string, as it may be too large for a JSON number
+                for (Map<String, Object> row : this.batchContents) {
+                    TrackEventEvent.stringifySumOfSquares(row);
                 }
 
                 // Add batch elements
@@ -322,12 +783,57 @@ public class Request implements Runnable {
 
     ///// SDK interface
 
-    static final ScheduledExecutorService requestExecutor = Executors.newSingleThreadScheduledExecutor();
+    // One serial lane per hostname
+    static final RequestDispatcher dispatcher = new RequestDispatcher(RequestDispatcher.DEFAULT_MAXIMUM_CONCURRENCY);
+
+    static final RequestMetrics metrics = new RequestMetrics();
+
+    /**
+     * Metrics for the request pipeline: per endpoint latency, status codes, retries, queue time
+     * and batch fill; per host lanes and circuit breakers; connection reuse, unless the app
+     * provides the transport; and heartbeats sent or skipped.
+     */
+    public static Map<String, Object> getMetrics() {
+        final Map<String, Object> ret = new HashMap<>();
+        ret.put("endpoints", Request.metrics.toMap());
+        ret.put("dispatcher", Request.dispatcher.toMap());
+        final IHttpRequest httpRequest = Transports.getHttpRequest();
+        if (httpRequest instanceof PooledHttpRequest) {
+            ret.put("connections", ((PooledHttpRequest) httpRequest).toMap());
+        }
+        ret.put("heartbeat", Session.getHeartbeatMetrics());
+        return ret;
+    }
+
+    /**
+     * Send every pending batch now, instead of when its timer fires, for instance when the app
+     * goes to the background and may be frozen or killed before then. The batches are dispatched
+     * together, so requests for the same host go out back to back on the same connection.
+     *
+     * @return The number of events sent early.
+     */
+    public static int flushPendingBatches() {
+        return BatchedTrackEventRequest.flushCurrentBatch() + BatchedParsnipRequest.flushCurrentBatch();
+    }
 
     public static void submit(@NonNull String endpoint, @NonNull Map<String, Object> payload, @NonNull Session session) {
         submit(endpoint, payload, session, null);
     }
 
+    /**
+     * Submit several payloads to the same endpoint at once, for instance events which were held
+     * until the user was identified. Batched endpoints take them all into the current batch.
+     */
+    public static void submit(@NonNull String endpoint, @NonNull List<Map<String, Object>> payloads, @NonNull Session session) {
+        final String hostname = RemoteConfiguration.getHostnameForEndpoint(endpoint, Request.remoteConfiguration);
+
+        // One journal write for all of them
+        final List<Long> journalIds = appendToJournal(hostname, "POST", endpoint, payloads, session);
+        for (int i = 0; i < payloads.size(); i++) {
+            submit(hostname, "POST", endpoint, payloads.get(i), session, null, null, journalIds.get(i));
+        }
+    }
+
     public static void submit(@NonNull String endpoint, @NonNull Map<String, Object> payload, @NonNull Session session, @Nullable Callback callback) {
         submit(null, endpoint, payload, session, callback);
     }
@@ -341,11 +847,23 @@ public class Request implements Runnable {
     }
 
     public static void submit(@Nullable String hostname, final @NonNull String method, final @NonNull String endpoint, final @NonNull Map<String, Object> payload, final @NonNull Session session, final @Nullable Callback callback) {
+        submit(hostname, method, endpoint, payload, session, callback, null);
+    }
+
+    /**
+     * @param priority Priority class for the request, or null to use the one configured for the
+     *                 endpoint. Requests which are batched always go out with their batch.
+     */
+    public static void submit(@Nullable String hostname, final @NonNull String method, final @NonNull String endpoint, final @NonNull Map<String, Object> payload, final @NonNull Session session, final @Nullable Callback callback, final @Nullable RequestDispatcher.Priority priority) {
         if (hostname == null) {
             hostname = RemoteConfiguration.getHostnameForEndpoint(endpoint, Request.remoteConfiguration);
         }
-        final String finalHostname = hostname;
 
+        final long journalId = appendToJournal(hostname, method, endpoint, payload, session, callback);
+        submit(hostname, method, endpoint, payload, session, callback, priority, journalId);
+    }
+
+    private static void submit(@NonNull String hostname, final @NonNull String method, final @NonNull String endpoint, final @NonNull Map<String, Object> payload, final @NonNull Session session, final @Nullable Callback callback, final @Nullable RequestDispatcher.Priority priority, final long journalId) {
         BatchedRequest batch = null;
 
         if ("parsnip.gocarrot.com".equals(hostname) &&
@@ -356,11 +874,20 @@ public class Request implements Runnable {
         }
 
         if (batch != null) {
-            if (!batch.add(endpoint, payload, callback)) {
-                requestExecutor.execute(() -> submit(finalHostname, endpoint, payload, session, callback));
+            // A batch which is full, or already on its way, is sent and replaced; a new batch
+            // always takes the event
+            while (!batch.add(endpoint, payload, callback, journalId)) {
+                batch = batch.dispatchAndReplace(hostname, session);
             }
         } else {
-            requestExecutor.execute(new Request(hostname, method, endpoint, payload, session, callback, true));
+            final Request request = new Request(hostname, method, endpoint, payload, session, callback, true, priority);
+            if (request.joinSingleFlight()) {
+                return;
+            }
+            if (journalId > 0) {
+                request.journalIds.add(journalId);
+            }
+            Request.dispatcher.execute(hostname, request.priority, request);
         }
     }
 
@@ -371,6 +898,10 @@ public class Request implements Runnable {
     }
 
     public Request(@Nullable String hostname, @NonNull String method, @NonNull String endpoint, @NonNull Map<String, Object> payload, @NonNull Session session, @Nullable Callback callback, boolean addStandardAttributes) {
+        this(hostname, method, endpoint, payload, session, callback, addStandardAttributes, null);
+    }
+
+    public Request(@Nullable String hostname, @NonNull String method, @NonNull String endpoint, @NonNull Map<String, Object> payload, @NonNull Session session, @Nullable Callback callback, boolean addStandardAttributes, @Nullable RequestDispatcher.Priority priority) {
         if (!endpoint.startsWith("/")) {
             throw new IllegalArgumentException("Parameter 'endpoint' must start with '/' or things will break, and you will lose an hour of your life debugging. Number of times this exception has saved an ass: 1.");
         }
@@ -384,123 +915,66 @@ public class Request implements Runnable {
         this.callback = callback;
         this.sent = false;
 
+        // Standard attributes are spliced in, already serialized, when the body is written
         if (addStandardAttributes) {
             if (session.userId() != null) {
                 this.payload.put("api_key", session.userId());
             }
 
-            this.payload.putAll(Request.configurationPayload);
+            this.standardAttributes = Request.currentStandardAttributes.get();
+        } else {
+            this.standardAttributes = null;
         }
 
-        // Defaults
-        boolean blackhole = false;
-        RetryConfiguration retry = new RetryConfiguration();
-        BatchConfiguration batch = new BatchConfiguration();
+        // Endpoint configuration is compiled when the remote configuration arrives
+        final EndpointPolicy policy = Request.remoteConfiguration == null ? EndpointPolicy.Default : Request.remoteConfiguration.getEndpointPolicy(hostname, endpoint);
+        this.blackhole = policy.blackhole;
+        this.gzip = policy.gzip;
+        this.retry = policy.retry;
+        this.batch = policy.batch;
 
-        // Configure if possible
-        try {
-            if (Request.remoteConfiguration != null) {
-                Object objHost = Request.remoteConfiguration.endpointConfigurations.containsKey(hostname) ? Request.remoteConfiguration.endpointConfigurations.get(hostname) : null;
-                @SuppressWarnings("unchecked")
-                Map<String, Object> host = (objHost instanceof Map) ? (Map<String, Object>) objHost : null;
-                if (host != null && host.containsKey(endpoint) && host.get(endpoint) instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> endpointConfig = (Map<String, Object>) host.get(endpoint);
-
-                    blackhole = endpointConfig.containsKey("blackhole") ? (boolean) endpointConfig.get("blackhole") : blackhole;
-
-                    // Retry configuration
-                    if (endpointConfig.containsKey("retry") && endpointConfig.get("retry") instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> retryConfig = (Map<String, Object>) endpointConfig.get("retry");
-
-                        try {
-                            retry.jitter = retryConfig.containsKey("jitter") ? (retryConfig.get("jitter") instanceof Number ? ((Number) retryConfig.get("jitter")).floatValue()
-                                                                                                                            : Float.parseFloat(retryConfig.get("jitter").toString()))
-                                                                             : retry.jitter;
-                        } catch (Exception ignored) {
-                        }
-
-                        if (retryConfig.containsKey("times") && retryConfig.get("times") instanceof List) {
-                            List timesList = (List) retryConfig.get("times");
-                            float[] timesArray = new float[timesList.size()];
-                            int i = 0;
-                            for (Object o : timesList) {
-                                try {
-                                    timesArray[i] = o instanceof Number ? ((Number) o).floatValue()
-                                                                        : Float.parseFloat(o.toString());
-                                } catch (Exception ignored) {
-                                    timesArray[i] = 10.0f;
-                                }
-                                i++;
-                            }
-                            retry.times = timesArray;
-                        }
-                    }
+        // Requests which only fetch or refresh state are safe to collapse
+        this.singleFlight = policy.singleFlight != null ? policy.singleFlight : "GET".equals(method) || endpoint.endsWith("/settings.json") || endpoint.endsWith("/users.json");
 
-                    // Batch configuration
-                    if (endpointConfig.containsKey("batch") && endpointConfig.get("batch") instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> batchConfig = (Map<String, Object>) endpointConfig.get("batch");
-
-                        try {
-                            batch.count = batchConfig.containsKey("count") ? (batchConfig.get("count") instanceof Number ? ((Number) batchConfig.get("count")).longValue()
-                                                                                                                         : Long.parseLong(batchConfig.get("count").toString()))
-                                                                           : batch.count;
-                        } catch (Exception ignored) {
-                        }
-
-                        try {
-                            batch.time = batchConfig.containsKey("time") ? (batchConfig.get("time") instanceof Number ? ((Number) batchConfig.get("time")).floatValue()
-                                                                                                                      : Float.parseFloat(batchConfig.get("time").toString()))
-                                                                         : batch.time;
-                        } catch (Exception ignored) {
-                        }
-
-                        try {
-                            batch.maximumWaitTime = batchConfig.containsKey("maximum_wait_time") ? (batchConfig.get("maximum_wait_time") instanceof Number ? ((Number) batchConfig.get("maximum_wait_time")).floatValue()
-                                                                                                                                                           : Float.parseFloat(batchConfig.get("maximum_wait_time").toString()))
-                                                                                                 : batch.maximumWaitTime;
-                        } catch (Exception ignored) {
-                        }
-
-                        if (batchConfig.containsKey("lww")) {
-                            boolean lww = false;
-                            try {
-                                lww = batchConfig.containsKey("lww") ? (batchConfig.get("lww") instanceof Boolean ? (Boolean) batchConfig.get("lww")
-                                                                                                                  : Boolean.parseBoolean(batchConfig.get("lww").toString()))
-                                                                     : lww;
-                            } catch (Exception ignored) {
-                            }
-                            if (lww) {
-                                batch.count = Long.MAX_VALUE;
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Teak.log.exception(e);
+        // Explicitly requested, then configured for the endpoint, then the default for this kind of request
+        if (priority == null) {
+            priority = policy.priority != null ? policy.priority : this.defaultPriority();
         }
+        this.priority = priority;
+    }
 
-        // Assign to the finals
-        this.blackhole = blackhole;
-        this.retry = retry;
-        this.batch = batch;
+    protected RequestDispatcher.Priority defaultPriority() {
+        return RequestDispatcher.Priority.Default;
     }
 
     @Override
     public void run() {
         this.sent = true;
 
-        if (this.blackhole) return;
+        final long queueTime = RequestDispatcher.getCurrentTaskQueueTime();
+        if (queueTime >= 0) {
+            Request.metrics.recordQueueTime(this.hostname, this.endpoint, queueTime);
+        }
+
+        if (this.blackhole) {
+            this.acknowledgeJournalEntries();
+            this.abandonSingleFlight();
+            return;
+        }
+
+        if (this.isDeferrable() && Request.isOffline()) {
+            Request.deferUntilOnline(this);
+            return;
+        }
 
         final boolean isMockedRequest = Request.remoteConfiguration != null && Request.remoteConfiguration.isMocked;
 
         final SecretKeySpec keySpec = new SecretKeySpec(Request.teakApiKey.getBytes(), "HmacSHA256");
         String sig;
-        final JSONObject jsonPayload = new JSONObject(this.payload);
-        final String requestBody = jsonPayload.toString();
+
+        // Serialized once, into a buffer owned by this thread, hashing as it is written
+        final RequestBodyBuffer requestBody = RequestBodyBuffer.obtain();
+        final JSONObject requestJSON = this.standardAttributes == null ? new JSONObject(this.payload) : this.standardAttributes.splice(this.payload);
 
         try {
             if (this.hostname == null) {
@@ -508,13 +982,15 @@ public class Request implements Runnable {
             }
 
             if (isMockedRequest) {
+                requestBody.writeJson(requestJSON, null);
                 sig = "unit_test_request_sig";
             } else {
                 String requestBodyHash;
                 {
                     final Mac mac = Mac.getInstance("HmacSHA256");
                     mac.init(keySpec);
-                    final byte[] result = mac.doFinal(requestBody.getBytes());
+                    requestBody.writeJson(requestJSON, mac);
+                    final byte[] result = mac.doFinal();
                     requestBodyHash = Helpers.bytesToHex(result);
                 }
                 {
@@ -527,6 +1003,8 @@ public class Request implements Runnable {
             }
         } catch (Exception e) {
             Teak.log.exception(e);
+            this.acknowledgeJournalEntries();
+            this.abandonSingleFlight();
             return;
         }
 
@@ -537,15 +1015,31 @@ public class Request implements Runnable {
                 this.hostname,
                 isMockedRequest ? Request.MOCKED_PORT : Request.DEFAULT_PORT,
                 this.endpoint);
-            final IHttpRequest request = new DefaultHttpRequest();
-            final IHttpRequest.Response response = request.synchronousRequest(url, this.method, requestBody, sig);
+            final IHttpRequest request = Transports.getHttpRequest();
+            final CircuitBreaker circuitBreaker = Request.dispatcher.circuitBreakerFor(this.hostname);
+            circuitBreaker.onRequestStarting();
+            final IHttpRequest.Response response = request.synchronousRequest(url, this.method, IHttpRequest.RequestBody.signed(requestBody.getBytes(), requestBody.getLength(), sig, this.gzip));
 
             final int statusCode = response == null ? 0 : response.statusCode;
             final String body = response == null ? null : response.body;
 
+            // Never retry sooner than the server asked, or than the host's circuit breaker allows
+            final long retryAfterMs = response == null ? 0 : response.getRetryAfterMillis();
+            if (!Request.isOffline()) {
+                // Being offline is not the host's fault
+                this.minimumRetryDelayMs = Math.max(retryAfterMs, circuitBreaker.onRequestCompleted(statusCode, retryAfterMs));
+            }
+
+            final double responseTime = (System.nanoTime() - startTime) / 1000000.0;
+            Request.metrics.recordResponse(this.hostname, this.endpoint, statusCode, (long) responseTime);
+
             final Map<String, Object> h = this.toMap();
             h.remove("payload");
-            h.put("response_time", (System.nanoTime() - startTime) / 1000000.0);
+            h.put("response_time", responseTime);
+            if (request instanceof PooledHttpRequest) {
+                h.put("tls_handshakes", ((PooledHttpRequest) request).getHandshakeCount());
+            }
+            h.put("queue_depth", Request.dispatcher.getQueueDepth(this.hostname));
             if (response != null && response.headers != null) {
                 h.put("response_headers", response.headers);
             }
@@ -577,21 +1071,70 @@ public class Request implements Runnable {
             this.onRequestCompleted(statusCode, body);
         } catch (Exception e) {
             Teak.log.exception(e);
+            this.abandonSingleFlight();
         }
     }
 
     protected void onRequestCompleted(int responseCode, String responseBody) {
-        if (responseCode >= 500 && this.retry.retryIndex < this.retry.times.length) {
+        // The network went away; wait for it to come back rather than using up a retry
+        final boolean networkFailure = responseCode == 0 || responseCode == IHttpRequest.Response.ERROR_RESPONSE.statusCode;
+        if (networkFailure && this.isDeferrable() && Request.isOffline()) {
+            Request.deferUntilOnline(this);
+            return;
+        }
+
+        final boolean serverFailure = responseCode >= 500 || responseCode == 429;
+        if (serverFailure && this.retryIndex < this.retry.getRetryCount()) {
             // Retry with delay + jitter
             float jitter = (new Random().nextFloat() * 2.0f - 1.0f) * this.retry.jitter;
-            float delay = this.retry.times[this.retry.retryIndex] + jitter;
+            float delay = this.retry.getDelay(this.retryIndex) + jitter;
             if (delay < 0.0f) delay = 0.0f;
 
-            this.retry.retryIndex++;
+            this.retryIndex++;
+            Request.metrics.recordRetry(this.hostname, this.endpoint);
+
+            Request.dispatcher.schedule(this.hostname, this.priority, this, Math.max((long) (delay * 1000.0f), this.minimumRetryDelayMs), TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // Any request that gets through keeps the session alive, so its heartbeat can skip a ping
+        if (responseCode >= 200 && responseCode < 300) {
+            this.session.onRequestSucceeded();
+        }
 
-            Request.requestExecutor.schedule(this, (long) (delay * 1000.0f), TimeUnit.MILLISECONDS);
-        } else if (this.callback != null) {
-            this.callback.onRequestCompleted(responseCode, responseBody);
+        // Server and network failures stay in the journal and will be sent again next launch
+        if (!serverFailure) {
+            this.acknowledgeJournalEntries();
+        }
+
+        // Every request which joined this one gets the same reply
+        final List<Callback> callbacks = new ArrayList<>();
+        if (this.callback != null) {
+            callbacks.add(this.callback);
+        }
+        for (Request request : this.leaveSingleFlight()) {
+            callbacks.add(request.callback);
+        }
+        for (Callback callback : callbacks) {
+            try {
+                callback.onRequestCompleted(responseCode, responseBody);
+            } catch (Exception e) {
+                Teak.log.exception(e);
+            }
+        }
+    }
+
+    protected String getHostname() {
+        return this.hostname;
+    }
+
+    protected String getEndpoint() {
+        return this.endpoint;
+    }
+
+    private void acknowledgeJournalEntries() {
+        if (Request.journal != null && !this.journalIds.isEmpty()) {
+            Request.journal.acknowledge(this.journalIds);
         }
     }
 
@@ -600,8 +1143,12 @@ public class Request implements Runnable {
         map.put("request_id", this.requestId);
         map.put("hostname", this.hostname);
         map.put("endpoint", this.endpoint);
+        map.put("priority", this.priority.name);
         map.put("session", Integer.toHexString(this.session.hashCode()));
         map.put("payload", this.payload);
+        if (this.standardAttributes != null) {
+            map.put("standard_attributes_version", this.standardAttributes.version);
+        }
         return map;
     }
 
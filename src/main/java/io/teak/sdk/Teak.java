@@ -35,6 +35,7 @@ import io.teak.sdk.configuration.RemoteConfiguration;
 import io.teak.sdk.core.ChannelStatus;
 import io.teak.sdk.core.Executors;
 import io.teak.sdk.core.InstrumentableReentrantLock;
+import io.teak.sdk.core.Scheduler;
 import io.teak.sdk.core.TeakCore;
 import io.teak.sdk.event.DeepLinksReadyEvent;
 import io.teak.sdk.event.PushNotificationEvent;
@@ -1012,6 +1013,53 @@ public class Teak extends BroadcastReceiver implements Unobfuscable {
                                                         "traceLog"});
     }
 
+    /**
+     * Get Teak's internal metrics.
+     *
+     * The sections are:
+     * "requests" - latency, status codes, retries, time queued and batch fill for each endpoint,
+     * along with per-host queue and connection statistics.
+     * "events" - backlog, high water mark and delivery count of each event listener.
+     * "scheduler" - live, peak and created thread counts, and the task counts of each queue.
+     * "locks" - sampled wait and hold times, contended acquisitions and recent stack samples for
+     * each internal lock.
+     *
+     * @param section The section to get, or null for all of them keyed by section name
+     * @return JSON string containing the metrics, or null if they are not available
+     */
+    @SuppressWarnings("unused")
+    public static String getMetrics(String section) {
+        Teak.log.trace("Teak.getMetrics", "section", section);
+
+        try {
+            if (section == null) {
+                final Map<String, Object> metrics = new HashMap<>();
+                for (String name : new String[] {"requests", "events", "scheduler", "locks"}) {
+                    metrics.put(name, getMetricsMap(name));
+                }
+                return new JSONObject(metrics).toString();
+            }
+
+            final Map<String, Object> metrics = getMetricsMap(section);
+            return metrics == null ? null : new JSONObject(metrics).toString();
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private static Map<String, Object> getMetricsMap(String section) {
+        if ("requests".equalsIgnoreCase(section)) {
+            return Request.getMetrics();
+        } else if ("events".equalsIgnoreCase(section)) {
+            return TeakEvent.getMetrics();
+        } else if ("scheduler".equalsIgnoreCase(section)) {
+            return Scheduler.get().toMap();
+        } else if ("locks".equalsIgnoreCase(section)) {
+            return InstrumentableReentrantLock.getMetrics();
+        }
+        return null;
+    }
+
     private static String getConfiguration(String subConfiguration, String[] configurationElements) {
         try {
             final TeakConfiguration teakConfiguration = TeakConfiguration.get();
@@ -54,14 +54,14 @@ public class TeakConfiguration {
     }
 
     static {
-        TeakEvent.addEventListener(new TeakEvent.EventListener() {
+        TeakEvent.addStateListener(new TeakEvent.EventListener() {
             @Override
             public void onNewEvent(@NonNull TeakEvent event) {
                 if (event.eventType.equals(RemoteConfigurationEvent.Type) && Instance != null) {
                     Instance.remoteConfiguration = ((RemoteConfigurationEvent) event).remoteConfiguration;
                 }
             }
-        });
+        }, RemoteConfigurationEvent.Type);
     }
 
     ///// Events
@@ -1,13 +1,26 @@
 package io.teak.sdk;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import io.teak.sdk.core.Executors;
-import io.teak.sdk.core.ThreadFactory;
+import io.teak.sdk.core.Histogram;
+import io.teak.sdk.core.Scheduler;
 
 public class TeakEvent {
     public final String eventType;
@@ -18,28 +31,29 @@ public class TeakEvent {
         this.eventType = eventType;
     }
 
-    public static boolean postEvent(@NonNull TeakEvent event) {
-        synchronized (eventProcessingThreadMutex) {
-            if (eventProcessingThread == null || !eventProcessingThread.isAlive()) {
-                eventProcessingThread = ThreadFactory.autoStart(() -> {
-                    try {
-                        TeakEvent event1;
-                        while ((event1 = eventQueue.take()).eventType != null) {
-                            TeakEvent.eventListeners.processEvent(event1);
-                        }
-                    } catch (Exception e) {
-                        Teak.log.exception(e);
-                    }
-                });
-            }
+    public static boolean postEvent(@NonNull final TeakEvent event) {
+        // There is no longer a processing thread for StopEvent to stop
+        if (event.eventType == null) {
+            return true;
         }
 
-        return TeakEvent.eventQueue.offer(event);
+        try {
+            TeakEvent.eventQueue.execute(() -> {
+                try {
+                    TeakEvent.eventListeners.processEvent(event);
+                } catch (Exception e) {
+                    Teak.log.exception(e);
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            Teak.log.exception(e);
+            return false;
+        }
     }
 
-    private static Thread eventProcessingThread;
-    private static final BlockingQueue<TeakEvent> eventQueue = new LinkedBlockingQueue<>();
-    private static final Object eventProcessingThreadMutex = new Object();
+    // Events are handed to state listeners, then listener lanes, in the order they were posted
+    private static final ExecutorService eventQueue = Executors.newSingleThreadExecutor();
 
     ///// Event Listener
 
@@ -47,90 +61,429 @@ public class TeakEvent {
         void onNewEvent(@NonNull TeakEvent event);
     }
 
-    public static void addEventListener(EventListener e) {
-        TeakEvent.eventListeners.add(e);
+    /**
+     * Add a listener, which will be called for events of the given types, or for every event if
+     * no types are given.
+     *
+     * Adding a listener that is already registered adds the new types to it.
+     */
+    public static void addEventListener(@NonNull EventListener e, @NonNull String... eventTypes) {
+        TeakEvent.eventListeners.add(e, eventTypes);
+    }
+
+    /**
+     * Add a listener which records state that other listeners read, like the remote configuration.
+     *
+     * State listeners are called one at a time, in the order they were added, before the event
+     * is handed to any other listener. They run on the thread that delivers every event, so they
+     * must only record state, and never block.
+     */
+    public static void addStateListener(@NonNull EventListener e, @NonNull String... eventTypes) {
+        TeakEvent.eventListeners.addStateListener(e, eventTypes);
     }
 
     public static void removeEventListener(EventListener e) {
         TeakEvent.eventListeners.remove(e);
     }
 
+    /**
+     * Backlog and delivery counts for each listener's lane, and the delivery pool.
+     */
+    public static Map<String, Object> getMetrics() {
+        return TeakEvent.eventListeners.toMap();
+    }
+
+    /**
+     * @param budgetMs Listeners which take longer than this to handle an event are reported, or 0
+     *                 to use the default.
+     */
+    public static void setListenerLatencyBudget(long budgetMs) {
+        TeakEvent.eventListeners.latencyBudgetMs = budgetMs > 0 ? budgetMs : EventListeners.DEFAULT_LATENCY_BUDGET_MS;
+    }
+
     public static class EventListeners {
+        // Listeners are called concurrently, on at most this many threads
+        public static final int MAXIMUM_DELIVERY_THREADS = 4;
+
+        // A lane with this many undelivered events is reported, once, until it catches up
+        public static final int BACKLOG_WARNING_THRESHOLD = 64;
+
+        // A listener still handling an event after this long is reported, with its stack
+        public static final long DEFAULT_LATENCY_BUDGET_MS = 1000;
+
+        // Histograms cover between one and two windows of data
+        public static final long WINDOW_MS = TimeUnit.MINUTES.toMillis(15);
+
+        private static final Lane[] NoLanes = new Lane[0];
+        private static final EventListener[] NoStateListeners = new EventListener[0];
+
+        /**
+         * Each listener gets its own lane, so it sees events one at a time, in the order they were
+         * posted, while other listeners are free to run at the same time.
+         */
+        private static class Lane implements Runnable {
+            // After this many events, the thread goes back to the pool so other lanes get a turn
+            private static final int MAXIMUM_EVENTS_PER_RUN = 16;
+
+            final EventListener listener;
+            final String name;
+            private final Executor executor;
+
+            private final ArrayDeque<TeakEvent> events = new ArrayDeque<>();
+            private boolean scheduled;
+            private boolean backlogReported;
+            private int highWaterMark;
+            private long delivered;
+
+            // The delivery in progress, if any, for the watchdog
+            private Thread deliveryThread;
+            private TeakEvent deliveryEvent;
+            private long deliveryStartedAt;
+            private boolean deliveryReported;
+            private long slowDeliveries;
+
+            final Histogram latency = new Histogram(WINDOW_MS);
+
+            private final EventListeners owner;
+
+            Lane(@NonNull EventListener listener, @NonNull EventListeners owner) {
+                this.listener = listener;
+                this.name = listener.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(listener));
+                this.executor = owner.eventExecutor;
+                this.owner = owner;
+            }
+
+            void post(@NonNull TeakEvent event) {
+                final boolean schedule;
+                final boolean reportBacklog;
+                final int backlog;
+                synchronized (this) {
+                    this.events.add(event);
+                    backlog = this.events.size();
+                    this.highWaterMark = Math.max(this.highWaterMark, backlog);
+
+                    reportBacklog = !this.backlogReported && backlog >= BACKLOG_WARNING_THRESHOLD;
+                    this.backlogReported |= reportBacklog;
+
+                    schedule = !this.scheduled;
+                    this.scheduled = true;
+                }
+
+                if (reportBacklog) {
+                    Teak.log.w("teak_event.lane.backlog", "Event listener is falling behind", Helpers.mm.h("listener", this.name, "backlog", backlog, "event_type", event.eventType));
+                }
+
+                if (schedule) {
+                    this.executor.execute(this);
+                }
+            }
+
+            @Override
+            public void run() {
+                for (int i = 0; i < MAXIMUM_EVENTS_PER_RUN; i++) {
+                    final TeakEvent event;
+                    final long startedAt = System.nanoTime();
+                    synchronized (this) {
+                        event = this.events.poll();
+                        if (event == null) {
+                            this.scheduled = false;
+                            this.backlogReported = false;
+                            return;
+                        }
+
+                        this.deliveryThread = Thread.currentThread();
+                        this.deliveryEvent = event;
+                        this.deliveryStartedAt = startedAt;
+                        this.deliveryReported = false;
+                    }
+                    this.owner.armWatchdog();
+
+                    try {
+                        this.listener.onNewEvent(event);
+                    } catch (Exception e) {
+                        Teak.log.exception(e);
+                    }
+
+                    final long elapsedUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt);
+                    synchronized (this) {
+                        this.delivered++;
+                        this.deliveryThread = null;
+                        this.deliveryEvent = null;
+                    }
+                    this.latency.record(elapsedUs);
+                    this.owner.latencyFor(event.eventType).record(elapsedUs);
+                }
+
+                // Still scheduled, pick up where this left off once other lanes have had a turn
+                this.executor.execute(this);
+            }
+
+            /**
+             * Report the delivery in progress, once, if it has gone over budget.
+             *
+             * @return true if a delivery is in progress.
+             */
+            boolean checkDelivery(long now, long budgetMs) {
+                final Thread thread;
+                final TeakEvent event;
+                final long elapsedMs;
+                synchronized (this) {
+                    if (this.deliveryThread == null) return false;
+
+                    elapsedMs = TimeUnit.NANOSECONDS.toMillis(now - this.deliveryStartedAt);
+                    if (this.deliveryReported || elapsedMs < budgetMs) return true;
+
+                    this.deliveryReported = true;
+                    this.slowDeliveries++;
+                    thread = this.deliveryThread;
+                    event = this.deliveryEvent;
+                }
+
+                final StringBuilder backTrace = new StringBuilder();
+                for (StackTraceElement element : thread.getStackTrace()) {
+                    backTrace.append("\n\t").append(element.toString());
+                }
+                Teak.log.w("teak_event.listener.slow", "Event listener is over its latency budget",
+                    Helpers.mm.h("listener", this.name, "event_type", event.eventType, "elapsed_ms", elapsedMs,
+                        "budget_ms", budgetMs, "stack", backTrace.toString()));
+                return true;
+            }
+
+            synchronized Map<String, Object> toMap() {
+                final Map<String, Object> map = new HashMap<>();
+                map.put("queued", this.events.size());
+                map.put("high_water_mark", this.highWaterMark);
+                map.put("delivered", this.delivered);
+                map.put("slow_deliveries", this.slowDeliveries);
+                map.put("latency_us", this.latency.toMap());
+                return map;
+            }
+        }
+
+        private static class Registration {
+            final Lane lane;
+            Set<String> eventTypes; // null for every event type
+
+            Registration(@NonNull Lane lane, @Nullable Set<String> eventTypes) {
+                this.lane = lane;
+                this.eventTypes = eventTypes;
+            }
+        }
+
+        // Registrations in the order they were added, only touched while holding the mutex
         private final Object eventListenersMutex = new Object();
-        private ArrayList<EventListener> eventListeners = new ArrayList<>();
+        private final List<Registration> registrations = new ArrayList<>();
+
+        // Immutable snapshots, rebuilt whenever a listener is added or removed, so that processEvent()
+        // never copies or locks. Listeners which are added during processing are simply missed by
+        // the event being processed.
+        private volatile Map<String, Lane[]> lanesByEventType = Collections.emptyMap();
+        private volatile Lane[] lanesForAllEventTypes = NoLanes;
+        private volatile Lane[] allLanes = NoLanes;
+
+        // State listeners by event type, replaced whenever one is added or removed
+        private volatile Map<String, EventListener[]> stateListenersByEventType = Collections.emptyMap();
+
+        // Listener latency, by event type
+        private final Map<String, Histogram> eventTypeLatency = new HashMap<>();
 
-        private final ExecutorService eventExecutor = Executors.newSingleThreadExecutor();
+        volatile long latencyBudgetMs = DEFAULT_LATENCY_BUDGET_MS;
 
-        void add(EventListener e) {
+        // Only scheduled while there are deliveries in progress
+        private final ScheduledExecutorService watchdogExecutor = Executors.newSingleThreadScheduledExecutor();
+        private final AtomicBoolean watchdogArmed = new AtomicBoolean(false);
+
+        private final Scheduler.Queue eventExecutor = Executors.newBoundedThreadPool(MAXIMUM_DELIVERY_THREADS);
+
+        void add(@NonNull EventListener e, @NonNull String... eventTypes) {
+            final Set<String> eventTypesSet = eventTypes.length == 0 ? null : new HashSet<>(Arrays.asList(eventTypes));
             synchronized (this.eventListenersMutex) {
-                if (!this.eventListeners.contains(e)) {
-                    this.eventListeners.add(e);
+                for (Registration registration : this.registrations) {
+                    if (registration.lane.listener == e) {
+                        if (registration.eventTypes != null) {
+                            if (eventTypesSet == null) {
+                                registration.eventTypes = null;
+                            } else {
+                                registration.eventTypes.addAll(eventTypesSet);
+                            }
+                            this.rebuildSnapshots();
+                        }
+                        return;
+                    }
                 }
+
+                this.registrations.add(new Registration(new Lane(e, this), eventTypesSet));
+                this.rebuildSnapshots();
             }
         }
 
-        void remove(EventListener e) {
+        void addStateListener(@NonNull EventListener e, @NonNull String... eventTypes) {
+            if (eventTypes.length == 0) {
+                throw new IllegalArgumentException("State listeners must be added for specific event types");
+            }
+
             synchronized (this.eventListenersMutex) {
-                this.eventListeners.remove(e);
+                final Map<String, EventListener[]> stateListenersByEventType = new HashMap<>(this.stateListenersByEventType);
+                for (String eventType : eventTypes) {
+                    final EventListener[] current = stateListenersByEventType.get(eventType);
+                    final List<EventListener> listeners = current == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(current));
+                    if (!listeners.contains(e)) {
+                        listeners.add(e);
+                    }
+                    stateListenersByEventType.put(eventType, listeners.toArray(NoStateListeners));
+                }
+                this.stateListenersByEventType = Collections.unmodifiableMap(stateListenersByEventType);
             }
         }
 
-        void processEvent(final TeakEvent event) {
-            // Because events can cause other event listeners to get added (and that should be allowed)
-            // copy the list on each event
-            // TODO: There is probably a better way
-            ArrayList<EventListener> eventListenersForEvent;
+        void remove(EventListener e) {
             synchronized (this.eventListenersMutex) {
-                eventListenersForEvent = this.eventListeners;
-                this.eventListeners = new ArrayList<>(this.eventListeners);
+                final Map<String, EventListener[]> stateListenersByEventType = new HashMap<>();
+                boolean removedStateListener = false;
+                for (Map.Entry<String, EventListener[]> entry : this.stateListenersByEventType.entrySet()) {
+                    final List<EventListener> listeners = new ArrayList<>(Arrays.asList(entry.getValue()));
+                    removedStateListener |= listeners.remove(e);
+                    if (!listeners.isEmpty()) {
+                        stateListenersByEventType.put(entry.getKey(), listeners.toArray(NoStateListeners));
+                    }
+                }
+                if (removedStateListener) {
+                    this.stateListenersByEventType = Collections.unmodifiableMap(stateListenersByEventType);
+                }
+
+                for (Iterator<Registration> iterator = this.registrations.iterator(); iterator.hasNext();) {
+                    if (iterator.next().lane.listener == e) {
+                        iterator.remove();
+                        this.rebuildSnapshots();
+                        return;
+                    }
+                }
+            }
+        }
+
+        // Must hold eventListenersMutex
+        private void rebuildSnapshots() {
+            final Set<String> eventTypes = new HashSet<>();
+            final List<Lane> lanesForAllEventTypes = new ArrayList<>();
+            final List<Lane> allLanes = new ArrayList<>();
+            for (Registration registration : this.registrations) {
+                allLanes.add(registration.lane);
+                if (registration.eventTypes == null) {
+                    lanesForAllEventTypes.add(registration.lane);
+                } else {
+                    eventTypes.addAll(registration.eventTypes);
+                }
             }
 
-            if (false && BuildConfig.DEBUG) {
-                debugProcessEventOnListeners(event, eventListenersForEvent);
-            } else {
-                releaseProcessEventOnListeners(event, eventListenersForEvent);
+            // Each event type gets every listener which wants it, in registration order
+            final Map<String, Lane[]> lanesByEventType = new HashMap<>();
+            for (String eventType : eventTypes) {
+                final List<Lane> lanes = new ArrayList<>();
+                for (Registration registration : this.registrations) {
+                    if (registration.eventTypes == null || registration.eventTypes.contains(eventType)) {
+                        lanes.add(registration.lane);
+                    }
+                }
+                lanesByEventType.put(eventType, lanes.toArray(NoLanes));
             }
+
+            this.lanesByEventType = Collections.unmodifiableMap(lanesByEventType);
+            this.lanesForAllEventTypes = lanesForAllEventTypes.toArray(NoLanes);
+            this.allLanes = allLanes.toArray(NoLanes);
         }
 
-        private void releaseProcessEventOnListeners(final TeakEvent event, ArrayList<EventListener> listeners) {
-            synchronized (this.eventExecutor) {
-                for (EventListener e : listeners) {
-                    final EventListener currentListener = e;
-                    this.eventExecutor.execute(() -> currentListener.onNewEvent(event));
+        @NonNull
+        private Histogram latencyFor(@NonNull String eventType) {
+            synchronized (this.eventTypeLatency) {
+                Histogram histogram = this.eventTypeLatency.get(eventType);
+                if (histogram == null) {
+                    histogram = new Histogram(WINDOW_MS);
+                    this.eventTypeLatency.put(eventType, histogram);
                 }
+                return histogram;
+            }
+        }
+
+        ///// Watchdog
+
+        private void armWatchdog() {
+            if (!this.watchdogArmed.get() && this.watchdogArmed.compareAndSet(false, true)) {
+                this.watchdogExecutor.schedule(this::checkDeliveries, this.latencyBudgetMs, TimeUnit.MILLISECONDS);
             }
         }
 
-        // This version makes sure no event handler is taking longer than 5 seconds to process.
-        // If something does, it will kill the thread, and print the trace out as an error.
-        private void debugProcessEventOnListeners(final TeakEvent event, ArrayList<EventListener> listeners) {
-            for (EventListener e : listeners) {
-                // TODO: This seems...kind of horrible, but maybe the Java runtime will be fine with it
-                final EventListener currentListener = e;
-                final Thread thread = ThreadFactory.autoStart(() -> currentListener.onNewEvent(event));
+        private void checkDeliveries() {
+            this.watchdogArmed.set(false);
+
+            final long now = System.nanoTime();
+            final long budgetMs = this.latencyBudgetMs;
+            boolean deliveriesInProgress = false;
+            for (Lane lane : this.allLanes) {
                 try {
-                    thread.join(5000);
-                } catch (Exception ignored) {
+                    deliveriesInProgress |= lane.checkDelivery(now, budgetMs);
+                } catch (Exception e) {
+                    Teak.log.exception(e, false);
                 }
+            }
 
-                if (thread.isAlive()) {
-                    StackTraceElement[] trace = thread.getStackTrace();
-                    StringBuilder backTrace = new StringBuilder();
-                    for (StackTraceElement element : trace) {
-                        backTrace.append("\n\t").append(element.toString());
-                    }
+            if (deliveriesInProgress) {
+                this.armWatchdog();
+            }
+        }
 
-                    String errorText = "Took too long processing '" + event.eventType + "' in:" + backTrace;
+        @NonNull
+        private Lane[] lanesFor(@NonNull String eventType) {
+            final Lane[] lanes = this.lanesByEventType.get(eventType);
+            return lanes == null ? this.lanesForAllEventTypes : lanes;
+        }
 
-                    // TODO: Probably shouldn't throw here, but report it somehow
-                    if (android.os.Debug.isDebuggerConnected()) {
-                        android.util.Log.e(Teak.LOG_TAG, errorText);
-                    } else {
-                        thread.interrupt();
-                        throw new IllegalStateException(errorText);
+        void processEvent(final TeakEvent event) {
+            // State is recorded before any lane can see the event, and read it
+            final EventListener[] stateListeners = this.stateListenersByEventType.get(event.eventType);
+            if (stateListeners != null) {
+                for (EventListener listener : stateListeners) {
+                    final long startedAt = System.nanoTime();
+                    try {
+                        listener.onNewEvent(event);
+                    } catch (Exception e) {
+                        Teak.log.exception(e);
                     }
+                    this.latencyFor(event.eventType).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt));
                 }
             }
+
+            final Lane[] lanesForEvent = this.lanesFor(event.eventType);
+            if (lanesForEvent.length == 0) {
+                return;
+            }
+
+            for (Lane lane : lanesForEvent) {
+                lane.post(event);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> lanes = new HashMap<>();
+            synchronized (this.eventListenersMutex) {
+                for (Registration registration : this.registrations) {
+                    lanes.put(registration.lane.name, registration.lane.toMap());
+                }
+            }
+
+            final Map<String, Object> eventTypes = new HashMap<>();
+            synchronized (this.eventTypeLatency) {
+                for (Map.Entry<String, Histogram> entry : this.eventTypeLatency.entrySet()) {
+                    eventTypes.put(entry.getKey(), entry.getValue().toMap());
+                }
+            }
+
+            final Map<String, Object> map = new HashMap<>();
+            map.put("lanes", lanes);
+            map.put("event_type_latency_us", eventTypes);
+            map.put("latency_budget_ms", this.latencyBudgetMs);
+            map.put("running_lanes", this.eventExecutor.getRunningCount());
+            map.put("waiting_lanes", this.eventExecutor.getQueuedCount());
+            return map;
         }
     }
 
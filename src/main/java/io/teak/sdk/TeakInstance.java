@@ -21,21 +21,21 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
 
 import androidx.annotation.NonNull;
 import io.teak.sdk.configuration.RemoteConfiguration;
+import io.teak.sdk.core.RequestDispatcher;
 import io.teak.sdk.core.Session;
+import io.teak.sdk.core.SettableFuture;
 import io.teak.sdk.core.TeakCore;
-import io.teak.sdk.core.ThreadFactory;
 import io.teak.sdk.event.LifecycleEvent;
 import io.teak.sdk.event.LogoutEvent;
 import io.teak.sdk.event.RemoteConfigurationEvent;
 import io.teak.sdk.event.TrackEventEvent;
 import io.teak.sdk.event.UserIdEvent;
 import io.teak.sdk.facebook.AccessTokenTracker;
+import io.teak.sdk.io.Transports;
 import io.teak.sdk.json.JSONArray;
 import io.teak.sdk.json.JSONObject;
 import io.teak.sdk.push.PushState;
@@ -61,6 +61,14 @@ public class TeakInstance implements Unobfuscable {
         this.context = activity.getApplicationContext();
         this.activityHashCode = activity.hashCode();
         this.objectFactory = objectFactory;
+
+        // Before anything has a chance to make a request
+        try {
+            Transports.setTransport(objectFactory.getTransport());
+        } catch (Exception e) {
+            Teak.log.exception(e);
+        }
+
         this.teakCore = TeakCore.get(this.context);
         PushState.init(this.context);
 
@@ -89,7 +97,7 @@ public class TeakInstance implements Unobfuscable {
                     NotificationBuilder.configureNotificationChannelId(TeakInstance.this.context, category);
                 }
             }
-        });
+        }, RemoteConfigurationEvent.Type);
 
         // Get Teak Configuration ready
         if (!TeakConfiguration.initialize(context, this.objectFactory)) {
@@ -162,16 +170,7 @@ public class TeakInstance implements Unobfuscable {
     ///// channels
 
     public Future<Teak.Channel.Reply> setChannelState(final Teak.Channel.Type channel, final Teak.Channel.State state) {
-        final ArrayBlockingQueue<Teak.Channel.Reply> q = new ArrayBlockingQueue<>(1);
-        final FutureTask<Teak.Channel.Reply> ret = new FutureTask<>(() -> {
-            try {
-                return q.take();
-            } catch (InterruptedException e) {
-                Teak.log.exception(e);
-            }
-            return null;
-        });
-        ThreadFactory.autoStart(ret);
+        final SettableFuture<Teak.Channel.Reply> ret = new SettableFuture<>();
 
         Session.whenUserIdIsReadyRun((session) -> {
             Map<String, Object> payload = new HashMap<>();
@@ -208,11 +207,11 @@ public class TeakInstance implements Unobfuscable {
                             }
                         }
 
-                        // Offer to queue
-                        q.offer(new Teak.Channel.Reply(error, replyState, replyType, replyErrors));
+                        // Complete the Future
+                        ret.set(new Teak.Channel.Reply(error, replyState, replyType, replyErrors));
                     } catch (Exception e) {
                         Teak.log.exception(e);
-                        q.offer(new Teak.Channel.Reply(true, Teak.Channel.State.Unknown, channel, Collections.singletonMap("sdk", e.toString().split("\n"))));
+                        ret.set(new Teak.Channel.Reply(true, Teak.Channel.State.Unknown, channel, Collections.singletonMap("sdk", e.toString().split("\n"))));
                     }
                 });
         });
@@ -220,16 +219,7 @@ public class TeakInstance implements Unobfuscable {
     }
 
     public Future<Teak.Channel.Reply> setCategoryState(final Teak.Channel.Type channel, final String category, final Teak.Channel.State state) {
-        final ArrayBlockingQueue<Teak.Channel.Reply> q = new ArrayBlockingQueue<>(1);
-        final FutureTask<Teak.Channel.Reply> ret = new FutureTask<>(() -> {
-            try {
-                return q.take();
-            } catch (InterruptedException e) {
-                Teak.log.exception(e);
-            }
-            return null;
-        });
-        ThreadFactory.autoStart(ret);
+        final SettableFuture<Teak.Channel.Reply> ret = new SettableFuture<>();
 
         Session.whenUserIdIsReadyRun((session) -> {
             Map<String, Object> payload = new HashMap<>();
@@ -268,11 +258,11 @@ public class TeakInstance implements Unobfuscable {
                             }
                         }
 
-                        // Offer to queue
-                        q.offer(new Teak.Channel.Reply(error, replyState, replyType, replyCategory, replyErrors));
+                        // Complete the Future
+                        ret.set(new Teak.Channel.Reply(error, replyState, replyType, replyCategory, replyErrors));
                     } catch (Exception e) {
                         Teak.log.exception(e);
-                        q.offer(new Teak.Channel.Reply(true, Teak.Channel.State.Unknown, channel, Collections.singletonMap("sdk", e.toString().split("\n"))));
+                        ret.set(new Teak.Channel.Reply(true, Teak.Channel.State.Unknown, channel, Collections.singletonMap("sdk", e.toString().split("\n"))));
                     }
                 });
         });
@@ -280,16 +270,7 @@ public class TeakInstance implements Unobfuscable {
     }
 
     public Future<Teak.Notification.Reply> scheduleNotification(final String creativeId, final long delayInSeconds, final Map<String, Object> personalizationData) {
-        final ArrayBlockingQueue<Teak.Notification.Reply> q = new ArrayBlockingQueue<>(1);
-        final FutureTask<Teak.Notification.Reply> ret = new FutureTask<>(() -> {
-            try {
-                return q.take();
-            } catch (InterruptedException e) {
-                Teak.log.exception(e);
-            }
-            return null;
-        });
-        ThreadFactory.autoStart(ret);
+        final SettableFuture<Teak.Notification.Reply> ret = new SettableFuture<>();
 
         Session.whenUserIdIsOrWasReadyRun((session) -> {
             Map<String, Object> payload = new HashMap<>();
@@ -334,13 +315,13 @@ public class TeakInstance implements Unobfuscable {
                             }
                         }
 
-                        // Offer to queue
-                        q.offer(new Teak.Notification.Reply(error, status, replyErrors, scheduleIds));
+                        // Complete the Future
+                        ret.set(new Teak.Notification.Reply(error, status, replyErrors, scheduleIds));
                     } catch (Exception e) {
                         Teak.log.exception(e);
-                        q.offer(new Teak.Notification.Reply(true, Teak.Notification.Reply.Status.Error, Collections.singletonMap("sdk", e.toString().split("\n")), null));
+                        ret.set(new Teak.Notification.Reply(true, Teak.Notification.Reply.Status.Error, Collections.singletonMap("sdk", e.toString().split("\n")), null));
                     }
-                });
+                }, RequestDispatcher.Priority.Interactive);
         });
         return ret;
     }
@@ -17,8 +17,9 @@ import java.util.regex.Pattern;
 
 import androidx.annotation.NonNull;
 import io.teak.sdk.Helpers.mm;
+import io.teak.sdk.core.RequestDispatcher;
 import io.teak.sdk.core.Session;
-import io.teak.sdk.core.ThreadFactory;
+import io.teak.sdk.core.SettableFuture;
 import io.teak.sdk.json.JSONArray;
 import io.teak.sdk.json.JSONException;
 import io.teak.sdk.json.JSONObject;
@@ -177,6 +178,14 @@ public class TeakNotification implements Unobfuscable {
          */
         @SuppressWarnings("unused")
         public static Future<Reward> rewardFromRewardId(final String teakRewardId) {
+            return Reward.claimRewardId(teakRewardId);
+        }
+
+        /**
+         * Same as rewardFromRewardId(), for SDK code which continues from the reward, with
+         * whenDone(), instead of waiting for it.
+         */
+        public static SettableFuture<Reward> claimRewardId(final String teakRewardId) {
             Teak.log.trace("TeakNotification.Reward.rewardFromRewardId", "teakRewardId", teakRewardId);
 
             if (Teak.Instance == null || !Teak.Instance.isEnabled()) {
@@ -189,16 +198,7 @@ public class TeakNotification implements Unobfuscable {
                 return null;
             }
 
-            final ArrayBlockingQueue<Reward> q = new ArrayBlockingQueue<>(1);
-            final FutureTask<Reward> ret = new FutureTask<>(() -> {
-                try {
-                    return q.take();
-                } catch (InterruptedException e) {
-                    Teak.log.exception(e);
-                }
-                return null;
-            });
-            ThreadFactory.autoStart(ret);
+            final SettableFuture<Reward> ret = new SettableFuture<>();
 
             Session.whenUserIdIsReadyRun(session -> {
                 Teak.log.i("reward.claim.request", mm.h("teakRewardId", teakRewardId));
@@ -209,25 +209,25 @@ public class TeakNotification implements Unobfuscable {
                     HashMap<String, Object> payload = new HashMap<>();
                     payload.put("clicking_user_id", session.userId());
 
-                    Request.submit("rewards.gocarrot.com", "/" + teakRewardId + "/clicks", payload, session,
+                    Request.submit("rewards.gocarrot.com", "POST", "/" + teakRewardId + "/clicks", payload, session,
                         (responseCode, responseBody) -> {
                             try {
                                 final JSONObject responseJson = new JSONObject(responseBody);
 
                                 // https://sentry.io/organizations/teak/issues/1354507192/?project=141792&referrer=alert_email
                                 if (responseBody == null) {
-                                    q.offer(null);
+                                    ret.set(null);
                                     return;
                                 }
 
                                 final JSONObject rewardResponse = responseJson.optJSONObject("response");
                                 if (rewardResponse == null) {
-                                    q.offer(null);
+                                    ret.set(null);
                                     return;
                                 }
 
                                 if (rewardResponse.get("status") == null) {
-                                    q.offer(null);
+                                    ret.set(null);
                                     return;
                                 }
 
@@ -243,18 +243,18 @@ public class TeakNotification implements Unobfuscable {
 
                                 Teak.log.i("reward.claim.response", responseJson.toMap());
 
-                                q.offer(reward);
+                                ret.set(reward);
                             } catch (JSONException e) {
                                 Teak.log.exception(e, false);
-                                q.offer(null);
+                                ret.set(null);
                             } catch (Exception e) {
                                 Teak.log.exception(e);
-                                q.offer(null); // TODO: Fix this?
+                                ret.set(null); // TODO: Fix this?
                             }
-                        });
+                        }, RequestDispatcher.Priority.Interactive);
                 } catch (Exception e) {
                     Teak.log.exception(e);
-                    q.offer(null); // TODO: Fix this?
+                    ret.set(null); // TODO: Fix this?
                 }
             });
 
@@ -332,7 +332,7 @@ public class TeakNotification implements Unobfuscable {
             payload.put("message", defaultMessage);
             payload.put("offset", delayInSeconds);
 
-            Request.submit("/me/local_notify.json", payload, session,
+            Request.submit(null, "POST", "/me/local_notify.json", payload, session,
                 (responseCode, responseBody) -> {
                     try {
                         JSONObject response = new JSONObject(responseBody);
@@ -367,7 +367,7 @@ public class TeakNotification implements Unobfuscable {
                     }
 
                     ret.run();
-                });
+                }, RequestDispatcher.Priority.Interactive);
         });
         return ret;
     }
@@ -19,9 +19,9 @@ import io.teak.sdk.io.IAndroidResources;
 import io.teak.sdk.json.JSONObject;
 
 public class DataCollectionConfiguration {
-    private boolean enableIDFA;
-    private boolean enableFacebookAccessToken;
-    private boolean enablePushKey;
+    private volatile boolean enableIDFA;
+    private volatile boolean enableFacebookAccessToken;
+    private volatile boolean enablePushKey;
 
     @SuppressWarnings("WeakerAccess")
     public static final String TEAK_ENABLE_IDFA_RESOURCE = "io_teak_enable_idfa";
@@ -47,8 +47,9 @@ public class DataCollectionConfiguration {
         // Push key
         this.enablePushKey = checkFeatureConfiguration(TEAK_ENABLE_PUSH_KEY_RESOURCE, androidResources, metaData);
 
-        // Listen for Ad Info event and update enableIDFA
-        TeakEvent.addEventListener(event -> {
+        // Listen for Ad Info event and update enableIDFA. Opt outs must be applied before Session
+        // sees a UserIdEvent and identifies the user, so this records state ahead of it.
+        TeakEvent.addStateListener(event -> {
             switch (event.eventType) {
                 case AdvertisingInfoEvent.Type: {
                     DataCollectionConfiguration.this.enableIDFA &= !((AdvertisingInfoEvent) event).limitAdTracking;
@@ -63,7 +64,7 @@ public class DataCollectionConfiguration {
                     this.enableFacebookAccessToken &= !userIdEvent.userConfiguration.optOutFacebook;
                 } break;
             }
-        });
+        }, AdvertisingInfoEvent.Type, UserIdEvent.Type);
     }
 
     private static boolean checkFeatureConfiguration(@NonNull String featureName, @NonNull IAndroidResources androidResources, @Nullable Bundle metaData) {
@@ -92,6 +93,30 @@ public class DataCollectionConfiguration {
         }
     }
 
+    /**
+     * Add the advertising id, Facebook access token and push registration to a user's identify
+     * payload, leaving out anything the game or the user has opted out of.
+     *
+     * @return true if the push registration was added.
+     */
+    public boolean putIdentifiers(@NonNull Map<String, Object> payload, @NonNull DeviceConfiguration deviceConfiguration, @Nullable String facebookAccessToken) {
+        final boolean enableIDFA = this.enableIDFA;
+        final String advertisingId = deviceConfiguration.advertisingId;
+        payload.put("android_limit_ad_tracking", !enableIDFA);
+        payload.put("android_ad_id", advertisingId != null && enableIDFA ? advertisingId : "");
+
+        if (facebookAccessToken != null && this.enableFacebookAccessToken) {
+            payload.put("access_token", facebookAccessToken);
+        }
+
+        final Map<String, String> pushRegistration = deviceConfiguration.pushRegistration;
+        if (pushRegistration != null && this.enablePushKey) {
+            payload.putAll(pushRegistration);
+            return true;
+        }
+        return false;
+    }
+
     public boolean enableIDFA() {
         return enableIDFA;
     }
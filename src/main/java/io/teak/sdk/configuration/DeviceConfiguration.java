@@ -19,7 +19,7 @@ import io.teak.sdk.json.JSONObject;
 import io.teak.sdk.push.IPushProvider;
 
 public class DeviceConfiguration {
-    public Map<String, String> pushRegistration;
+    public volatile Map<String, String> pushRegistration;
 
     public final String deviceId;
     public final String deviceManufacturer;
@@ -33,8 +33,8 @@ public class DeviceConfiguration {
     public final long memoryInBytes;
     public final Map<String, Object> displayMetrics;
 
-    public String advertisingId;
-    public boolean limitAdTracking;
+    public volatile String advertisingId;
+    public volatile boolean limitAdTracking;
 
     private final IPushProvider pushProvider;
 
@@ -78,8 +78,9 @@ public class DeviceConfiguration {
             return;
         }
 
-        // Listen for Ad Info and Push Key events
-        TeakEvent.addEventListener(event -> {
+        // Listen for Ad Info and Push Key events. Session reads these when it sees the same events,
+        // so they are recorded before it does.
+        TeakEvent.addStateListener(event -> {
             switch (event.eventType) {
                 case AdvertisingInfoEvent.Type: {
                     advertisingId = ((AdvertisingInfoEvent) event).advertisingId;
@@ -89,7 +90,7 @@ public class DeviceConfiguration {
                     pushRegistration = ((PushRegistrationEvent) event).registration;
                 } break;
             }
-        });
+        }, AdvertisingInfoEvent.Type, PushRegistrationEvent.Registered);
 
         // Request Ad Info, event will inform us when it's ready
         androidDeviceInfo.requestAdvertisingId();
@@ -0,0 +1,244 @@
+package io.teak.sdk.configuration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.teak.sdk.core.RequestDispatcher;
+
+/**
+ * Everything 'endpoint_configurations' says about a single endpoint.
+ *
+ * Compiled once, when the remote configuration arrives, so that creating a Request is just a
+ * lookup. Policies are immutable, and shared by every request to the endpoint.
+ */
+public class EndpointPolicy {
+    public static final EndpointPolicy Default = new EndpointPolicy();
+
+    public static class Retry {
+        public final float jitter;
+        private final float[] times;
+
+        Retry(float jitter, @NonNull float[] times) {
+            this.jitter = jitter;
+            this.times = times;
+        }
+
+        public int getRetryCount() {
+            return this.times.length;
+        }
+
+        /**
+         * @return Delay in seconds before the given retry, not including jitter.
+         */
+        public float getDelay(int retryIndex) {
+            return this.times[retryIndex];
+        }
+    }
+
+    public static class Batch {
+        public final long count;
+        public final float time;
+        public final float maximumWaitTime;
+        public final long maximumBytes;
+        public final boolean sharedAttributes;
+
+        Batch(long count, float time, float maximumWaitTime, long maximumBytes, boolean sharedAttributes) {
+            this.count = count;
+            this.time = time;
+            this.maximumWaitTime = maximumWaitTime;
+            this.maximumBytes = maximumBytes;
+            this.sharedAttributes = sharedAttributes;
+        }
+    }
+
+    public final boolean blackhole;
+    public final boolean gzip;
+    public final Retry retry;
+    public final Batch batch;
+
+    // Null if the configuration does not say, so the request can decide
+    @Nullable
+    public final RequestDispatcher.Priority priority;
+    @Nullable
+    public final Boolean singleFlight;
+
+    private EndpointPolicy() {
+        this.blackhole = false;
+        this.gzip = false;
+        this.retry = new Retry(0.0f, new float[] {});
+        this.batch = new Batch(1, 0.0f, 0.0f, 0, false);
+        this.priority = null;
+        this.singleFlight = null;
+    }
+
+    private EndpointPolicy(@NonNull String path, @NonNull Map<String, Object> config, @NonNull List<String> errors) {
+        this.blackhole = booleanValue(config, "blackhole", Default.blackhole, path, errors);
+        this.gzip = booleanValue(config, "gzip", Default.gzip, path, errors);
+
+        RequestDispatcher.Priority priority = null;
+        if (config.containsKey("priority")) {
+            priority = RequestDispatcher.Priority.fromName(String.valueOf(config.get("priority")));
+            if (priority == null) {
+                errors.add(path + "/priority: unknown priority '" + config.get("priority") + "'");
+            }
+        }
+        this.priority = priority;
+
+        this.singleFlight = config.containsKey("single_flight") ? booleanValue(config, "single_flight", false, path, errors) : null;
+
+        // Retry configuration
+        final Map<String, Object> retryConfig = mapValue(config, "retry", path, errors);
+        if (retryConfig != null) {
+            final String retryPath = path + "/retry";
+            final float jitter = floatValue(retryConfig, "jitter", Default.retry.jitter, retryPath, errors);
+
+            float[] times = Default.retry.times;
+            if (retryConfig.containsKey("times")) {
+                final Object timesValue = retryConfig.get("times");
+                if (timesValue instanceof List) {
+                    final List<?> timesList = (List<?>) timesValue;
+                    times = new float[timesList.size()];
+                    for (int i = 0; i < times.length; i++) {
+                        final Float time = toFloat(timesList.get(i));
+                        if (time == null) {
+                            errors.add(retryPath + "/times/" + i + ": expected a number, got '" + timesList.get(i) + "'");
+                        }
+                        times[i] = time == null ? 10.0f : time;
+                    }
+                } else {
+                    errors.add(retryPath + "/times: expected a list, got '" + timesValue + "'");
+                }
+            }
+            this.retry = new Retry(jitter, times);
+        } else {
+            this.retry = Default.retry;
+        }
+
+        // Batch configuration
+        final Map<String, Object> batchConfig = mapValue(config, "batch", path, errors);
+        if (batchConfig != null) {
+            final String batchPath = path + "/batch";
+            long count = longValue(batchConfig, "count", Default.batch.count, batchPath, errors);
+            final float time = floatValue(batchConfig, "time", Default.batch.time, batchPath, errors);
+            final float maximumWaitTime = floatValue(batchConfig, "maximum_wait_time", Default.batch.maximumWaitTime, batchPath, errors);
+            final long maximumBytes = longValue(batchConfig, "maximum_bytes", Default.batch.maximumBytes, batchPath, errors);
+            final boolean sharedAttributes = booleanValue(batchConfig, "shared_attributes", Default.batch.sharedAttributes, batchPath, errors);
+
+            // Last-write-wins batches are never full
+            if (booleanValue(batchConfig, "lww", false, batchPath, errors)) {
+                count = Long.MAX_VALUE;
+            }
+            this.batch = new Batch(count, time, maximumWaitTime, maximumBytes, sharedAttributes);
+        } else {
+            this.batch = Default.batch;
+        }
+    }
+
+    /**
+     * Compile the 'endpoint_configurations' section of the remote configuration.
+     *
+     * @param errors Receives a description of every value that could not be used. The default is
+     *               used in its place.
+     * @return Policies keyed by hostname, then endpoint.
+     */
+    @NonNull
+    public static Map<String, Map<String, EndpointPolicy>> compile(@Nullable Map<String, Object> endpointConfigurations, @NonNull List<String> errors) {
+        final Map<String, Map<String, EndpointPolicy>> ret = new HashMap<>();
+        if (endpointConfigurations == null) return ret;
+
+        for (Map.Entry<String, Object> host : endpointConfigurations.entrySet()) {
+            if (!(host.getValue() instanceof Map)) {
+                errors.add(host.getKey() + ": expected an object, got '" + host.getValue() + "'");
+                continue;
+            }
+
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> endpoints = (Map<String, Object>) host.getValue();
+            final Map<String, EndpointPolicy> policies = new HashMap<>();
+            for (Map.Entry<String, Object> endpoint : endpoints.entrySet()) {
+                final String path = host.getKey() + endpoint.getKey();
+                if (!(endpoint.getValue() instanceof Map)) {
+                    errors.add(path + ": expected an object, got '" + endpoint.getValue() + "'");
+                    continue;
+                }
+
+                @SuppressWarnings("unchecked")
+                final Map<String, Object> config = (Map<String, Object>) endpoint.getValue();
+                policies.put(endpoint.getKey(), new EndpointPolicy(path, config, errors));
+            }
+            ret.put(host.getKey(), Collections.unmodifiableMap(policies));
+        }
+        return Collections.unmodifiableMap(ret);
+    }
+
+    ///// Value parsing, numbers and booleans may also arrive as strings
+
+    @Nullable
+    private static Map<String, Object> mapValue(@NonNull Map<String, Object> config, @NonNull String key, @NonNull String path, @NonNull List<String> errors) {
+        if (!config.containsKey(key)) return null;
+
+        final Object value = config.get(key);
+        if (value instanceof Map) {
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> ret = (Map<String, Object>) value;
+            return ret;
+        }
+        errors.add(path + "/" + key + ": expected an object, got '" + value + "'");
+        return null;
+    }
+
+    private static boolean booleanValue(@NonNull Map<String, Object> config, @NonNull String key, boolean defaultValue, @NonNull String path, @NonNull List<String> errors) {
+        if (!config.containsKey(key)) return defaultValue;
+
+        final Object value = config.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if ("true".equalsIgnoreCase(String.valueOf(value)) || "false".equalsIgnoreCase(String.valueOf(value))) {
+            return Boolean.parseBoolean(String.valueOf(value));
+        }
+        errors.add(path + "/" + key + ": expected a boolean, got '" + value + "'");
+        return defaultValue;
+    }
+
+    private static float floatValue(@NonNull Map<String, Object> config, @NonNull String key, float defaultValue, @NonNull String path, @NonNull List<String> errors) {
+        if (!config.containsKey(key)) return defaultValue;
+
+        final Float value = toFloat(config.get(key));
+        if (value == null) {
+            errors.add(path + "/" + key + ": expected a number, got '" + config.get(key) + "'");
+            return defaultValue;
+        }
+        return value;
+    }
+
+    private static long longValue(@NonNull Map<String, Object> config, @NonNull String key, long defaultValue, @NonNull String path, @NonNull List<String> errors) {
+        if (!config.containsKey(key)) return defaultValue;
+
+        final Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return Long.parseLong(String.valueOf(value));
+        } catch (NumberFormatException ignored) {
+            errors.add(path + "/" + key + ": expected an integer, got '" + value + "'");
+            return defaultValue;
+        }
+    }
+
+    @Nullable
+    private static Float toFloat(@Nullable Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+        try {
+            return value == null ? null : Float.parseFloat(value.toString());
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+}
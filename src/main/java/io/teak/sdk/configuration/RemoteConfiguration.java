@@ -3,16 +3,19 @@ package io.teak.sdk.configuration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import io.teak.sdk.Helpers;
 import io.teak.sdk.Request;
 import io.teak.sdk.Teak;
 import io.teak.sdk.TeakConfiguration;
 import io.teak.sdk.TeakEvent;
 import io.teak.sdk.core.DeepLink;
+import io.teak.sdk.core.RequestDispatcher;
 import io.teak.sdk.core.Session;
 import io.teak.sdk.event.DeepLinksReadyEvent;
 import io.teak.sdk.event.RemoteConfigurationEvent;
@@ -40,6 +43,8 @@ public class RemoteConfiguration {
     @SuppressWarnings("WeakerAccess")
     public final Map<String, Object> endpointConfigurations;
     @SuppressWarnings("WeakerAccess")
+    public final Map<String, Map<String, EndpointPolicy>> endpointPolicies;
+    @SuppressWarnings("WeakerAccess")
     public final Map<String, Object> dynamicParameters;
     @SuppressWarnings("WeakerAccess")
     public final int heartbeatInterval;
@@ -47,6 +52,10 @@ public class RemoteConfiguration {
     public final ArrayList<Teak.Channel.Category> categories;
     @SuppressWarnings("WeakerAccess")
     public final boolean isMocked;
+    @SuppressWarnings("WeakerAccess")
+    public final int requestConcurrency;
+    @SuppressWarnings("WeakerAccess")
+    public final long listenerLatencyBudgetMs;
 
     private static final String defaultHostname = "gocarrot.com";
 
@@ -116,7 +125,9 @@ public class RemoteConfiguration {
                                                       +
                                                       "        \"time\":5,\n"
                                                       +
-                                                      "        \"count\":100\n"
+                                                      "        \"count\":100,\n"
+                                                      +
+                                                      "        \"maximum_bytes\":65536\n"
                                                       +
                                                       "      }\n"
                                                       +
@@ -126,10 +137,43 @@ public class RemoteConfiguration {
                                                       +
                                                       "}";
 
+    /**
+     * Request and listener limits sent down with the remote configuration.
+     */
+    public static class Limits {
+        public static final Limits Default = new Limits(RequestDispatcher.DEFAULT_MAXIMUM_CONCURRENCY, TeakEvent.EventListeners.DEFAULT_LATENCY_BUDGET_MS);
+
+        public final int requestConcurrency;
+        public final long listenerLatencyBudgetMs;
+
+        public Limits(int requestConcurrency, long listenerLatencyBudgetMs) {
+            this.requestConcurrency = requestConcurrency > 0 ? requestConcurrency : RequestDispatcher.DEFAULT_MAXIMUM_CONCURRENCY;
+            this.listenerLatencyBudgetMs = listenerLatencyBudgetMs > 0 ? listenerLatencyBudgetMs : TeakEvent.EventListeners.DEFAULT_LATENCY_BUDGET_MS;
+        }
+
+        @NonNull
+        public static Limits fromJson(@NonNull JSONObject json) {
+            return new Limits(json.optInt("request_concurrency", Default.requestConcurrency),
+                json.optLong("listener_latency_budget_ms", Default.listenerLatencyBudgetMs));
+        }
+    }
+
     public RemoteConfiguration(@NonNull AppConfiguration appConfiguration, @NonNull String hostname,
         String sdkSentryDsn, String appSentryDsn, String gcmSenderId, String firebaseAppId,
         boolean ignoreDefaultFirebaseConfiguration, boolean enhancedIntegrationChecks,
         JSONObject endpointConfigurations, JSONObject dynamicParameters, int heartbeatInterval, ArrayList<Teak.Channel.Category> categories, boolean isMocked) {
+        this(appConfiguration, hostname, sdkSentryDsn, appSentryDsn, gcmSenderId, firebaseAppId,
+            ignoreDefaultFirebaseConfiguration, enhancedIntegrationChecks,
+            endpointConfigurations, dynamicParameters, heartbeatInterval, categories, isMocked,
+            Limits.Default);
+    }
+
+    public RemoteConfiguration(@NonNull AppConfiguration appConfiguration, @NonNull String hostname,
+        String sdkSentryDsn, String appSentryDsn, String gcmSenderId, String firebaseAppId,
+        boolean ignoreDefaultFirebaseConfiguration, boolean enhancedIntegrationChecks,
+        JSONObject endpointConfigurations, JSONObject dynamicParameters, int heartbeatInterval, ArrayList<Teak.Channel.Category> categories, boolean isMocked,
+        @Nullable Limits limits) {
+        if (limits == null) limits = Limits.Default;
         this.appConfiguration = appConfiguration;
         this.hostname = hostname;
         this.appSentryDsn = appSentryDsn;
@@ -141,9 +185,18 @@ public class RemoteConfiguration {
         this.isMocked = isMocked;
         this.heartbeatInterval = heartbeatInterval;
         this.categories = categories;
+        this.requestConcurrency = limits.requestConcurrency;
+        this.listenerLatencyBudgetMs = limits.listenerLatencyBudgetMs;
 
         this.endpointConfigurations = endpointConfigurations == null ? new JSONObject(defaultEndpointJson).toMap() : endpointConfigurations.toMap();
 
+        // Compile once, so a bad configuration is reported here instead of by every request
+        final List<String> endpointErrors = new ArrayList<>();
+        this.endpointPolicies = EndpointPolicy.compile(this.endpointConfigurations, endpointErrors);
+        if (!endpointErrors.isEmpty()) {
+            Teak.log.w("remote_configuration.endpoint_policy", "Invalid endpoint configuration, using defaults", Helpers.mm.h("errors", endpointErrors));
+        }
+
         this.dynamicParameters = new HashMap<>();
         if (dynamicParameters == null) {
             dynamicParameters = new JSONObject(defaultDynamicParameters);
@@ -163,6 +216,16 @@ public class RemoteConfiguration {
         }
     }
 
+    /**
+     * @return The policy for the endpoint, or EndpointPolicy.Default if it is not configured.
+     */
+    @NonNull
+    public EndpointPolicy getEndpointPolicy(@Nullable String hostname, @NonNull String endpoint) {
+        final Map<String, EndpointPolicy> host = hostname == null ? null : this.endpointPolicies.get(hostname);
+        final EndpointPolicy policy = host == null ? null : host.get(endpoint);
+        return policy == null ? EndpointPolicy.Default : policy;
+    }
+
     public static void registerStaticEventListeners() {
         // When Deep Links are ready, send out request for remote settings.
         // Must wait for Deep Link Routes to be registered so we can send them along
@@ -176,7 +239,7 @@ public class RemoteConfiguration {
                 final String locale = Locale.getDefault().toString();
                 payload.put("locale", locale);
 
-                Request.submit("gocarrot.com", "/games/" + teakConfiguration.appConfiguration.appId + "/settings.json", payload, Session.NullSession,
+                Request.submit("gocarrot.com", "POST", "/games/" + teakConfiguration.appConfiguration.appId + "/settings.json", payload, Session.NullSession,
                     (responseCode, responseBody) -> {
                         try {
                             final JSONObject response = new JSONObject((responseBody == null || responseBody.trim().isEmpty()) ? "{}" : responseBody);
@@ -235,18 +298,26 @@ public class RemoteConfiguration {
                                 helper.jsonOrNull("dynamic_parameters"),
                                 response.optInt("heartbeat_interval", 60),
                                 categories,
-                                false);
+                                false,
+                                Limits.fromJson(response));
 
                             Teak.log.i("configuration.remote", configuration.toHash());
                             TeakEvent.postEvent(new RemoteConfigurationEvent(configuration));
                         } catch (Exception e) {
                             Teak.log.exception(e);
                         }
-                    });
-            } else if (event.eventType.equals(RemoteConfigurationEvent.Type)) {
+                    }, RequestDispatcher.Priority.Interactive);
+            }
+        }, DeepLinksReadyEvent.Type);
+
+        // Hostnames are read by anything sending a request, so they are updated before anyone
+        // else sees the new configuration
+        TeakEvent.addStateListener(event -> {
+            if (event.eventType.equals(RemoteConfigurationEvent.Type)) {
                 RemoteConfiguration.activeRemoteConfiguration = ((RemoteConfigurationEvent) event).remoteConfiguration;
+                TeakEvent.setListenerLatencyBudget(RemoteConfiguration.activeRemoteConfiguration.listenerLatencyBudgetMs);
             }
-        });
+        }, RemoteConfigurationEvent.Type);
     }
 
     // region Hostnames
@@ -273,6 +344,8 @@ public class RemoteConfiguration {
         ret.put("hostname", this.hostname);
         ret.put("sdkSentryDsn", this.sdkSentryDsn);
         ret.put("appSentryDsn", this.appSentryDsn);
+        ret.put("requestConcurrency", this.requestConcurrency);
+        ret.put("listenerLatencyBudgetMs", this.listenerLatencyBudgetMs);
         return ret;
     }
 
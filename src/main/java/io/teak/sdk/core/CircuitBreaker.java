@@ -0,0 +1,140 @@
+package io.teak.sdk.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import io.teak.sdk.Helpers;
+import io.teak.sdk.Teak;
+
+/**
+ * Per-host circuit breaker, driven by request results.
+ *
+ * Closed: requests flow normally. After FAILURE_THRESHOLD consecutive failures, or as soon as the
+ * server asks us to back off (429, or any Retry-After), the breaker opens.
+ *
+ * Open: the host's lane in the RequestDispatcher is held, so queued requests wait instead of each
+ * being sent and failing. The hold lasts for the server's Retry-After, if it gave one, otherwise
+ * for an exponential backoff.
+ *
+ * Half-open: once the hold expires, the lane runs a single request as a probe; lanes are serial,
+ * so nothing else goes out until the probe completes. Success closes the breaker, failure opens it
+ * again with a longer backoff.
+ */
+public class CircuitBreaker {
+    public enum State {
+        Closed("closed"),
+        Open("open"),
+        HalfOpen("half_open");
+
+        public final String name;
+
+        State(String name) {
+            this.name = name;
+        }
+    }
+
+    public static final int FAILURE_THRESHOLD = 3;
+    public static final long MINIMUM_OPEN_MS = TimeUnit.SECONDS.toMillis(5);
+    public static final long MAXIMUM_OPEN_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final long MAXIMUM_RETRY_AFTER_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final String hostname;
+    private final RequestDispatcher dispatcher;
+
+    private State state = State.Closed;
+    private int consecutiveFailures;
+    private int consecutiveOpens;
+    private long openUntil;
+    private long timesOpened;
+
+    CircuitBreaker(@NonNull String hostname, @NonNull RequestDispatcher dispatcher) {
+        this.hostname = hostname;
+        this.dispatcher = dispatcher;
+    }
+
+    public static boolean isFailure(int statusCode) {
+        // 0 is no response at all, 599 is a network error
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * Call before sending a request to this host.
+     */
+    public synchronized void onRequestStarting() {
+        if (this.state == State.Open && System.currentTimeMillis() >= this.openUntil) {
+            this.transitionTo(State.HalfOpen, null);
+        }
+    }
+
+    /**
+     * Call with the result of a request to this host.
+     *
+     * @param statusCode   HTTP status, or 0 if there was no response.
+     * @param retryAfterMs The server's Retry-After, in milliseconds, or 0 if there was none.
+     * @return How long this host will be held, in milliseconds, or 0 if it is not being held.
+     */
+    public synchronized long onRequestCompleted(int statusCode, long retryAfterMs) {
+        if (!CircuitBreaker.isFailure(statusCode)) {
+            this.consecutiveFailures = 0;
+            if (this.state != State.Closed) {
+                this.consecutiveOpens = 0;
+                this.transitionTo(State.Closed, Helpers.mm.h("status", statusCode));
+                this.dispatcher.release(this.hostname);
+            }
+            return 0;
+        }
+
+        this.consecutiveFailures++;
+
+        // A request that was already in flight when the breaker opened
+        if (this.state == State.Open) {
+            return Math.max(0, this.openUntil - System.currentTimeMillis());
+        }
+
+        final boolean serverRequestedBackoff = statusCode == 429 || retryAfterMs > 0;
+        if (this.state == State.HalfOpen || serverRequestedBackoff || this.consecutiveFailures >= FAILURE_THRESHOLD) {
+            long backoff = MINIMUM_OPEN_MS << Math.min(this.consecutiveOpens, 16);
+            backoff = Math.min(backoff, MAXIMUM_OPEN_MS);
+            final long openFor = retryAfterMs > 0 ? Math.min(retryAfterMs, MAXIMUM_RETRY_AFTER_MS) : backoff;
+
+            this.consecutiveOpens++;
+            this.timesOpened++;
+            this.openUntil = System.currentTimeMillis() + openFor;
+            this.transitionTo(State.Open, Helpers.mm.h("status", statusCode, "open_for_ms", openFor, "retry_after_ms", retryAfterMs, "consecutive_failures", this.consecutiveFailures));
+            this.dispatcher.hold(this.hostname, openFor, TimeUnit.MILLISECONDS);
+            return openFor;
+        }
+        return 0;
+    }
+
+    private void transitionTo(@NonNull State state, Map<String, Object> extras) {
+        final Map<String, Object> h = extras == null ? new HashMap<>() : extras;
+        h.put("hostname", this.hostname);
+        h.put("from", this.state.name);
+        h.put("to", state.name);
+        this.state = state;
+
+        if (state == State.Open) {
+            Teak.log.w("request.circuit_breaker", "Holding requests to host.", h);
+        } else {
+            Teak.log.i("request.circuit_breaker", h);
+        }
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        final Map<String, Object> ret = new HashMap<>();
+        ret.put("state", this.state.name);
+        ret.put("consecutive_failures", this.consecutiveFailures);
+        ret.put("times_opened", this.timesOpened);
+        if (this.state == State.Open) {
+            ret.put("open_for_ms", Math.max(0, this.openUntil - System.currentTimeMillis()));
+        }
+        return ret;
+    }
+}
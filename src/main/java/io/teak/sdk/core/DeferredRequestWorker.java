@@ -0,0 +1,55 @@
+package io.teak.sdk.core;
+
+import android.content.Context;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import io.teak.sdk.Request;
+import io.teak.sdk.Teak;
+
+/**
+ * Sends requests that were parked while offline, once the network is back, even if the app
+ * is in the background.
+ *
+ * If the process has been killed in the meantime there is nothing parked in memory, and the
+ * requests are replayed from the journal on the next launch instead.
+ */
+public class DeferredRequestWorker extends Worker {
+    private static final String UNIQUE_WORK_NAME = "io.teak.sdk.DeferredRequests";
+    private static final long FLUSH_TIMEOUT_SECONDS = 60;
+
+    public DeferredRequestWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    public static void schedule(@NonNull Context context) {
+        try {
+            final Constraints constraints = new Constraints.Builder()
+                                                .setRequiredNetworkType(NetworkType.CONNECTED)
+                                                .build();
+            final OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(DeferredRequestWorker.class)
+                                                   .setConstraints(constraints)
+                                                   .build();
+            WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.KEEP, request);
+        } catch (Exception e) {
+            Teak.log.exception(e, false);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        // Keep the worker, and so the process, alive until the burst has been sent
+        Request.flushDeferredRequests(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return Result.success();
+    }
+}
@@ -2,17 +2,65 @@ package io.teak.sdk.core;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import androidx.annotation.NonNull;
+
+/**
+ * Executors for the rest of the SDK, all of which are queues on the shared Scheduler. Each queue
+ * is named after the method which created it.
+ *
+ * Tasks which wait on other SDK work must not run on the shared pool. Where the work has a
+ * callback, continue from it, for example with a SettableFuture, instead of waiting at all.
+ * Otherwise use a dedicated executor, and wait with a timeout.
+ */
 public class Executors {
+    // Every one-off task shares this queue, rather than each getting a queue of its own
+    private static final Scheduler.Queue oneOffTasks = Scheduler.get().newConcurrentQueue(Executors.class.getName() + "#execute", Scheduler.MAXIMUM_WORKER_THREADS);
+
     public static ExecutorService newSingleThreadExecutor() {
-        return java.util.concurrent.Executors.newSingleThreadExecutor(ThreadFactory.autonamed(5, "singleThreadExecutor"));
+        return Scheduler.get().newSerialQueue(ThreadFactory.getNameForThreadOrFactory(4));
     }
 
     public static ExecutorService newCachedThreadPool() {
-        return java.util.concurrent.Executors.newCachedThreadPool(ThreadFactory.autonamed(5, "cachedThreadPool"));
+        return Scheduler.get().newConcurrentQueue(ThreadFactory.getNameForThreadOrFactory(4), Scheduler.MAXIMUM_WORKER_THREADS);
+    }
+
+    public static Scheduler.Queue newBoundedThreadPool(int maximumThreads) {
+        return Scheduler.get().newConcurrentQueue(ThreadFactory.getNameForThreadOrFactory(4), maximumThreads);
     }
 
     public static ScheduledExecutorService newSingleThreadScheduledExecutor() {
-        return java.util.concurrent.Executors.newSingleThreadScheduledExecutor(ThreadFactory.autonamed(5, "singleThreadScheduledExecutor"));
+        return Scheduler.get().newSerialQueue(ThreadFactory.getNameForThreadOrFactory(4));
+    }
+
+    /**
+     * @return A serial queue on the dedicated pool, for tasks which wait on other SDK work.
+     */
+    public static ExecutorService newDedicatedSingleThreadExecutor() {
+        return Scheduler.get().newDedicatedQueue(ThreadFactory.getNameForThreadOrFactory(4), 1);
+    }
+
+    /**
+     * @return A queue on the dedicated pool, for tasks which wait on other SDK work.
+     */
+    public static Scheduler.Queue newDedicatedBoundedThreadPool(int maximumThreads) {
+        return Scheduler.get().newDedicatedQueue(ThreadFactory.getNameForThreadOrFactory(4), maximumThreads);
+    }
+
+    /**
+     * Run a short one-off task in the background, in place of starting a thread for it. The task
+     * must not wait on other SDK work.
+     */
+    public static void execute(@NonNull Runnable runnable) {
+        Executors.oneOffTasks.execute(runnable);
+    }
+
+    /**
+     * Run a short one-off task after a delay, on the same queue as execute().
+     */
+    public static ScheduledFuture<?> schedule(@NonNull Runnable runnable, long delay, @NonNull TimeUnit unit) {
+        return Executors.oneOffTasks.schedule(runnable, delay, unit);
     }
 }
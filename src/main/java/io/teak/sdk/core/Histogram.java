@@ -0,0 +1,147 @@
+package io.teak.sdk.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, log-linear histogram of non-negative integer values.
+ *
+ * Every power of two is split into eight buckets, so any reported percentile is within 12.5% of
+ * the true value. Values at or above MAXIMUM_VALUE are counted in the last bucket.
+ *
+ * If a window is given, the histogram is rolling: it covers the current window and the one
+ * before it, so old data ages out instead of drowning out recent changes.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAXIMUM_EXPONENT = 24;
+    public static final long MAXIMUM_VALUE = (1L << (MAXIMUM_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = bucketFor(MAXIMUM_VALUE) + 1;
+
+    private static class Window {
+        final int[] buckets = new int[BUCKET_COUNT];
+        long count;
+        long sum;
+        long minimum = Long.MAX_VALUE;
+        long maximum = Long.MIN_VALUE;
+    }
+
+    private final long windowMs;
+    private Window current = new Window();
+    private Window previous;
+    private long currentWindowStartedAt = System.currentTimeMillis();
+
+    /**
+     * Histogram of everything ever recorded.
+     */
+    public Histogram() {
+        this(0);
+    }
+
+    /**
+     * @param windowMs Length of a window, or 0 to keep everything.
+     */
+    public Histogram(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    public synchronized void record(long value) {
+        this.rotateIfNeeded();
+
+        if (value < 0) value = 0;
+        final Window window = this.current;
+        window.buckets[bucketFor(Math.min(value, MAXIMUM_VALUE))]++;
+        window.count++;
+        window.sum += value;
+        window.minimum = Math.min(window.minimum, value);
+        window.maximum = Math.max(window.maximum, value);
+    }
+
+    public synchronized long getCount() {
+        this.rotateIfNeeded();
+        return this.current.count + (this.previous == null ? 0 : this.previous.count);
+    }
+
+    /**
+     * @param percentile From 0 to 100.
+     * @return The approximate value at that percentile, or 0 if nothing has been recorded.
+     */
+    public synchronized long getPercentile(double percentile) {
+        this.rotateIfNeeded();
+
+        final long count = this.getCount();
+        if (count == 0) return 0;
+
+        final long rank = Math.max(1, (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.current.buckets[i] + (this.previous == null ? 0 : this.previous.buckets[i]);
+            if (seen >= rank) {
+                return Math.min(this.getMaximum(), Math.max(this.getMinimum(), representativeValueOf(i)));
+            }
+        }
+        return this.getMaximum();
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        this.rotateIfNeeded();
+
+        final Map<String, Object> ret = new HashMap<>();
+        final long count = this.getCount();
+        ret.put("count", count);
+        if (count > 0) {
+            final long sum = this.current.sum + (this.previous == null ? 0 : this.previous.sum);
+            ret.put("mean", (double) sum / count);
+            ret.put("min", this.getMinimum());
+            ret.put("max", this.getMaximum());
+            ret.put("p50", this.getPercentile(50.0));
+            ret.put("p90", this.getPercentile(90.0));
+            ret.put("p99", this.getPercentile(99.0));
+        }
+        return ret;
+    }
+
+    private long getMinimum() {
+        return Math.min(this.current.minimum, this.previous == null ? Long.MAX_VALUE : this.previous.minimum);
+    }
+
+    private long getMaximum() {
+        return Math.max(this.current.maximum, this.previous == null ? Long.MIN_VALUE : this.previous.maximum);
+    }
+
+    private void rotateIfNeeded() {
+        if (this.windowMs <= 0) return;
+
+        final long now = System.currentTimeMillis();
+        final long elapsed = now - this.currentWindowStartedAt;
+        if (elapsed < this.windowMs) return;
+
+        // If more than one window has passed, the current window is stale too
+        this.previous = elapsed < this.windowMs * 2 ? this.current : null;
+        this.current = new Window();
+        this.currentWindowStartedAt = now;
+    }
+
+    ///// Buckets
+
+    private static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) ((value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long representativeValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        final int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        final int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        final long lower = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+        // Middle of the bucket
+        return lower + width / 2;
+    }
+}
@@ -1,56 +1,296 @@
 package io.teak.sdk.core;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
+import androidx.annotation.NonNull;
+import io.teak.sdk.Helpers;
+import io.teak.sdk.Teak;
+
+/**
+ * ReentrantLock that keeps a contention profile, shared by every lock with the same name.
+ *
+ * Contended acquisitions are always counted and timed, because they are slow anyway. Wait and
+ * hold times for all acquisitions are sampled, so the uncontended path costs one unsynchronized
+ * counter increment. A wait longer than the stack sample threshold captures the stacks of the waiter and
+ * the owner, and reports them, at most once per report interval for each name.
+ */
 @SuppressWarnings("WeakerAccess")
 public class InstrumentableReentrantLock extends ReentrantLock {
+    // Debug only, throw if a lock takes longer than this to acquire
     public static boolean interruptLongLocksAndReport = false;
     public static long interruptTimeoutMS = 2;
 
+    // One in this many acquisitions has its wait and hold time recorded, 0 to turn profiling off
+    public static final int DEFAULT_SAMPLE_RATE = 32;
+
+    // Waiting this long to acquire a lock captures the stacks of the waiter and owner
+    public static final long DEFAULT_STACK_SAMPLE_THRESHOLD_MS = 10;
+
+    // Each name reports stacks at most this often
+    public static final long REPORT_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // Histograms cover between one and two windows of data
+    public static final long WINDOW_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private static volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+    private static volatile long stackSampleThresholdMs = DEFAULT_STACK_SAMPLE_THRESHOLD_MS;
+
+    private static final Map<String, Profile> profiles = new HashMap<>();
+
+    public final String name;
+    private final Profile profile;
+
+    // Only touched by the owner, while it holds the lock
+    private int acquisitions;
+    private long holdStartedAt;
+
+    public InstrumentableReentrantLock(@NonNull String name) {
+        this.name = name;
+        synchronized (profiles) {
+            Profile profile = profiles.get(name);
+            if (profile == null) {
+                profile = new Profile(name);
+                profiles.put(name, profile);
+            }
+            this.profile = profile;
+        }
+    }
+
+    /**
+     * @param rate One in this many acquisitions has its wait and hold time recorded, 0 to stop
+     *             profiling.
+     */
+    public static void setSampleRate(int rate) {
+        InstrumentableReentrantLock.sampleRate = Math.max(0, rate);
+    }
+
+    public static void setStackSampleThreshold(long thresholdMs) {
+        InstrumentableReentrantLock.stackSampleThresholdMs = thresholdMs > 0 ? thresholdMs : DEFAULT_STACK_SAMPLE_THRESHOLD_MS;
+    }
+
+    /**
+     * @return Contention profile of every named lock.
+     */
+    @NonNull
+    public static Map<String, Object> getMetrics() {
+        final Map<String, Object> ret = new HashMap<>();
+        synchronized (profiles) {
+            for (Profile profile : profiles.values()) {
+                ret.put(profile.name, profile.toMap());
+            }
+        }
+        return ret;
+    }
+
     @Override
     public void lock() {
         if (interruptLongLocksAndReport) {
-            String lockRequestTrace = "", lockHoldTrace = "";
-            try {
-                Thread lockOwner = this.getOwner();
-                if (lockOwner != null && lockOwner != Thread.currentThread()) {
-                    {
-                        StackTraceElement[] trace = Thread.currentThread().getStackTrace();
-                        StackTraceElement[] trimmedTrace = new StackTraceElement[trace.length - 3];
-                        System.arraycopy(trace, 2, trimmedTrace, 0, trace.length - 3);
-                        StringBuilder backTrace = new StringBuilder(Thread.currentThread() + " requesting this lock from:");
-                        for (StackTraceElement element : trimmedTrace) {
-                            backTrace.append("\n\t").append(element.toString());
-                        }
-                        lockRequestTrace = backTrace.toString();
-                        android.util.Log.v("Teak.Instrumentation", lockRequestTrace);
-                    }
+            this.lockOrThrow();
+            return;
+        }
+
+        final int rate = InstrumentableReentrantLock.sampleRate;
+        if (rate <= 0) {
+            super.lock();
+            return;
+        }
+
+        if (super.tryLock()) {
+            if (this.shouldSample(rate)) {
+                this.profile.recordSample(rate, 0);
+                this.startHold();
+            }
+            return;
+        }
+
+        final long startedAt = System.nanoTime();
+        this.lockContended();
+        final long waitUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt);
+
+        this.profile.recordContended(waitUs);
+        if (this.shouldSample(rate)) {
+            this.profile.recordSample(rate, waitUs);
+            this.startHold();
+        }
+    }
+
+    @Override
+    public void unlock() {
+        if (this.holdStartedAt != 0 && this.isHeldByCurrentThread() && this.getHoldCount() == 1) {
+            this.profile.holdTime.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - this.holdStartedAt));
+            this.holdStartedAt = 0;
+        }
+        super.unlock();
+    }
+
+    private boolean shouldSample(int rate) {
+        // Counted while the lock is held, so it needs no synchronization of its own
+        if (++this.acquisitions < rate) return false;
+
+        this.acquisitions = 0;
+        return true;
+    }
+
+    private void startHold() {
+        // Only the outermost acquisition of a reentrant lock is timed
+        if (this.getHoldCount() == 1) {
+            this.holdStartedAt = System.nanoTime();
+        }
+    }
+
+    private void lockContended() {
+        final long thresholdMs = InstrumentableReentrantLock.stackSampleThresholdMs;
+        boolean interrupted = false;
+        try {
+            if (super.tryLock(thresholdMs, TimeUnit.MILLISECONDS)) return;
+        } catch (InterruptedException ignored) {
+            // lock() is not interruptible, so hang on to it for the caller
+            interrupted = true;
+        }
+
+        try {
+            final Thread owner = this.getOwner();
+            if (owner != null && this.profile.shouldReport()) {
+                final String waiterStack = stackOf(Thread.currentThread());
+                final String ownerStack = stackOf(owner);
+                this.profile.addStackSample(waiterStack, ownerStack);
+
+                Teak.log.w("lock.contention", "Waited over " + thresholdMs + "ms to acquire lock",
+                    Helpers.mm.h("lock", this.name, "waiter", Thread.currentThread().getName(), "owner", owner.getName(),
+                        "waiter_stack", waiterStack, "owner_stack", ownerStack, "profile", this.profile.toMap()));
+            }
+        } catch (Exception e) {
+            Teak.log.exception(e, false);
+        }
+
+        super.lock();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                    {
-                        StackTraceElement[] trace = lockOwner.getStackTrace();
-                        StackTraceElement[] trimmedTrace = new StackTraceElement[trace.length - 3];
-                        System.arraycopy(trace, 2, trimmedTrace, 0, trace.length - 3);
-                        StringBuilder backTrace = new StringBuilder(lockOwner + " holds this lock at:");
-                        for (StackTraceElement element : trimmedTrace) {
-                            backTrace.append("\n\t").append(element.toString());
-                        }
-                        lockHoldTrace = backTrace.toString();
-                        android.util.Log.v("Teak.Instrumentation", lockHoldTrace);
+    @NonNull
+    private static String stackOf(@NonNull Thread thread) {
+        final StringBuilder backTrace = new StringBuilder();
+        boolean inLock = thread == Thread.currentThread();
+        for (StackTraceElement element : thread.getStackTrace()) {
+            // The waiter's stack starts inside this class, which says nothing about who is waiting
+            if (inLock) {
+                final String className = element.getClassName();
+                if (className.equals(Thread.class.getName()) || className.equals(InstrumentableReentrantLock.class.getName())) {
+                    continue;
+                }
+                inLock = false;
+            }
+            backTrace.append("\n\t").append(element.toString());
+        }
+        return backTrace.toString();
+    }
+
+    private void lockOrThrow() {
+        String lockRequestTrace = "", lockHoldTrace = "";
+        try {
+            Thread lockOwner = this.getOwner();
+            if (lockOwner != null && lockOwner != Thread.currentThread()) {
+                {
+                    StackTraceElement[] trace = Thread.currentThread().getStackTrace();
+                    StackTraceElement[] trimmedTrace = new StackTraceElement[trace.length - 3];
+                    System.arraycopy(trace, 2, trimmedTrace, 0, trace.length - 3);
+                    StringBuilder backTrace = new StringBuilder(Thread.currentThread() + " requesting this lock from:");
+                    for (StackTraceElement element : trimmedTrace) {
+                        backTrace.append("\n\t").append(element.toString());
                     }
+                    lockRequestTrace = backTrace.toString();
+                    android.util.Log.v("Teak.Instrumentation", lockRequestTrace);
                 }
-                if (!this.tryLock(interruptTimeoutMS, TimeUnit.MILLISECONDS)) {
-                    throw new Exception("Failed to acquire lock.");
+
+                {
+                    StackTraceElement[] trace = lockOwner.getStackTrace();
+                    StackTraceElement[] trimmedTrace = new StackTraceElement[trace.length - 3];
+                    System.arraycopy(trace, 2, trimmedTrace, 0, trace.length - 3);
+                    StringBuilder backTrace = new StringBuilder(lockOwner + " holds this lock at:");
+                    for (StackTraceElement element : trimmedTrace) {
+                        backTrace.append("\n\t").append(element.toString());
+                    }
+                    lockHoldTrace = backTrace.toString();
+                    android.util.Log.v("Teak.Instrumentation", lockHoldTrace);
                 }
-            } catch (Exception e) {
-                String debugMessage = "Waited longer than " + interruptTimeoutMS + "ms to acquire lock.";
-                android.util.Log.e("Teak.Instrumentaiton", debugMessage, e);
-                android.util.Log.e("Teak.Instrumentaiton", lockRequestTrace, e);
-                android.util.Log.e("Teak.Instrumentaiton", lockHoldTrace, e);
-                throw new RuntimeException(debugMessage);
-            }
-        } else {
-            super.lock();
+            }
+            if (!this.tryLock(interruptTimeoutMS, TimeUnit.MILLISECONDS)) {
+                throw new Exception("Failed to acquire lock.");
+            }
+        } catch (Exception e) {
+            String debugMessage = "Waited longer than " + interruptTimeoutMS + "ms to acquire lock.";
+            android.util.Log.e("Teak.Instrumentaiton", debugMessage, e);
+            android.util.Log.e("Teak.Instrumentaiton", lockRequestTrace, e);
+            android.util.Log.e("Teak.Instrumentaiton", lockHoldTrace, e);
+            throw new RuntimeException(debugMessage);
+        }
+    }
+
+    /**
+     * Contention profile for every lock with the same name.
+     */
+    private static class Profile {
+        private static final int MAXIMUM_STACK_SAMPLES = 4;
+
+        final String name;
+        final Histogram waitTime = new Histogram(WINDOW_MS);
+        final Histogram holdTime = new Histogram(WINDOW_MS);
+        final Histogram contendedWaitTime = new Histogram(WINDOW_MS);
+
+        private final ArrayDeque<Map<String, Object>> stackSamples = new ArrayDeque<>();
+        private long estimatedAcquisitions;
+        private long contendedAcquisitions;
+        private long lastReportedAt;
+
+        Profile(@NonNull String name) {
+            this.name = name;
+        }
+
+        void recordSample(int rate, long waitUs) {
+            this.waitTime.record(waitUs);
+            synchronized (this) {
+                this.estimatedAcquisitions += rate;
+            }
+        }
+
+        void recordContended(long waitUs) {
+            this.contendedWaitTime.record(waitUs);
+            synchronized (this) {
+                this.contendedAcquisitions++;
+            }
+        }
+
+        synchronized boolean shouldReport() {
+            final long now = System.currentTimeMillis();
+            if (this.lastReportedAt != 0 && now - this.lastReportedAt < REPORT_INTERVAL_MS) return false;
+
+            this.lastReportedAt = now;
+            return true;
+        }
+
+        synchronized void addStackSample(@NonNull String waiterStack, @NonNull String ownerStack) {
+            if (this.stackSamples.size() >= MAXIMUM_STACK_SAMPLES) {
+                this.stackSamples.removeFirst();
+            }
+            this.stackSamples.addLast(Helpers.mm.h("at", System.currentTimeMillis(), "waiter_stack", waiterStack, "owner_stack", ownerStack));
+        }
+
+        synchronized Map<String, Object> toMap() {
+            final Map<String, Object> map = new HashMap<>();
+            map.put("estimated_acquisitions", this.estimatedAcquisitions);
+            map.put("contended_acquisitions", this.contendedAcquisitions);
+            map.put("wait_us", this.waitTime.toMap());
+            map.put("hold_us", this.holdTime.toMap());
+            map.put("contended_wait_us", this.contendedWaitTime.toMap());
+            map.put("stack_samples", new ArrayList<>(this.stackSamples));
+            return map;
         }
     }
 }
@@ -4,30 +4,35 @@ import android.content.Intent;
 import android.net.Uri;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import io.teak.sdk.Helpers;
 import io.teak.sdk.Teak;
 import io.teak.sdk.TeakConfiguration;
+import io.teak.sdk.io.ITransport;
+import io.teak.sdk.io.Transports;
 import io.teak.sdk.json.JSONObject;
 import io.teak.sdk.referrer.InstallReferrerFuture;
 
 public class LaunchDataSource implements Future<Teak.LaunchData> {
     public static final LaunchDataSource Unattributed = new LaunchDataSource(Helpers.futureForValue(Teak.LaunchData.Unattributed));
+    private static final long LINK_RESOLUTION_TIMEOUT_SECONDS = 30;
 
     private final Future<Teak.LaunchData> launchDataFuture;
 
@@ -98,90 +103,132 @@ public class LaunchDataSource implements Future<Teak.LaunchData> {
     ////// Create a Future which will contain AttributionData from a resolved link
 
     protected static Future<Teak.LaunchData> futureFromLinkResolution(@NonNull final Future<String> futureForUriOrNull) {
-        final TeakConfiguration teakConfiguration = TeakConfiguration.get();
+        final SettableFuture<Teak.LaunchData> ret = new SettableFuture<>();
 
-        final FutureTask<Teak.LaunchData> returnTask = new FutureTask<Teak.LaunchData>(() -> {
-            Uri httpsUri = null;
+        if (futureForUriOrNull.isDone()) {
+            // Nothing to wait for, so this only starts the request
+            Executors.execute(() -> LaunchDataSource.resolveLink(LaunchDataSource.uriFromFuture(futureForUriOrNull), ret));
+        } else {
+            // The install referrer can only be waited on, so do that on the dedicated pool
+            LaunchDataSource.getReferrerExecutor().execute(() -> LaunchDataSource.resolveLink(LaunchDataSource.uriFromFuture(futureForUriOrNull), ret));
+        }
+        return ret;
+    }
 
-            // Wait on the incoming Future
-            Uri uri = null;
-            try {
-                uri = Uri.parse(futureForUriOrNull.get(5, TimeUnit.SECONDS));
-            } catch (Exception ignored) {
-            }
+    private static ExecutorService referrerExecutor;
 
-            if (uri == null) {
-                return null;
-            }
+    private static synchronized ExecutorService getReferrerExecutor() {
+        if (LaunchDataSource.referrerExecutor == null) {
+            LaunchDataSource.referrerExecutor = Executors.newDedicatedSingleThreadExecutor();
+        }
+        return LaunchDataSource.referrerExecutor;
+    }
+
+    private static Uri uriFromFuture(@NonNull final Future<String> futureForUriOrNull) {
+        try {
+            return Uri.parse(futureForUriOrNull.get(5, TimeUnit.SECONDS));
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+
+    private static void resolveLink(final Uri uri, @NonNull final SettableFuture<Teak.LaunchData> ret) {
+        if (uri == null) {
+            ret.set(null);
+            return;
+        }
+
+        // Only Teak links need resolving
+        if (uri.getScheme() == null || !(uri.getScheme().equals("http") || uri.getScheme().equals("https"))) {
+            ret.set(launchDataFromUriPair(uri, null));
+            return;
+        }
+
+        final Uri httpsUri;
+        final URL url;
+        try {
+            httpsUri = uri.buildUpon().scheme("https").build();
+            url = new URL(httpsUri.toString());
+        } catch (Exception e) {
+            Teak.log.exception(e);
+            ret.set(launchDataFromUriPair(uri, null));
+            return;
+        }
 
-            // Try and resolve any Teak links
-            if (uri.getScheme() != null && (uri.getScheme().equals("http") || uri.getScheme().equals("https"))) {
-                HttpsURLConnection connection = null;
+        Teak.log.i("deep_link.request.send", url.toString());
+
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Accept-Charset", "UTF-8");
+        headers.put("X-Teak-DeviceType", "API");
+        headers.put("X-Teak-Supports-Templates", "TRUE");
+
+        final ITransport.Call call = Transports.get().enqueue(url, "GET", headers, null, new ITransport.Callback() {
+            @Override
+            public void onResponse(int statusCode, @NonNull Map<String, List<String>> headers, @NonNull InputStream body) throws IOException {
+                final StringBuilder response = new StringBuilder();
                 try {
-                    httpsUri = uri.buildUpon().scheme("https").build();
-                    URL url = new URL(httpsUri.toString());
-
-                    Teak.log.i("deep_link.request.send", url.toString());
-
-                    connection = (HttpsURLConnection) url.openConnection();
-                    connection.setUseCaches(false);
-                    connection.setRequestProperty("Accept-Charset", "UTF-8");
-                    connection.setRequestProperty("X-Teak-DeviceType", "API");
-                    connection.setRequestProperty("X-Teak-Supports-Templates", "TRUE");
-
-                    // Get Response
-                    InputStream is;
-                    if (connection.getResponseCode() < 400) {
-                        is = connection.getInputStream();
-                    } else {
-                        is = connection.getErrorStream();
-                    }
-                    BufferedReader rd = new BufferedReader(new InputStreamReader(is));
+                    BufferedReader rd = new BufferedReader(new InputStreamReader(body));
                     String line;
-                    StringBuilder response = new StringBuilder();
                     while ((line = rd.readLine()) != null) {
                         response.append(line);
                         response.append('\r');
                     }
                     rd.close();
-
-                    Teak.log.i("deep_link.request.reply", response.toString());
-
-                    try {
-                        JSONObject teakData = new JSONObject(response.toString());
-                        if (teakData.getString("AndroidPath") != null) {
-                            final String androidPath = teakData.getString("AndroidPath");
-                            final Pattern pattern = Pattern.compile("^[a-zA-Z0-9+.\\-_]*:");
-                            final Matcher matcher = pattern.matcher(androidPath);
-                            if (matcher.find()) {
-                                uri = Uri.parse(androidPath);
-                            } else {
-                                uri = Uri.parse(String.format(Locale.US, "teak%s://%s", teakConfiguration.appConfiguration.appId, androidPath));
-                            }
-                        } else {
-                            // Clear httpsUri, so that it won't get sent along to the AttributionData constructor
-                            httpsUri = null;
-                        }
-
-                        Teak.log.i("deep_link.request.resolve", uri.toString());
-                    } catch (Exception e) {
-                        Teak.log.exception(e);
-                    }
-                } catch (Exception e) {
+                } catch (IOException e) {
                     Teak.log.exception(e);
-                } finally {
-                    if (connection != null) {
-                        connection.disconnect();
-                    }
+                    ret.set(launchDataFromUriPair(uri, httpsUri));
+                    return;
                 }
+
+                Teak.log.i("deep_link.request.reply", response.toString());
+                ret.set(LaunchDataSource.launchDataFromResolution(uri, httpsUri, response.toString()));
             }
 
-            return launchDataFromUriPair(uri, httpsUri);
+            @Override
+            public void onFailure(@NonNull IOException e) {
+                Teak.log.exception(e);
+                ret.set(launchDataFromUriPair(uri, httpsUri));
+            }
         });
 
-        // Start it running, and return the Future
-        ThreadFactory.autoStart(returnTask);
-        return returnTask;
+        // Give up on the request, rather than on the launch data
+        Executors.schedule(() -> {
+            if (ret.isDone()) return;
+
+            call.cancel();
+            if (ret.set(launchDataFromUriPair(uri, httpsUri))) {
+                Teak.log.exception(new IOException("Timed out resolving " + url));
+            }
+        },
+            LINK_RESOLUTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static Teak.LaunchData launchDataFromResolution(final Uri uri, final Uri httpsUri, @NonNull final String response) {
+        final TeakConfiguration teakConfiguration = TeakConfiguration.get();
+        try {
+            JSONObject teakData = new JSONObject(response);
+            if (teakData.getString("AndroidPath") != null) {
+                final String androidPath = teakData.getString("AndroidPath");
+                final Pattern pattern = Pattern.compile("^[a-zA-Z0-9+.\\-_]*:");
+                final Matcher matcher = pattern.matcher(androidPath);
+                final Uri resolvedUri;
+                if (matcher.find()) {
+                    resolvedUri = Uri.parse(androidPath);
+                } else {
+                    resolvedUri = Uri.parse(String.format(Locale.US, "teak%s://%s", teakConfiguration.appConfiguration.appId, androidPath));
+                }
+
+                Teak.log.i("deep_link.request.resolve", resolvedUri.toString());
+                return launchDataFromUriPair(resolvedUri, httpsUri);
+            }
+
+            // Leave out httpsUri, so that it won't get sent along to the AttributionData constructor
+            Teak.log.i("deep_link.request.resolve", uri.toString());
+            return launchDataFromUriPair(uri, null);
+        } catch (Exception e) {
+            Teak.log.exception(e);
+        }
+        return launchDataFromUriPair(uri, httpsUri);
     }
 
     ////// implements Future
@@ -0,0 +1,73 @@
+package io.teak.sdk.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Track events waiting for the user to be identified.
+ *
+ * Events are aggregated by (action_type, object_type, object_instance_id) as they arrive, the
+ * same way a batch does it, so a game firing the same event over and over during its loading
+ * screen only holds one row for it. The number of rows is bounded; once it is full, events that
+ * would start a new row are dropped and counted.
+ *
+ * Not thread safe, Session only touches it while holding the user id ready queue lock.
+ */
+public class PendingTrackEvents {
+    public static final int MAXIMUM_ROWS = 256;
+
+    private final TrackEventAggregator aggregator = new TrackEventAggregator();
+    private final List<Map<String, Object>> rows = new ArrayList<>();
+    private long added;
+    private long dropped;
+
+    /**
+     * @return false if the event was dropped because the buffer is full.
+     */
+    public boolean add(@NonNull Map<String, Object> payload) {
+        if (this.aggregator.aggregate(payload)) {
+            this.added++;
+            return true;
+        }
+
+        if (this.rows.size() >= MAXIMUM_ROWS) {
+            this.dropped++;
+            return false;
+        }
+
+        this.aggregator.addRow(payload);
+        this.rows.add(payload);
+        this.added++;
+        return true;
+    }
+
+    public long getDropped() {
+        return this.dropped;
+    }
+
+    public boolean isEmpty() {
+        return this.rows.isEmpty() && this.dropped == 0;
+    }
+
+    /**
+     * @return The aggregated rows, in the order they were started. The buffer must not be used
+     *         afterwards.
+     */
+    @NonNull
+    public List<Map<String, Object>> takeRows() {
+        this.aggregator.writeToRows();
+        return this.rows;
+    }
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("events", this.added);
+        map.put("rows", this.rows.size());
+        map.put("dropped", this.dropped);
+        return map;
+    }
+}
@@ -0,0 +1,504 @@
+package io.teak.sdk.core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.teak.sdk.Teak;
+
+/**
+ * Runs requests on independent serial lanes, one per hostname.
+ *
+ * Work submitted to a lane runs in order, one at a time, so per-host ordering is the same as it
+ * was with a single request thread. Lanes run in parallel with each other, up to a global
+ * concurrency cap, so a slow upload to one host no longer holds up requests to another. When
+ * more lanes have work than the cap allows, they take turns, one task at a time.
+ *
+ * Each task has a Priority. Within a lane, and when choosing which waiting lane goes next,
+ * higher priority work goes first, so a reward claim does not sit behind a queue of analytics
+ * batches. Ordering is only kept between tasks of the same priority. Lower priority work that has
+ * waited longer than STARVATION_THRESHOLD_MS is treated as if it were interactive, so a steady
+ * stream of interactive requests can not starve bulk uploads.
+ *
+ * A lane can also be held for a while, which is how a host's CircuitBreaker stops requests from
+ * going out while it is open.
+ */
+public class RequestDispatcher {
+    public static final int DEFAULT_MAXIMUM_CONCURRENCY = 3;
+    public static final long STARVATION_THRESHOLD_MS = 10000;
+
+    /**
+     * Priority classes, highest first.
+     */
+    public enum Priority {
+        Interactive("interactive"),
+        Default("default"),
+        Bulk("bulk");
+
+        public final String name;
+
+        Priority(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return The priority with the given name, or null if there is none.
+         */
+        @Nullable
+        public static Priority fromName(@Nullable String name) {
+            for (Priority priority : Priority.values()) {
+                if (priority.name.equalsIgnoreCase(name)) {
+                    return priority;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A unit of work on a lane.
+     *
+     * Unlike a ScheduledFuture, cancel() succeeds until the work actually starts running, even if
+     * its delay has already elapsed and it is waiting in the lane.
+     */
+    public static class Task implements Runnable {
+        private static final ThreadLocal<Task> current = new ThreadLocal<>();
+
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+
+        private final RequestDispatcher dispatcher;
+        private final String lane;
+        private final Priority priority;
+        private final Runnable runnable;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private ScheduledFuture<?> delay;
+        private long enqueuedAt;
+        private long startedAt;
+
+        Task(@NonNull RequestDispatcher dispatcher, @NonNull String lane, @NonNull Priority priority, @NonNull Runnable runnable) {
+            this.dispatcher = dispatcher;
+            this.lane = lane;
+            this.priority = priority;
+            this.runnable = runnable;
+        }
+
+        /**
+         * @return true if the work was prevented from running.
+         */
+        public boolean cancel() {
+            if (!this.state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+
+            final ScheduledFuture<?> delay = this.delay;
+            if (delay != null) {
+                delay.cancel(false);
+            }
+            this.dispatcher.remove(this);
+            return true;
+        }
+
+        public boolean isDone() {
+            final int state = this.state.get();
+            return state == DONE || state == CANCELLED;
+        }
+
+        boolean isPending() {
+            return this.state.get() == PENDING;
+        }
+
+        // Must be called while holding the dispatcher lock
+        boolean isStarved(long now) {
+            return this.priority != Priority.Interactive && TimeUnit.NANOSECONDS.toMillis(now - this.enqueuedAt) >= STARVATION_THRESHOLD_MS;
+        }
+
+        @Override
+        public void run() {
+            if (!this.state.compareAndSet(PENDING, RUNNING)) return;
+
+            this.startedAt = System.nanoTime();
+            current.set(this);
+            try {
+                this.runnable.run();
+            } finally {
+                current.remove();
+                this.state.set(DONE);
+            }
+        }
+    }
+
+    private static class Lane {
+        final String name;
+        final ArrayDeque<Task>[] queues;
+        boolean running;
+        boolean waiting;
+        long heldUntil;
+        long executed;
+        int maximumDepth;
+
+        @SuppressWarnings("unchecked")
+        Lane(@NonNull String name) {
+            this.name = name;
+            this.queues = new ArrayDeque[Priority.values().length];
+            for (int i = 0; i < this.queues.length; i++) {
+                this.queues[i] = new ArrayDeque<>();
+            }
+        }
+
+        boolean isHeld() {
+            return this.heldUntil > 0;
+        }
+
+        int size() {
+            int size = 0;
+            for (ArrayDeque<Task> queue : this.queues) {
+                size += queue.size();
+            }
+            return size;
+        }
+
+        /**
+         * @return The task that should run next: the oldest starved task if there is one,
+         * otherwise the first task of the highest priority.
+         */
+        @Nullable
+        Task peek(long now) {
+            Task next = null;
+            for (ArrayDeque<Task> queue : this.queues) {
+                final Task head = queue.peek();
+                if (head == null) continue;
+
+                if (next == null) {
+                    next = head;
+                } else if (head.isStarved(now) && (!next.isStarved(now) || head.enqueuedAt < next.enqueuedAt)) {
+                    next = head;
+                }
+            }
+            return next;
+        }
+
+        /**
+         * @return The ordinal the next task runs at, with starved tasks counting as interactive,
+         * or Integer.MAX_VALUE if the lane is empty.
+         */
+        int effectivePriority(long now) {
+            final Task next = this.peek(now);
+            if (next == null) return Integer.MAX_VALUE;
+            return next.isStarved(now) ? Priority.Interactive.ordinal() : next.priority.ordinal();
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> ret = new HashMap<>();
+            final Map<String, Object> queued = new HashMap<>();
+            for (Priority priority : Priority.values()) {
+                queued.put(priority.name, this.queues[priority.ordinal()].size());
+            }
+            ret.put("queued", this.size());
+            ret.put("queued_by_priority", queued);
+            ret.put("running", this.running);
+            ret.put("held", this.isHeld());
+            ret.put("executed", this.executed);
+            ret.put("maximum_queued", this.maximumDepth);
+            return ret;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new HashMap<>();
+    private final ArrayDeque<Lane> waitingLanes = new ArrayDeque<>();
+    private final Scheduler.Queue workers;
+    private final ScheduledExecutorService delayExecutor = Executors.newSingleThreadScheduledExecutor();
+    private int maximumConcurrency;
+    private int runningLanes;
+
+    public RequestDispatcher(int maximumConcurrency) {
+        this.maximumConcurrency = Math.max(1, maximumConcurrency);
+        this.workers = Executors.newDedicatedBoundedThreadPool(this.maximumConcurrency);
+    }
+
+    /**
+     * @return How long the task running on the calling thread waited in its lane, in
+     * milliseconds, or -1 if the calling thread is not running a task. Any delay requested with
+     * schedule() is not counted.
+     */
+    public static long getCurrentTaskQueueTime() {
+        final Task task = Task.current.get();
+        return task == null ? -1 : TimeUnit.NANOSECONDS.toMillis(task.startedAt - task.enqueuedAt);
+    }
+
+    ///// Submission
+
+    public Task execute(@Nullable String lane, @NonNull Runnable runnable) {
+        return this.execute(lane, Priority.Default, runnable);
+    }
+
+    public Task execute(@Nullable String lane, @NonNull Priority priority, @NonNull Runnable runnable) {
+        final Task task = new Task(this, String.valueOf(lane), priority, runnable);
+        this.enqueue(task);
+        return task;
+    }
+
+    public Task schedule(@Nullable String lane, @NonNull Runnable runnable, long delay, @NonNull TimeUnit unit) {
+        return this.schedule(lane, Priority.Default, runnable, delay, unit);
+    }
+
+    public Task schedule(@Nullable String lane, @NonNull Priority priority, @NonNull Runnable runnable, long delay, @NonNull TimeUnit unit) {
+        if (delay <= 0) {
+            return this.execute(lane, priority, runnable);
+        }
+
+        final Task task = new Task(this, String.valueOf(lane), priority, runnable);
+        task.delay = this.delayExecutor.schedule(() -> this.enqueue(task), delay, unit);
+        return task;
+    }
+
+    ///// Holding lanes
+
+    /**
+     * Stop starting new work on a lane for a while. Work that is already running is unaffected,
+     * and work submitted while the lane is held waits for it to be released.
+     */
+    public void hold(@Nullable String lane, long duration, @NonNull TimeUnit unit) {
+        final String name = String.valueOf(lane);
+        synchronized (this.lock) {
+            final Lane l = this.laneFor(name);
+            final long until = System.currentTimeMillis() + unit.toMillis(duration);
+            if (until <= l.heldUntil) return;
+
+            l.heldUntil = until;
+            if (l.waiting) {
+                l.waiting = false;
+                this.waitingLanes.remove(l);
+            }
+        }
+        this.delayExecutor.schedule(() -> this.releaseIfExpired(name), duration, unit);
+    }
+
+    public void release(@Nullable String lane) {
+        synchronized (this.lock) {
+            final Lane l = this.lanes.get(String.valueOf(lane));
+            if (l == null || !l.isHeld()) return;
+
+            l.heldUntil = 0;
+            this.makeWaitingIfNeeded(l);
+            this.startWaitingLanes();
+        }
+    }
+
+    private void releaseIfExpired(@NonNull String lane) {
+        final long remaining;
+        synchronized (this.lock) {
+            final Lane l = this.lanes.get(lane);
+            if (l == null || !l.isHeld()) return;
+            remaining = l.heldUntil - System.currentTimeMillis();
+        }
+
+        // The hold was extended, or the clock disagrees with the scheduler by a little
+        if (remaining > 0) {
+            this.delayExecutor.schedule(() -> this.releaseIfExpired(lane), remaining, TimeUnit.MILLISECONDS);
+        } else {
+            this.release(lane);
+        }
+    }
+
+    /**
+     * @return The circuit breaker for a lane, created on first use.
+     */
+    public CircuitBreaker circuitBreakerFor(@Nullable String lane) {
+        final String name = String.valueOf(lane);
+        synchronized (this.circuitBreakers) {
+            CircuitBreaker circuitBreaker = this.circuitBreakers.get(name);
+            if (circuitBreaker == null) {
+                circuitBreaker = new CircuitBreaker(name, this);
+                this.circuitBreakers.put(name, circuitBreaker);
+            }
+            return circuitBreaker;
+        }
+    }
+
+    ///// Configuration
+
+    public void setMaximumConcurrency(int maximumConcurrency) {
+        maximumConcurrency = Math.max(1, maximumConcurrency);
+        synchronized (this.lock) {
+            if (maximumConcurrency == this.maximumConcurrency) return;
+
+            this.workers.setMaximumConcurrency(maximumConcurrency);
+            this.maximumConcurrency = maximumConcurrency;
+            this.startWaitingLanes();
+        }
+    }
+
+    /**
+     * Block until nothing is running or queued, or the timeout elapses. Work that is still
+     * waiting on a schedule() delay does not count.
+     *
+     * @return true if the dispatcher became idle.
+     */
+    public boolean awaitIdle(long timeout, @NonNull TimeUnit unit) {
+        final long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized (this.lock) {
+            while (!this.isIdle()) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    this.lock.wait(remaining);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Must be called while holding this.lock
+    private boolean isIdle() {
+        if (this.runningLanes > 0) return false;
+        for (Lane lane : this.lanes.values()) {
+            if (lane.size() > 0) return false;
+        }
+        return true;
+    }
+
+    ///// Reporting
+
+    public int getQueueDepth(@Nullable String lane) {
+        synchronized (this.lock) {
+            final Lane l = this.lanes.get(String.valueOf(lane));
+            return l == null ? 0 : l.size();
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> ret = new HashMap<>();
+        final Map<String, Object> lanes = new HashMap<>();
+        synchronized (this.lock) {
+            ret.put("maximum_concurrency", this.maximumConcurrency);
+            ret.put("running", this.runningLanes);
+            for (Lane lane : this.lanes.values()) {
+                lanes.put(lane.name, lane.toMap());
+            }
+        }
+        ret.put("lanes", lanes);
+
+        // Not while holding this.lock, circuit breakers call into the dispatcher while holding theirs
+        final Map<String, CircuitBreaker> circuitBreakers;
+        synchronized (this.circuitBreakers) {
+            circuitBreakers = new HashMap<>(this.circuitBreakers);
+        }
+        final Map<String, Object> circuitBreakerStates = new HashMap<>();
+        for (Map.Entry<String, CircuitBreaker> entry : circuitBreakers.entrySet()) {
+            circuitBreakerStates.put(entry.getKey(), entry.getValue().toMap());
+        }
+        ret.put("circuit_breakers", circuitBreakerStates);
+        return ret;
+    }
+
+    ///// Lanes
+
+    private void enqueue(@NonNull Task task) {
+        synchronized (this.lock) {
+            if (!task.isPending()) return;
+
+            final Lane lane = this.laneFor(task.lane);
+            task.enqueuedAt = System.nanoTime();
+            lane.queues[task.priority.ordinal()].add(task);
+            lane.maximumDepth = Math.max(lane.maximumDepth, lane.size());
+            this.makeWaitingIfNeeded(lane);
+            this.startWaitingLanes();
+        }
+    }
+
+    // Must be called while holding this.lock
+    private Lane laneFor(@NonNull String name) {
+        Lane lane = this.lanes.get(name);
+        if (lane == null) {
+            lane = new Lane(name);
+            this.lanes.put(name, lane);
+        }
+        return lane;
+    }
+
+    // Must be called while holding this.lock
+    private void makeWaitingIfNeeded(@NonNull Lane lane) {
+        if (!lane.running && !lane.waiting && !lane.isHeld() && lane.size() > 0) {
+            lane.waiting = true;
+            this.waitingLanes.add(lane);
+        }
+    }
+
+    private void remove(@NonNull Task task) {
+        synchronized (this.lock) {
+            final Lane lane = this.lanes.get(task.lane);
+            if (lane != null) {
+                lane.queues[task.priority.ordinal()].remove(task);
+            }
+        }
+    }
+
+    // Must be called while holding this.lock
+    private void startWaitingLanes() {
+        final long now = System.nanoTime();
+        while (this.runningLanes < this.maximumConcurrency && !this.waitingLanes.isEmpty()) {
+            final Lane lane = this.nextWaitingLane(now);
+            this.waitingLanes.remove(lane);
+            lane.waiting = false;
+
+            final Task task = lane.peek(now);
+            if (task == null) continue;
+            lane.queues[task.priority.ordinal()].poll();
+
+            lane.running = true;
+            this.runningLanes++;
+            this.workers.execute(() -> this.runLane(lane, task));
+        }
+    }
+
+    // Must be called while holding this.lock, with at least one waiting lane
+    private Lane nextWaitingLane(long now) {
+        // The first lane with the highest priority work, so lanes still take turns within a priority
+        Lane next = null;
+        int nextPriority = Integer.MAX_VALUE;
+        for (Lane lane : this.waitingLanes) {
+            final int priority = lane.effectivePriority(now);
+            if (next == null || priority < nextPriority) {
+                next = lane;
+                nextPriority = priority;
+            }
+        }
+        return next;
+    }
+
+    private void runLane(@NonNull Lane lane, @NonNull Task task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            Teak.log.exception(e);
+        } finally {
+            synchronized (this.lock) {
+                lane.running = false;
+                lane.executed++;
+                this.runningLanes--;
+
+                // Go to the back of the line, so that lanes take turns when at the cap
+                this.makeWaitingIfNeeded(lane);
+                this.startWaitingLanes();
+
+                if (this.runningLanes == 0) {
+                    this.lock.notifyAll();
+                }
+            }
+        }
+    }
+}
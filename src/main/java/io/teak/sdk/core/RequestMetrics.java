@@ -0,0 +1,152 @@
+package io.teak.sdk.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Rolling metrics for the request pipeline, kept per hostname and endpoint.
+ */
+public class RequestMetrics {
+    // Histograms cover between one and two windows of data
+    public static final long WINDOW_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private static class EndpointMetrics {
+        final Histogram latency = new Histogram(WINDOW_MS);
+        final Histogram queueTime = new Histogram(WINDOW_MS);
+        final Histogram batchFillPercent = new Histogram(WINDOW_MS);
+        final Histogram msSinceFirstEvent = new Histogram(WINDOW_MS);
+        final Histogram batchBytes = new Histogram(WINDOW_MS);
+        final Histogram batchBytesPercent = new Histogram(WINDOW_MS);
+        final Map<String, Long> statusCodes = new HashMap<>();
+        long requests;
+        long retries;
+        long singleFlightJoins;
+        long flushes;
+        long rescuedEvents;
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> ret = new HashMap<>();
+            ret.put("requests", this.requests);
+            ret.put("retries", this.retries);
+            ret.put("single_flight_joins", this.singleFlightJoins);
+            ret.put("status_codes", new HashMap<>(this.statusCodes));
+            ret.put("latency_ms", this.latency.toMap());
+            ret.put("queue_time_ms", this.queueTime.toMap());
+            if (this.batchFillPercent.getCount() > 0) {
+                ret.put("batch_fill_percent", this.batchFillPercent.toMap());
+                ret.put("ms_since_first_event", this.msSinceFirstEvent.toMap());
+            }
+            if (this.batchBytes.getCount() > 0) {
+                ret.put("batch_bytes", this.batchBytes.toMap());
+                ret.put("batch_bytes_percent", this.batchBytesPercent.toMap());
+            }
+            if (this.flushes > 0) {
+                ret.put("flushes", this.flushes);
+                ret.put("rescued_events", this.rescuedEvents);
+            }
+            return ret;
+        }
+    }
+
+    private final Map<String, Map<String, EndpointMetrics>> hosts = new HashMap<>();
+
+    ///// Recording
+
+    public void recordResponse(@Nullable String hostname, @NonNull String endpoint, int statusCode, long latencyMs) {
+        synchronized (this.hosts) {
+            final EndpointMetrics metrics = this.metricsFor(hostname, endpoint);
+            metrics.requests++;
+            final String status = String.valueOf(statusCode);
+            final Long current = metrics.statusCodes.get(status);
+            metrics.statusCodes.put(status, current == null ? 1 : current + 1);
+        }
+        this.histogramsFor(hostname, endpoint).latency.record(latencyMs);
+    }
+
+    public void recordQueueTime(@Nullable String hostname, @NonNull String endpoint, long queueTimeMs) {
+        this.histogramsFor(hostname, endpoint).queueTime.record(queueTimeMs);
+    }
+
+    public void recordRetry(@Nullable String hostname, @NonNull String endpoint) {
+        synchronized (this.hosts) {
+            this.metricsFor(hostname, endpoint).retries++;
+        }
+    }
+
+    public void recordSingleFlightJoin(@Nullable String hostname, @NonNull String endpoint) {
+        synchronized (this.hosts) {
+            this.metricsFor(hostname, endpoint).singleFlightJoins++;
+        }
+    }
+
+    /**
+     * A batch was sent before its timer fired, taking these events with it.
+     */
+    public void recordFlush(@Nullable String hostname, @NonNull String endpoint, int events) {
+        synchronized (this.hosts) {
+            final EndpointMetrics metrics = this.metricsFor(hostname, endpoint);
+            metrics.flushes++;
+            metrics.rescuedEvents += events;
+        }
+    }
+
+    public void recordBatch(@Nullable String hostname, @NonNull String endpoint, int size, long maximumSize, long msSinceFirstEvent) {
+        final EndpointMetrics metrics = this.histogramsFor(hostname, endpoint);
+
+        // Last-write-wins batches have no meaningful maximum size
+        if (maximumSize > 0 && maximumSize < Integer.MAX_VALUE) {
+            metrics.batchFillPercent.record(Math.round(100.0 * size / maximumSize));
+        }
+        metrics.msSinceFirstEvent.record(msSinceFirstEvent);
+    }
+
+    public void recordBatchBytes(@Nullable String hostname, @NonNull String endpoint, long bytes, long maximumBytes) {
+        final EndpointMetrics metrics = this.histogramsFor(hostname, endpoint);
+        metrics.batchBytes.record(bytes);
+        metrics.batchBytesPercent.record(Math.round(100.0 * bytes / maximumBytes));
+    }
+
+    ///// Reporting
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> ret = new HashMap<>();
+        synchronized (this.hosts) {
+            for (Map.Entry<String, Map<String, EndpointMetrics>> host : this.hosts.entrySet()) {
+                final Map<String, Object> endpoints = new HashMap<>();
+                for (Map.Entry<String, EndpointMetrics> endpoint : host.getValue().entrySet()) {
+                    endpoints.put(endpoint.getKey(), endpoint.getValue().toMap());
+                }
+                ret.put(host.getKey(), endpoints);
+            }
+        }
+        return ret;
+    }
+
+    // Histograms are internally synchronized, so they can be recorded to outside of this.hosts
+    private EndpointMetrics histogramsFor(@Nullable String hostname, @NonNull String endpoint) {
+        synchronized (this.hosts) {
+            return this.metricsFor(hostname, endpoint);
+        }
+    }
+
+    // Must be called while holding this.hosts
+    private EndpointMetrics metricsFor(@Nullable String hostname, @NonNull String endpoint) {
+        final String host = String.valueOf(hostname);
+        Map<String, EndpointMetrics> endpoints = this.hosts.get(host);
+        if (endpoints == null) {
+            endpoints = new HashMap<>();
+            this.hosts.put(host, endpoints);
+        }
+
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            metrics = new EndpointMetrics();
+            endpoints.put(endpoint, metrics);
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,446 @@
+package io.teak.sdk.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Every background task in the SDK runs here.
+ *
+ * Work is submitted to named queues, which are either serial or have a concurrency limit, and
+ * which run on one small pool of worker threads. Delayed and periodic tasks wait on a single
+ * timer thread, which only moves them to their queue when they are due. So the shared queues
+ * never use more than MAXIMUM_WORKER_THREADS + 1 threads, however many of them exist, and idle
+ * threads exit. The SDK starts no threads outside of the Scheduler, so live_threads counts all
+ * of them.
+ *
+ * Tasks on the shared pool must not wait for other SDK work, because that work may be queued
+ * behind them. Queues whose tasks do wait, such as the request dispatcher waiting on the
+ * transport, are dedicated queues: they get the same ordering and concurrency limit, but run on
+ * a second pool, which also exits when idle. Every dedicated queue shares that pool, so they
+ * never use more than MAXIMUM_DEDICATED_THREADS threads between them. Tasks on dedicated queues
+ * must therefore only wait with a timeout, and anything which can be a callback should be.
+ */
+public class Scheduler {
+    public static final int MAXIMUM_WORKER_THREADS = 8;
+
+    // Enough for the transport, the request dispatcher and a session at once
+    public static final int MAXIMUM_DEDICATED_THREADS = 16;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final Scheduler instance = new Scheduler(MAXIMUM_WORKER_THREADS, MAXIMUM_DEDICATED_THREADS);
+
+    public static Scheduler get() {
+        return Scheduler.instance;
+    }
+
+    private final int maximumWorkerThreads;
+    private final int maximumDedicatedThreads;
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor dedicatedWorkers;
+    private final ScheduledThreadPoolExecutor timer;
+
+    ///// Thread accounting
+
+    private final AtomicInteger liveThreads = new AtomicInteger(0);
+    private final AtomicInteger peakThreads = new AtomicInteger(0);
+    private final AtomicInteger threadsCreated = new AtomicInteger(0);
+
+    // Shared by every queue with the same name, so a queue per instance doesn't grow this
+    private final Map<String, QueueStats> queueStats = new HashMap<>();
+
+    private static class QueueStats {
+        // Queues with this name which have tasks queued or running
+        int activeQueues;
+        long queued;
+        long running;
+        long completed;
+    }
+
+    private Scheduler(int maximumWorkerThreads, int maximumDedicatedThreads) {
+        this.maximumWorkerThreads = maximumWorkerThreads;
+        this.maximumDedicatedThreads = maximumDedicatedThreads;
+
+        this.workers = new ThreadPoolExecutor(maximumWorkerThreads, maximumWorkerThreads,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> this.newThread(runnable, "worker"));
+        this.workers.allowCoreThreadTimeOut(true);
+
+        this.dedicatedWorkers = new ThreadPoolExecutor(maximumDedicatedThreads, maximumDedicatedThreads,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> this.newThread(runnable, "dedicated"));
+        this.dedicatedWorkers.allowCoreThreadTimeOut(true);
+
+        // The timer only hands tasks to queues, it never runs them
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> this.newThread(runnable, "timer"));
+        this.timer.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        this.timer.allowCoreThreadTimeOut(true);
+    }
+
+    private Thread newThread(@NonNull final Runnable runnable, @NonNull String role) {
+        final int threadNumber = this.threadsCreated.incrementAndGet();
+        return ThreadFactory.createThreadWithName(() -> {
+            final int live = this.liveThreads.incrementAndGet();
+            int peak;
+            while (live > (peak = this.peakThreads.get()) && !this.peakThreads.compareAndSet(peak, live)) {
+                // Retry
+            }
+
+            try {
+                runnable.run();
+            } finally {
+                this.liveThreads.decrementAndGet();
+            }
+        },
+            Scheduler.class.getName() + "#" + role + "-" + threadNumber);
+    }
+
+    /**
+     * @return A queue which runs its tasks one at a time, in order.
+     */
+    @NonNull
+    public Queue newSerialQueue(@NonNull String name) {
+        return new Queue(name, 1, this.workers);
+    }
+
+    /**
+     * @return A queue which runs up to maximumConcurrency of its tasks at once. Tasks start in
+     *         the order they were submitted.
+     */
+    @NonNull
+    public Queue newConcurrentQueue(@NonNull String name, int maximumConcurrency) {
+        return new Queue(name, maximumConcurrency, this.workers);
+    }
+
+    /**
+     * @return A queue like newConcurrentQueue(), which runs on the dedicated pool instead of the
+     *         shared one, so its tasks may wait on other queues, with a timeout.
+     */
+    @NonNull
+    public Queue newDedicatedQueue(@NonNull String name, int maximumConcurrency) {
+        return new Queue(name, Math.min(maximumConcurrency, this.maximumDedicatedThreads), this.dedicatedWorkers);
+    }
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> queues = new HashMap<>();
+        synchronized (this.queueStats) {
+            for (Map.Entry<String, QueueStats> entry : this.queueStats.entrySet()) {
+                final QueueStats stats = entry.getValue();
+                final Map<String, Object> map = new HashMap<>();
+                map.put("active_queues", stats.activeQueues);
+                map.put("queued", stats.queued);
+                map.put("running", stats.running);
+                map.put("completed", stats.completed);
+                queues.put(entry.getKey(), map);
+            }
+        }
+
+        final Map<String, Object> ret = new HashMap<>();
+        ret.put("queues", queues);
+        ret.put("maximum_worker_threads", this.maximumWorkerThreads);
+        ret.put("live_threads", this.liveThreads.get());
+        ret.put("peak_threads", this.peakThreads.get());
+        ret.put("threads_created", this.threadsCreated.get());
+        ret.put("active_workers", this.workers.getActiveCount());
+        ret.put("waiting_tasks", this.workers.getQueue().size());
+        ret.put("maximum_dedicated_threads", this.maximumDedicatedThreads);
+        ret.put("active_dedicated_workers", this.dedicatedWorkers.getActiveCount());
+        ret.put("waiting_dedicated_tasks", this.dedicatedWorkers.getQueue().size());
+        ret.put("timers", this.timer.getQueue().size());
+        return ret;
+    }
+
+    ///// Queue
+
+    public class Queue extends AbstractExecutorService implements ScheduledExecutorService {
+        public final String name;
+        private final QueueStats stats;
+        private final Executor threads;
+
+        private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+        private int maximumConcurrency;
+        private int running;
+        private boolean isShutdown;
+
+        private Queue(@NonNull String name, int maximumConcurrency, @NonNull Executor threads) {
+            this.name = name;
+            this.maximumConcurrency = Math.max(1, maximumConcurrency);
+            this.threads = threads;
+
+            synchronized (Scheduler.this.queueStats) {
+                QueueStats stats = Scheduler.this.queueStats.get(name);
+                if (stats == null) {
+                    stats = new QueueStats();
+                    Scheduler.this.queueStats.put(name, stats);
+                }
+                this.stats = stats;
+            }
+        }
+
+        public synchronized void setMaximumConcurrency(int maximumConcurrency) {
+            this.maximumConcurrency = Math.max(1, maximumConcurrency);
+            this.dispatch();
+        }
+
+        public synchronized int getRunningCount() {
+            return this.running;
+        }
+
+        public synchronized int getQueuedCount() {
+            return this.pending.size();
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            this.enqueue(command, false);
+        }
+
+        private synchronized void enqueue(@NonNull Runnable command, boolean evenIfShutdown) {
+            if (this.isShutdown && !evenIfShutdown) {
+                throw new RejectedExecutionException(this.name + " is shut down");
+            }
+
+            final boolean wasIdle = this.isIdle();
+            this.pending.add(command);
+            synchronized (Scheduler.this.queueStats) {
+                this.stats.queued++;
+                if (wasIdle) {
+                    this.stats.activeQueues++;
+                }
+            }
+            this.dispatch();
+        }
+
+        // Must hold this
+        private void dispatch() {
+            while (this.running < this.maximumConcurrency && !this.pending.isEmpty()) {
+                final Runnable command = this.pending.poll();
+                this.running++;
+                synchronized (Scheduler.this.queueStats) {
+                    this.stats.queued--;
+                    this.stats.running++;
+                }
+                this.threads.execute(() -> this.runTask(command));
+            }
+        }
+
+        // One task per turn on a worker, so every queue gets a fair share of the pool
+        private void runTask(@NonNull Runnable command) {
+            try {
+                command.run();
+            } finally {
+                synchronized (this) {
+                    this.running--;
+                    synchronized (Scheduler.this.queueStats) {
+                        this.stats.running--;
+                        this.stats.completed++;
+                    }
+                    this.dispatch();
+                    this.onDrainedIfIdle();
+                    if (this.isTerminated()) {
+                        this.notifyAll();
+                    }
+                }
+            }
+        }
+
+        // Must hold this
+        private boolean isIdle() {
+            return this.running == 0 && this.pending.isEmpty();
+        }
+
+        // Must hold this, and call after the queue may have become idle
+        private void onDrainedIfIdle() {
+            if (!this.isIdle()) return;
+
+            synchronized (Scheduler.this.queueStats) {
+                this.stats.activeQueues--;
+            }
+        }
+
+        ///// ExecutorService
+
+        @Override
+        public synchronized void shutdown() {
+            this.isShutdown = true;
+            if (this.isTerminated()) {
+                this.notifyAll();
+            }
+        }
+
+        @NonNull
+        @Override
+        public synchronized List<Runnable> shutdownNow() {
+            this.isShutdown = true;
+            final List<Runnable> notRun = new ArrayList<>(this.pending);
+            synchronized (Scheduler.this.queueStats) {
+                this.stats.queued -= this.pending.size();
+            }
+            this.pending.clear();
+            if (!notRun.isEmpty()) {
+                this.onDrainedIfIdle();
+            }
+            if (this.isTerminated()) {
+                this.notifyAll();
+            }
+            return notRun;
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return this.isShutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return this.isShutdown && this.running == 0 && this.pending.isEmpty();
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!this.isTerminated()) {
+                final long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) return false;
+                this.wait(remainingMs);
+            }
+            return true;
+        }
+
+        ///// ScheduledExecutorService
+
+        @NonNull
+        @Override
+        public ScheduledFuture<?> schedule(@NonNull Runnable command, long delay, @NonNull TimeUnit unit) {
+            return this.schedule(new ScheduledTask<Void>(command, null, unit.toNanos(delay), 0));
+        }
+
+        @NonNull
+        @Override
+        public <V> ScheduledFuture<V> schedule(@NonNull Callable<V> callable, long delay, @NonNull TimeUnit unit) {
+            return this.schedule(new ScheduledTask<>(callable, unit.toNanos(delay)));
+        }
+
+        @NonNull
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(@NonNull Runnable command, long initialDelay, long period, @NonNull TimeUnit unit) {
+            if (period <= 0) throw new IllegalArgumentException();
+            return this.schedule(new ScheduledTask<Void>(command, null, unit.toNanos(initialDelay), unit.toNanos(period)));
+        }
+
+        @NonNull
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(@NonNull Runnable command, long initialDelay, long delay, @NonNull TimeUnit unit) {
+            if (delay <= 0) throw new IllegalArgumentException();
+            return this.schedule(new ScheduledTask<Void>(command, null, unit.toNanos(initialDelay), -unit.toNanos(delay)));
+        }
+
+        private <V> ScheduledTask<V> schedule(@NonNull ScheduledTask<V> task) {
+            synchronized (this) {
+                if (this.isShutdown) {
+                    throw new RejectedExecutionException(this.name + " is shut down");
+                }
+            }
+            task.startTimer();
+            return task;
+        }
+
+        /**
+         * Waits on the Scheduler's timer thread, then runs on its queue.
+         *
+         * Like ScheduledThreadPoolExecutor, a delayed task still runs if the queue is shut down
+         * while it waits, but a periodic task stops.
+         */
+        private class ScheduledTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+            // 0 for one-shot, positive for a fixed rate, negative for a fixed delay
+            private final long periodNanos;
+            private long triggerTime;
+            private volatile Future<?> timerFuture;
+
+            ScheduledTask(@NonNull Runnable runnable, V result, long delayNanos, long periodNanos) {
+                super(runnable, result);
+                this.triggerTime = System.nanoTime() + Math.max(0, delayNanos);
+                this.periodNanos = periodNanos;
+            }
+
+            ScheduledTask(@NonNull Callable<V> callable, long delayNanos) {
+                super(callable);
+                this.triggerTime = System.nanoTime() + Math.max(0, delayNanos);
+                this.periodNanos = 0;
+            }
+
+            void startTimer() {
+                this.timerFuture = Scheduler.this.timer.schedule(this::onTimer, this.getDelay(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            }
+
+            private void onTimer() {
+                if (this.isDone()) return;
+
+                if (this.isPeriodic() && Queue.this.isShutdown()) {
+                    this.cancel(false);
+                    return;
+                }
+                Queue.this.enqueue(this, true);
+            }
+
+            @Override
+            public boolean isPeriodic() {
+                return this.periodNanos != 0;
+            }
+
+            @Override
+            public void run() {
+                if (!this.isPeriodic()) {
+                    super.run();
+                } else if (this.runAndReset()) {
+                    this.triggerTime = this.periodNanos > 0 ? this.triggerTime + this.periodNanos : System.nanoTime() - this.periodNanos;
+                    this.startTimer();
+                }
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                final Future<?> timerFuture = this.timerFuture;
+                if (cancelled && timerFuture != null) {
+                    timerFuture.cancel(false);
+                }
+                return cancelled;
+            }
+
+            @Override
+            public long getDelay(@NonNull TimeUnit unit) {
+                return unit.convert(this.triggerTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public int compareTo(@NonNull Delayed other) {
+                if (other == this) return 0;
+                final long difference = this.getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        }
+    }
+}
@@ -11,22 +11,20 @@ import org.greenrobot.eventbus.EventBus;
 
 import java.net.URL;
 import java.net.URLEncoder;
-import java.security.SecureRandom;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import io.teak.sdk.Helpers;
@@ -44,6 +42,8 @@ import io.teak.sdk.event.PushRegistrationEvent;
 import io.teak.sdk.event.RemoteConfigurationEvent;
 import io.teak.sdk.event.SessionStateEvent;
 import io.teak.sdk.event.UserIdEvent;
+import io.teak.sdk.io.IHttpRequest;
+import io.teak.sdk.io.Transports;
 import io.teak.sdk.json.JSONObject;
 import io.teak.sdk.push.PushState;
 
@@ -52,6 +52,14 @@ public class Session {
     @SuppressWarnings({"FieldCanBeLocal", "FieldMayBeFinal"}) // This can be changed by tests
     private static long SAME_SESSION_TIME_DELTA = 120000;
 
+    // Every session's heartbeat runs on this queue, only one session is ever current
+    private static final ScheduledExecutorService heartbeatQueue = Executors.newSingleThreadScheduledExecutor();
+    private static final Random heartbeatRandom = new Random();
+
+    // Only changed on the heartbeat queue
+    private static volatile long heartbeatsSent;
+    private static volatile long heartbeatsSkipped;
+
     public static final Session NullSession = new Session("Null Session");
 
     // region State machine
@@ -93,10 +101,24 @@ public class Session {
         }
     }
 
+    /**
+     * State and previous state, published together so they can be read without taking stateLock.
+     */
+    private static class StateSnapshot {
+        final State state;
+        final State previousState;
+
+        StateSnapshot(@NonNull State state, @Nullable State previousState) {
+            this.state = state;
+            this.previousState = previousState;
+        }
+    }
+
     private State state = State.Allocated;
     private State previousState = null;
-    private final InstrumentableReentrantLock stateLock = new InstrumentableReentrantLock();
-    private final ExecutorService executionQueue = Executors.newSingleThreadExecutor();
+    private volatile StateSnapshot stateSnapshot = new StateSnapshot(State.Allocated, null);
+    private final InstrumentableReentrantLock stateLock = new InstrumentableReentrantLock("Session.stateLock");
+    private final ExecutorService executionQueue = Executors.newDedicatedSingleThreadExecutor();
     // endregion
 
     // State: Created
@@ -111,7 +133,8 @@ public class Session {
     private String userId;
     public String email;
 
-    private ScheduledExecutorService heartbeatService;
+    private ScheduledFuture<?> heartbeat;
+    private volatile long lastRequestSucceededAt;
     private String countryCode;
     private String facebookAccessToken;
     private String facebookId;
@@ -165,7 +188,7 @@ public class Session {
             this.facebookAccessToken = session.facebookAccessToken;
             this.facebookId = session.facebookId;
         }
-        TeakEvent.addEventListener(this.teakEventListener);
+        TeakEvent.addEventListener(this.teakEventListener, FacebookAccessTokenEvent.Type, AdvertisingInfoEvent.Type, PushRegistrationEvent.Registered);
 
         setState(State.Created);
     }
@@ -184,14 +207,12 @@ public class Session {
     }
 
     private boolean isCurrentSession() {
-        Session.currentSessionLock.lock();
-        this.stateLock.lock();
-        try {
-            return (Session.currentSession == this);
-        } finally {
-            this.stateLock.unlock();
-            Session.currentSessionLock.unlock();
-        }
+        return (Session.currentSession == this);
+    }
+
+    // Call with stateLock held, after changing state or previousState
+    private void publishState() {
+        this.stateSnapshot = new StateSnapshot(this.state, this.previousState);
     }
 
     private boolean setState(@NonNull State newState) {
@@ -213,7 +234,7 @@ public class Session {
             // logic that should occur on transition.
             switch (newState) {
                 case Created: {
-                    TeakEvent.addEventListener(this.remoteConfigurationEventListener);
+                    TeakEvent.addEventListener(this.remoteConfigurationEventListener, RemoteConfigurationEvent.Type);
                 } break;
 
                 case Configured: {
@@ -233,36 +254,13 @@ public class Session {
                 } break;
 
                 case UserIdentified: {
-                    // Start heartbeat, heartbeat service should be null right now
-                    if (this.heartbeatService != null) {
-                        invalidValuesForTransition.add(new Object[] {"heartbeatService", this.heartbeatService});
+                    // Start heartbeat, heartbeat should be null right now
+                    if (this.heartbeat != null) {
+                        invalidValuesForTransition.add(new Object[] {"heartbeat", this.heartbeat});
                     } else {
                         startHeartbeat();
                     }
 
-                    userIdReadyRunnableQueueLock.lock();
-                    try {
-                        for (WhenUserIdIsReadyRun runnable : userIdReadyRunnableQueue) {
-                            this.executionQueue.execute(runnable);
-                        }
-                        userIdReadyRunnableQueue.clear();
-                    } finally {
-                        userIdReadyRunnableQueueLock.unlock();
-                    }
-
-                    // Run EventBus on the main thread
-                    new Handler(Looper.getMainLooper()).post(() -> {
-                        userIdReadyEventBusQueueLock.lock();
-                        try {
-                            for (Object event : userIdReadyEventBusQueue) {
-                                EventBus.getDefault().post(event);
-                            }
-                            userIdReadyEventBusQueue.clear();
-                        } finally {
-                            userIdReadyEventBusQueueLock.unlock();
-                        }
-                    });
-
                     // Process deep link and/or rewards and send out events
                     processAttributionAndDispatchEvents();
 
@@ -283,9 +281,16 @@ public class Session {
                     this.endTimeMillis = SystemClock.elapsedRealtime();
 
                     // Stop heartbeat, Expiring->Expiring is possible, so no invalid data here
-                    if (this.heartbeatService != null) {
-                        this.heartbeatService.shutdown();
-                        this.heartbeatService = null;
+                    if (this.heartbeat != null) {
+                        this.heartbeat.cancel(false);
+                        this.heartbeat = null;
+                    }
+
+                    // Send everything that is waiting on a timer now, once the app is in the
+                    // background it may be frozen or killed before the timer fires
+                    final int rescuedEvents = Request.flushPendingBatches();
+                    if (rescuedEvents > 0) {
+                        Teak.log.i("session.flush", Helpers.mm.h("rescued_events", rescuedEvents, "session_id", this.sessionId));
                     }
 
                     // Send UserProfile to server
@@ -328,6 +333,11 @@ public class Session {
 
             this.previousState = this.state;
             this.state = newState;
+            if (this.state == State.UserIdentified) {
+                this.publishStateAndDrainUserIdReadyQueues();
+            } else {
+                this.publishState();
+            }
 
             Teak.log.i("session.state", Helpers.mm.h("state", this.state.name, "old_state", this.previousState.name, "session_id", this.sessionId));
             TeakEvent.postEvent(new SessionStateEvent(this, this.state, this.previousState));
@@ -352,52 +362,68 @@ public class Session {
         if (heartbeatInterval == 0) {
             return;
         }
+        final long heartbeatIntervalMillis = TimeUnit.SECONDS.toMillis(heartbeatInterval);
 
         // TODO: Revist this when we have time, if it is important
         //noinspection deprecation - Alex said "ehhhhhhh" to changing the heartbeat param to a map
         @SuppressWarnings("deprecation")
         final String teakSdkVersion = Teak.SDKVersion;
 
-        this.heartbeatService = Executors.newSingleThreadScheduledExecutor();
-        this.heartbeatService.scheduleAtFixedRate(() -> {
-            HttpsURLConnection connection = null;
+        // Everything but the user, country and buster is the same for every ping
+        final String gameIdParameter;
+        final String clientParameters;
+        try {
+            gameIdParameter = "game_id=" + URLEncoder.encode(teakConfiguration.appConfiguration.appId, "UTF-8");
+            clientParameters = "&sdk_version=" + URLEncoder.encode(teakSdkVersion, "UTF-8") +
+                               "&sdk_platform=" + URLEncoder.encode(teakConfiguration.deviceConfiguration.platformString, "UTF-8") +
+                               "&app_version=" + URLEncoder.encode(String.valueOf(teakConfiguration.appConfiguration.appVersion), "UTF-8") +
+                               "&app_version_name=" + URLEncoder.encode(String.valueOf(teakConfiguration.appConfiguration.appVersionName), "UTF-8");
+        } catch (Exception e) {
+            Teak.log.exception(e);
+            return;
+        }
+
+        this.heartbeat = Session.heartbeatQueue.scheduleAtFixedRate(() -> {
+            // A request that got through recently has already told the server this session is
+            // alive, so there is no need to wake up the radio for a ping
+            final long lastRequestSucceededAt = Session.this.lastRequestSucceededAt;
+            if (lastRequestSucceededAt != 0 && SystemClock.elapsedRealtime() - lastRequestSucceededAt < heartbeatIntervalMillis) {
+                Session.heartbeatsSkipped++;
+                return;
+            }
+
             try {
-                String buster;
-                {
-                    final SecureRandom random = new SecureRandom();
-                    byte[] bytes = new byte[4];
-                    random.nextBytes(bytes);
-
-                    // When packing signed bytes into an int, each byte needs to be masked off
-                    // because it is sign-extended to 32 bits (rather than zero-extended) due to
-                    // the arithmetic promotion rule (described in JLS, Conversions and Promotions).
-                    // https://stackoverflow.com/questions/7619058/convert-a-byte-array-to-integer-in-java-and-vice-versa
-                    final int asInt = bytes[0] << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
-                    buster = String.format("%08x", asInt);
-                }
+                // The buster only needs to defeat caches
+                final String buster = String.format("%08x", Session.heartbeatRandom.nextInt());
 
-                String queryString = "game_id=" + URLEncoder.encode(teakConfiguration.appConfiguration.appId, "UTF-8") +
+                String queryString = gameIdParameter +
                                      "&api_key=" + URLEncoder.encode(Session.this.userId, "UTF-8") +
-                                     "&sdk_version=" + URLEncoder.encode(teakSdkVersion, "UTF-8") +
-                                     "&sdk_platform=" + URLEncoder.encode(teakConfiguration.deviceConfiguration.platformString, "UTF-8") +
-                                     "&app_version=" + URLEncoder.encode(String.valueOf(teakConfiguration.appConfiguration.appVersion), "UTF-8") +
-                                     "&app_version_name=" + URLEncoder.encode(String.valueOf(teakConfiguration.appConfiguration.appVersionName), "UTF-8") +
+                                     clientParameters +
                                      (Session.this.countryCode == null ? "" : "&country_code=" + URLEncoder.encode(Session.this.countryCode, "UTF-8")) +
-                                     "&buster=" + URLEncoder.encode(buster, "UTF-8");
+                                     "&buster=" + buster;
                 URL url = new URL("https://gocarrot.com/ping?" + queryString);
-                connection = (HttpsURLConnection) url.openConnection();
-                connection.setRequestProperty("Accept-Charset", "UTF-8");
-                connection.setUseCaches(false);
-                connection.getResponseCode();
+                Session.heartbeatsSent++;
+                Transports.getHttpRequest().synchronousRequest(url, "GET", IHttpRequest.RequestBody.withHeaders(null, new HashMap<>()));
             } catch (Exception ignored) {
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
             }
         }, 0, heartbeatInterval, TimeUnit.SECONDS);
     }
 
+    /**
+     * Called when a request made for this session gets a successful reply.
+     */
+    public void onRequestSucceeded() {
+        this.lastRequestSucceededAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * @return Heartbeat pings sent, and skipped because other requests showed the session was
+     *         alive, by every session since launch.
+     */
+    public static Map<String, Object> getHeartbeatMetrics() {
+        return Helpers.mm.h("sent", Session.heartbeatsSent, "skipped", Session.heartbeatsSkipped);
+    }
+
     private void identifyUser() {
         final TeakConfiguration teakConfiguration = TeakConfiguration.get();
 
@@ -436,24 +462,14 @@ public class Session {
                 final String locale = Locale.getDefault().toString();
                 payload.put("locale", locale);
 
-                payload.put("android_limit_ad_tracking", !teakConfiguration.dataCollectionConfiguration.enableIDFA());
-                if (teakConfiguration.deviceConfiguration.advertisingId != null &&
-                    teakConfiguration.dataCollectionConfiguration.enableIDFA()) {
-                    payload.put("android_ad_id", teakConfiguration.deviceConfiguration.advertisingId);
-                } else {
-                    payload.put("android_ad_id", "");
-                }
-
                 // Reporting Facebook Access Token will be removed in SDK 5
+                String facebookAccessToken = null;
                 if (!teakConfiguration.appConfiguration.sdk5Behaviors) {
                     if (teakConfiguration.dataCollectionConfiguration.enableFacebookAccessToken()) {
                         if (Session.this.facebookAccessToken == null) {
                             Session.this.facebookAccessToken = Helpers.getCurrentFacebookAccessToken();
                         }
-
-                        if (Session.this.facebookAccessToken != null) {
-                            payload.put("access_token", Session.this.facebookAccessToken);
-                        }
+                        facebookAccessToken = Session.this.facebookAccessToken;
                     }
                 }
 
@@ -485,15 +501,14 @@ public class Session {
                 }
                 final Teak.LaunchData launchData = tempLaunchData;
 
-                if (teakConfiguration.deviceConfiguration.pushRegistration != null &&
-                    teakConfiguration.dataCollectionConfiguration.enablePushKey()) {
-                    payload.putAll(teakConfiguration.deviceConfiguration.pushRegistration);
+                // Ad id, access token and push key, unless opted out
+                if (teakConfiguration.dataCollectionConfiguration.putIdentifiers(payload, teakConfiguration.deviceConfiguration, facebookAccessToken)) {
                     payload.putAll(PushState.get().toMap());
                 }
 
                 Teak.log.i("session.identify_user", mm.h("userId", Session.this.userId, "timezone", tzOffset, "locale", locale, "session_id", Session.this.sessionId));
 
-                Request.submit("/games/" + teakConfiguration.appConfiguration.appId + "/users.json", payload, Session.this,
+                Request.submit(null, "POST", "/games/" + teakConfiguration.appConfiguration.appId + "/users.json", payload, Session.this,
                     (responseCode, responseBody) -> {
                         Session.this.stateLock.lock();
                         try {
@@ -567,6 +582,7 @@ public class Session {
                             // Prevent warning for 'do_not_track_event'
                             if (Session.this.state == State.Expiring) {
                                 Session.this.previousState = State.UserIdentified;
+                                Session.this.publishState();
                             } else if (Session.this.state != State.UserIdentified) {
                                 Session.this.setState(State.UserIdentified);
                             }
@@ -576,7 +592,7 @@ public class Session {
                         } finally {
                             Session.this.stateLock.unlock();
                         }
-                    });
+                    }, RequestDispatcher.Priority.Interactive);
             } finally {
                 Session.this.stateLock.unlock();
             }
@@ -684,6 +700,7 @@ public class Session {
                 try {
                     if (state == State.Expiring) {
                         previousState = State.Configured;
+                        publishState();
                     } else {
                         setState(State.Configured);
                     }
@@ -730,16 +747,17 @@ public class Session {
 
     // TODO: I'd love to make this Annotation based
     static void registerStaticEventListeners() {
-        TeakEvent.addEventListener(Session.staticTeakEventListener);
+        TeakEvent.addEventListener(Session.staticTeakEventListener, LogoutEvent.Type, UserIdEvent.Type, LifecycleEvent.Paused, LifecycleEvent.Resumed);
     }
 
     static boolean isExpiringOrExpired() {
-        currentSessionLock.lock();
-        try {
-            return currentSession == null || currentSession.hasExpired() || currentSession.state == State.Expiring;
-        } finally {
-            currentSessionLock.unlock();
-        }
+        // An Expiring session past its timeout is moved to Expired by getCurrentSession(), either
+        // way the answer is the same
+        final Session session = currentSession;
+        if (session == null) return true;
+
+        final State state = session.stateSnapshot.state;
+        return state == State.Expiring || state == State.Expired;
     }
 
     private static void setUserId(@NonNull String userId, @Nullable String email, @Nullable String facebookId) {
@@ -817,123 +835,155 @@ public class Session {
 
         @Override
         public void run() {
-            currentSessionLock.lock();
-            try {
-                this.runnable.run(currentSession);
-            } finally {
-                currentSessionLock.unlock();
-            }
+            this.runnable.run(currentSession);
         }
     }
 
-    private static final InstrumentableReentrantLock userIdReadyEventBusQueueLock = new InstrumentableReentrantLock();
-    private static final ArrayList<Object> userIdReadyEventBusQueue = new ArrayList<>();
+    // region User id ready queues
+    // Readers look at the current session's published state without locking. If the user id is
+    // not ready they take the queue lock and look again, because the state is only published as
+    // UserIdentified while the queues are locked, after they have been drained. So work is either
+    // queued before the drain, or handed straight to the session after it, never stranded.
 
-    public static void whenUserIdIsReadyPost(@NonNull Object event) {
-        currentSessionLock.lock();
+    private void publishStateAndDrainUserIdReadyQueues() {
+        userIdReadyRunnableQueueLock.lock();
+        userIdReadyEventBusQueueLock.lock();
         try {
-            if (currentSession == null) {
-                userIdReadyEventBusQueueLock.lock();
-                try {
-                    userIdReadyEventBusQueue.add(event);
-                } finally {
-                    userIdReadyEventBusQueueLock.unlock();
-                }
-            } else {
-                final Session _lockedSession = currentSession;
-                _lockedSession.stateLock.lock();
-                try {
-                    if (currentSession.state == State.UserIdentified) {
-                        // Run EventBus on the main thread
-                        new Handler(Looper.getMainLooper()).post(() -> {
-                            EventBus.getDefault().post(event);
-                        });
-                    } else {
-                        userIdReadyEventBusQueueLock.lock();
+            // One task for the whole backlog keeps the time spent holding the locks short
+            if (!userIdReadyRunnableQueue.isEmpty()) {
+                final ArrayList<WhenUserIdIsReadyRun> runnables = new ArrayList<>(userIdReadyRunnableQueue);
+                userIdReadyRunnableQueue.clear();
+                pendingTrackEvents = null;
+
+                this.executionQueue.execute(() -> {
+                    for (WhenUserIdIsReadyRun runnable : runnables) {
                         try {
-                            userIdReadyEventBusQueue.add(event);
-                        } finally {
-                            userIdReadyEventBusQueueLock.unlock();
+                            runnable.run();
+                        } catch (Exception e) {
+                            Teak.log.exception(e);
                         }
                     }
-                } finally {
-                    _lockedSession.stateLock.unlock();
-                }
+                });
+            }
+
+            if (!userIdReadyEventBusQueue.isEmpty()) {
+                final ArrayList<Object> events = new ArrayList<>(userIdReadyEventBusQueue);
+                userIdReadyEventBusQueue.clear();
+
+                // Run EventBus on the main thread
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    for (Object event : events) {
+                        EventBus.getDefault().post(event);
+                    }
+                });
             }
+
+            this.publishState();
         } finally {
-            currentSessionLock.unlock();
+            userIdReadyEventBusQueueLock.unlock();
+            userIdReadyRunnableQueueLock.unlock();
         }
     }
 
-    private static final InstrumentableReentrantLock userIdReadyRunnableQueueLock = new InstrumentableReentrantLock();
+    private static boolean postIfUserIdIsReady(@NonNull Object event) {
+        final Session session = currentSession;
+        if (session == null || session.stateSnapshot.state != State.UserIdentified) return false;
+
+        // Run EventBus on the main thread
+        new Handler(Looper.getMainLooper()).post(() -> EventBus.getDefault().post(event));
+        return true;
+    }
+
+    private static boolean runIfUserIdIsReady(@NonNull WhenUserIdIsReadyRun runnable, boolean orWasReady) {
+        final Session session = currentSession;
+        if (session == null) return false;
+
+        final StateSnapshot snapshot = session.stateSnapshot;
+        if (snapshot.state == State.UserIdentified ||
+            (orWasReady && snapshot.state == State.Expiring && snapshot.previousState == State.UserIdentified)) {
+            session.executionQueue.execute(runnable);
+            return true;
+        }
+        return false;
+    }
+
+    private static final InstrumentableReentrantLock userIdReadyEventBusQueueLock = new InstrumentableReentrantLock("Session.userIdReadyEventBusQueueLock");
+    private static final ArrayList<Object> userIdReadyEventBusQueue = new ArrayList<>();
+
+    public static void whenUserIdIsReadyPost(@NonNull Object event) {
+        if (postIfUserIdIsReady(event)) return;
+
+        userIdReadyEventBusQueueLock.lock();
+        try {
+            if (!postIfUserIdIsReady(event)) {
+                userIdReadyEventBusQueue.add(event);
+            }
+        } finally {
+            userIdReadyEventBusQueueLock.unlock();
+        }
+    }
+
+    private static final InstrumentableReentrantLock userIdReadyRunnableQueueLock = new InstrumentableReentrantLock("Session.userIdReadyRunnableQueueLock");
     private static final ArrayList<WhenUserIdIsReadyRun> userIdReadyRunnableQueue = new ArrayList<>();
 
     public static void whenUserIdIsReadyRun(@NonNull SessionRunnable runnable) {
-        currentSessionLock.lock();
+        whenUserIdIsReadyRun(new WhenUserIdIsReadyRun(runnable), false);
+    }
+
+    public static void whenUserIdIsOrWasReadyRun(@NonNull SessionRunnable runnable) {
+        whenUserIdIsReadyRun(new WhenUserIdIsReadyRun(runnable), true);
+    }
+
+    // Guarded by userIdReadyRunnableQueueLock. The buffer track events are aggregated into, which
+    // is already queued at the position of its first event. Anything else queued after it starts a
+    // new buffer, so events are sent in order with the rest of the queue.
+    private static PendingTrackEvents pendingTrackEvents;
+
+    /**
+     * Send a track event once the user id is ready. Until then, it is aggregated into a bounded
+     * buffer rather than queued on its own.
+     */
+    public static void whenUserIdIsReadyTrackEvent(@NonNull Map<String, Object> payload) {
+        final WhenUserIdIsReadyRun runnable = new WhenUserIdIsReadyRun(session -> Request.submit("/me/events", payload, session));
+        if (runIfUserIdIsReady(runnable, false)) return;
+
+        userIdReadyRunnableQueueLock.lock();
         try {
-            if (currentSession == null) {
-                userIdReadyRunnableQueueLock.lock();
-                try {
-                    userIdReadyRunnableQueue.add(new WhenUserIdIsReadyRun(runnable));
-                } finally {
-                    userIdReadyRunnableQueueLock.unlock();
-                }
-            } else {
-                final Session _lockedSession = currentSession;
-                _lockedSession.stateLock.lock();
-                try {
-                    if (currentSession.state == State.UserIdentified) {
-                        currentSession.executionQueue.execute(new WhenUserIdIsReadyRun(runnable));
-                    } else {
-                        userIdReadyRunnableQueueLock.lock();
-                        try {
-                            userIdReadyRunnableQueue.add(new WhenUserIdIsReadyRun(runnable));
-                        } finally {
-                            userIdReadyRunnableQueueLock.unlock();
-                        }
-                    }
-                } finally {
-                    _lockedSession.stateLock.unlock();
-                }
+            if (runIfUserIdIsReady(runnable, false)) return;
+
+            if (pendingTrackEvents == null) {
+                final PendingTrackEvents trackEvents = new PendingTrackEvents();
+                pendingTrackEvents = trackEvents;
+                userIdReadyRunnableQueue.add(new WhenUserIdIsReadyRun(session -> {
+                    // Track events that arrived while waiting go to the batcher together
+                    Teak.log.i("session.pending_track_events", trackEvents.toMap());
+                    Request.submit("/me/events", trackEvents.takeRows(), session);
+                }));
+            }
+
+            if (!pendingTrackEvents.add(payload) && pendingTrackEvents.getDropped() == 1) {
+                Teak.log.w("session.pending_track_events.full", "Dropping new track events until the user is identified",
+                    mm.h("maximum_rows", PendingTrackEvents.MAXIMUM_ROWS));
             }
         } finally {
-            currentSessionLock.unlock();
+            userIdReadyRunnableQueueLock.unlock();
         }
     }
 
-    public static void whenUserIdIsOrWasReadyRun(@NonNull SessionRunnable runnable) {
-        currentSessionLock.lock();
+    private static void whenUserIdIsReadyRun(@NonNull WhenUserIdIsReadyRun runnable, boolean orWasReady) {
+        if (runIfUserIdIsReady(runnable, orWasReady)) return;
+
+        userIdReadyRunnableQueueLock.lock();
         try {
-            if (currentSession == null) {
-                userIdReadyRunnableQueueLock.lock();
-                try {
-                    userIdReadyRunnableQueue.add(new WhenUserIdIsReadyRun(runnable));
-                } finally {
-                    userIdReadyRunnableQueueLock.unlock();
-                }
-            } else {
-                final Session _lockedSession = currentSession;
-                _lockedSession.stateLock.lock();
-                try {
-                    if (currentSession.state == State.UserIdentified ||
-                        (currentSession.state == State.Expiring && currentSession.previousState == State.UserIdentified)) {
-                        currentSession.executionQueue.execute(new WhenUserIdIsReadyRun(runnable));
-                    } else {
-                        userIdReadyRunnableQueueLock.lock();
-                        try {
-                            userIdReadyRunnableQueue.add(new WhenUserIdIsReadyRun(runnable));
-                        } finally {
-                            userIdReadyRunnableQueueLock.unlock();
-                        }
-                    }
-                } finally {
-                    _lockedSession.stateLock.unlock();
-                }
+            if (!runIfUserIdIsReady(runnable, orWasReady)) {
+                userIdReadyRunnableQueue.add(runnable);
+                pendingTrackEvents = null;
             }
         } finally {
-            currentSessionLock.unlock();
+            userIdReadyRunnableQueueLock.unlock();
         }
     }
+    // endregion
 
     private void forceExpire() {
         stateLock.lock();
@@ -1052,12 +1102,11 @@ public class Session {
     private void checkLaunchDataForRewardAndPostEvents(final Teak.AttributedLaunchData attributedLaunchData) {
         try {
             if (attributedLaunchData.rewardId != null) {
-                final Future<TeakNotification.Reward> rewardFuture = TeakNotification.Reward.rewardFromRewardId(attributedLaunchData.rewardId);
+                final SettableFuture<TeakNotification.Reward> rewardFuture = TeakNotification.Reward.claimRewardId(attributedLaunchData.rewardId);
 
                 if (rewardFuture != null) {
-                    Session.this.executionQueue.execute(() -> {
+                    rewardFuture.whenDone(reward -> {
                         try {
-                            final TeakNotification.Reward reward = rewardFuture.get();
                             Session.whenUserIdIsReadyPost(new Teak.RewardClaimEvent(attributedLaunchData, reward));
                         } catch (Exception e) {
                             Teak.log.exception(e);
@@ -1077,8 +1126,9 @@ public class Session {
     // endregion
 
     // region Current Session
-    private static Session currentSession;
-    private static final InstrumentableReentrantLock currentSessionLock = new InstrumentableReentrantLock();
+    // Only changed with currentSessionLock held, but may be read without it
+    private static volatile Session currentSession;
+    private static final InstrumentableReentrantLock currentSessionLock = new InstrumentableReentrantLock("Session.currentSessionLock");
 
     private static void getCurrentSession() {
         currentSessionLock.lock();
@@ -1106,12 +1156,7 @@ public class Session {
     }
 
     static Session getCurrentSessionOrNull() {
-        currentSessionLock.lock();
-        try {
-            return currentSession;
-        } finally {
-            currentSessionLock.unlock();
-        }
+        return currentSession;
     }
     // endregion
 
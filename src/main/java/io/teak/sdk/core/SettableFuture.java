@@ -0,0 +1,116 @@
+package io.teak.sdk.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A Future which is completed by whoever has the result, usually a request callback, so that no
+ * thread has to wait for the result in order to deliver it.
+ *
+ * SDK code should use whenDone() rather than get(), so that it doesn't hold a thread either.
+ */
+public class SettableFuture<T> implements Future<T> {
+    public interface Listener<T> {
+        /**
+         * @param value The result, or null if the Future was cancelled.
+         */
+        void onDone(@Nullable T value);
+    }
+
+    private T value;
+    private boolean isDone;
+    private boolean isCancelled;
+    private List<Listener<T>> listeners = new ArrayList<>();
+
+    /**
+     * Complete the Future, and call any listeners on the calling thread.
+     *
+     * @return false if the Future was already done.
+     */
+    public boolean set(@Nullable T value) {
+        return this.complete(value, false);
+    }
+
+    /**
+     * Call listener with the result when the Future is done: on the thread which completes it,
+     * or right away on the calling thread if it is already done.
+     */
+    public void whenDone(@NonNull Listener<T> listener) {
+        synchronized (this) {
+            if (!this.isDone) {
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        listener.onDone(this.isCancelled ? null : this.value);
+    }
+
+    private boolean complete(@Nullable T value, boolean cancelled) {
+        final List<Listener<T>> listeners;
+        synchronized (this) {
+            if (this.isDone) return false;
+
+            this.value = value;
+            this.isDone = true;
+            this.isCancelled = cancelled;
+            listeners = this.listeners;
+            this.listeners = null;
+            this.notifyAll();
+        }
+
+        for (Listener<T> listener : listeners) {
+            listener.onDone(value);
+        }
+        return true;
+    }
+
+    ///// Future
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return this.complete(null, true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return this.isCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return this.isDone;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!this.isDone) {
+            this.wait();
+        }
+        return this.getDoneValue();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!this.isDone) {
+            final long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) throw new TimeoutException();
+            this.wait(remainingMs);
+        }
+        return this.getDoneValue();
+    }
+
+    // Must hold this
+    private T getDoneValue() {
+        if (this.isCancelled) throw new CancellationException();
+        return this.value;
+    }
+}
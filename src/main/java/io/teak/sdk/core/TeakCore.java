@@ -63,7 +63,7 @@ public class TeakCore {
     }
 
     public TeakCore(@NonNull Context context) {
-        TeakEvent.addEventListener(this.teakEventListener);
+        TeakEvent.addEventListener(this.teakEventListener, LifecycleEvent.Resumed, TrackEventEvent.Type, PurchaseEvent.Type, PurchaseFailedEvent.Type, RemoteConfigurationEvent.Type, PushNotificationEvent.Received, PushNotificationEvent.Interaction);
 
         registerStaticTeakEventListeners();
     }
@@ -90,7 +90,7 @@ public class TeakCore {
                 case TrackEventEvent.Type: {
                     final Map<String, Object> payload = ((TrackEventEvent) event).payload;
 
-                    asyncExecutor.execute(() -> Session.whenUserIdIsReadyRun(session -> Request.submit("/me/events", payload, session)));
+                    asyncExecutor.execute(() -> Session.whenUserIdIsReadyTrackEvent(payload));
                     break;
                 }
                 case PurchaseEvent.Type: {
@@ -13,7 +13,7 @@ public class ThreadFactory implements java.util.concurrent.ThreadFactory {
         return ThreadFactory.createThreadWithName(runnable, this.threadNamePrefix);
     }
 
-    private static Thread createThreadWithName(@NonNull Runnable runnable, String name) {
+    static Thread createThreadWithName(@NonNull Runnable runnable, String name) {
         final Thread createdThread = new Thread(runnable, name);
 
         final int currentThreadsCreated = ++ThreadFactory.totalThreadsCreated;
@@ -48,14 +48,7 @@ public class ThreadFactory implements java.util.concurrent.ThreadFactory {
         return new ThreadFactory(name);
     }
 
-    public static Thread autoStart(@NonNull Runnable runnable) {
-        final String name = getNameForThreadOrFactory(4);
-        final Thread thread = ThreadFactory.createThreadWithName(runnable, name);
-        thread.start();
-        return thread;
-    }
-
-    private static String getNameForThreadOrFactory(int offset) {
+    static String getNameForThreadOrFactory(int offset) {
         final StackTraceElement[] stacktrace = Thread.currentThread().getStackTrace();
         final StackTraceElement e = stacktrace[offset];
         final String methodName = e.getMethodName();
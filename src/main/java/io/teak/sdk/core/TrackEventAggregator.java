@@ -0,0 +1,161 @@
+package io.teak.sdk.core;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.teak.sdk.Helpers;
+import io.teak.sdk.event.TrackEventEvent;
+
+/**
+ * Hash index over the rows of a track event batch.
+ *
+ * Rows are keyed on (action_type, object_type, object_instance_id), so finding the row for an
+ * event does not depend on how many rows are in the batch. Duration, count and sum of squares are
+ * kept in long accumulators, and only switch over to BigInteger if a sum overflows. The
+ * accumulated values are written back into the rows by writeToRows(), as a Long or BigInteger,
+ * so rows can be handed to another aggregator without losing anything.
+ */
+public class TrackEventAggregator {
+    private static class Key {
+        final Object actionId;
+        final Object objectTypeId;
+        final Object objectInstanceId;
+        final int hashCode;
+
+        Key(@NonNull Map<String, Object> payload) {
+            this.actionId = payload.get(TrackEventEvent.ActionIdKey);
+            this.objectTypeId = payload.get(TrackEventEvent.ObjectIdKey);
+            this.objectInstanceId = payload.get(TrackEventEvent.ObjectInstanceIdKey);
+
+            int hashCode = this.actionId == null ? 0 : this.actionId.hashCode();
+            hashCode = 31 * hashCode + (this.objectTypeId == null ? 0 : this.objectTypeId.hashCode());
+            hashCode = 31 * hashCode + (this.objectInstanceId == null ? 0 : this.objectInstanceId.hashCode());
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+
+            final Key other = (Key) obj;
+            return this.hashCode == other.hashCode &&
+                Helpers.is_equal(this.actionId, other.actionId) &&
+                Helpers.is_equal(this.objectTypeId, other.objectTypeId) &&
+                Helpers.is_equal(this.objectInstanceId, other.objectInstanceId);
+        }
+    }
+
+    private static class Accumulator {
+        private final boolean valid;
+        private long value;
+        private BigInteger overflow;
+
+        Accumulator(@Nullable Object initialValue) {
+            // A non-numeric value is left alone, the same as it always has been
+            this.valid = initialValue instanceof Number;
+            this.add(initialValue);
+        }
+
+        void add(@Nullable Object addition) {
+            if (!this.valid || !(addition instanceof Number)) return;
+
+            if (this.overflow == null) {
+                if (!(addition instanceof BigInteger) || ((BigInteger) addition).bitLength() < 64) {
+                    final long a = this.value;
+                    final long b = ((Number) addition).longValue();
+                    final long result = a + b;
+
+                    // Overflow if both operands have the same sign, and the result has the other
+                    if (((a ^ result) & (b ^ result)) >= 0) {
+                        this.value = result;
+                        return;
+                    }
+                }
+                this.overflow = BigInteger.valueOf(this.value);
+            }
+
+            this.overflow = this.overflow.add(addition instanceof BigInteger ? (BigInteger) addition : BigInteger.valueOf(((Number) addition).longValue()));
+        }
+
+        Object get() {
+            return this.overflow != null ? this.overflow : (Object) this.value;
+        }
+    }
+
+    private static class Row {
+        final Map<String, Object> payload;
+        final Accumulator duration;
+        final Accumulator count;
+        final Accumulator sumOfSquares;
+
+        Row(@NonNull Map<String, Object> payload) {
+            this.payload = payload;
+            this.duration = new Accumulator(payload.get(TrackEventEvent.DurationKey));
+            this.count = new Accumulator(payload.get(TrackEventEvent.CountKey));
+            this.sumOfSquares = new Accumulator(payload.get(TrackEventEvent.SumOfSquaresKey));
+        }
+
+        void add(@NonNull Map<String, Object> payload) {
+            this.duration.add(payload.get(TrackEventEvent.DurationKey));
+            this.count.add(payload.get(TrackEventEvent.CountKey));
+            this.sumOfSquares.add(payload.get(TrackEventEvent.SumOfSquaresKey));
+        }
+
+        void writeToPayload() {
+            if (this.duration.valid) {
+                this.payload.put(TrackEventEvent.DurationKey, this.duration.get());
+            }
+            if (this.count.valid) {
+                this.payload.put(TrackEventEvent.CountKey, this.count.get());
+            }
+            if (this.sumOfSquares.valid) {
+                this.payload.put(TrackEventEvent.SumOfSquaresKey, this.sumOfSquares.get());
+            }
+        }
+    }
+
+    private final Map<Key, Row> rows = new HashMap<>();
+
+    /**
+     * Add an event to the row it belongs to.
+     *
+     * @return false if there is no row for this event yet.
+     */
+    public boolean aggregate(@NonNull Map<String, Object> payload) {
+        final Row row = this.rows.get(new Key(payload));
+        if (row == null) {
+            return false;
+        }
+        row.add(payload);
+        return true;
+    }
+
+    /**
+     * @return true if aggregate() would find a row for this event.
+     */
+    public boolean hasRowFor(@NonNull Map<String, Object> payload) {
+        return this.rows.containsKey(new Key(payload));
+    }
+
+    /**
+     * Start a new row. The payload becomes the row, and will be updated by writeToRows().
+     */
+    public void addRow(@NonNull Map<String, Object> payload) {
+        this.rows.put(new Key(payload), new Row(payload));
+    }
+
+    public void writeToRows() {
+        for (Row row : this.rows.values()) {
+            row.writeToPayload();
+        }
+    }
+}
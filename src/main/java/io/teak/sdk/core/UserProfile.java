@@ -117,6 +117,6 @@ public class UserProfile extends Request {
             if (event.eventType.equals(RemoteConfigurationEvent.Type)) {
                 RemoteConfiguration remoteConfiguration = ((RemoteConfigurationEvent) event).remoteConfiguration;
             }
-        });
+        }, RemoteConfigurationEvent.Type);
     }
 }
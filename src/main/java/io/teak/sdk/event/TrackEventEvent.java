@@ -17,6 +17,9 @@ public class TrackEventEvent extends TeakEvent {
     public static final String CountKey = "count";
     public static final String SumOfSquaresKey = "sum_of_squares";
 
+    // floor(sqrt(Long.MAX_VALUE)), anything larger than this is squared as a BigInteger
+    private static final long MaximumSquarableLong = 3037000499L;
+
     public final Map<String, Object> payload;
 
     public TrackEventEvent(Map<String, Object> payload) {
@@ -42,7 +45,20 @@ public class TrackEventEvent extends TeakEvent {
         }
         payload.put(TrackEventEvent.DurationKey, duration);
         payload.put(TrackEventEvent.CountKey, 1);
-        payload.put(TrackEventEvent.SumOfSquaresKey, BigInteger.valueOf(duration).pow(2));
+        payload.put(TrackEventEvent.SumOfSquaresKey, (duration >= -MaximumSquarableLong && duration <= MaximumSquarableLong) ? (Object) (duration * duration) : BigInteger.valueOf(duration).pow(2));
         return payload;
     }
+
+    /**
+     * The sum of squares may be too large for a JSON number, so it is always sent as a base 10
+     * string, whether it was summed as a long or a BigInteger.
+     */
+    public static void stringifySumOfSquares(@NonNull Map<String, Object> payload) {
+        final Object sumOfSquares = payload.get(TrackEventEvent.SumOfSquaresKey);
+        if (sumOfSquares instanceof BigInteger) {
+            payload.put(TrackEventEvent.SumOfSquaresKey, ((BigInteger) sumOfSquares).toString(10));
+        } else if (sumOfSquares instanceof Number) {
+            payload.put(TrackEventEvent.SumOfSquaresKey, Long.toString(((Number) sumOfSquares).longValue(), 10));
+        }
+    }
 }
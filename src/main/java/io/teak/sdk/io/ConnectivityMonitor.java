@@ -0,0 +1,99 @@
+package io.teak.sdk.io;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.teak.sdk.Teak;
+
+/**
+ * Tracks whether the device has a network connection, and reports changes.
+ *
+ * If connectivity can not be determined, for example if the app has had ACCESS_NETWORK_STATE
+ * removed from its manifest, the device is assumed to always be online.
+ */
+public class ConnectivityMonitor {
+    public interface Listener {
+        void onConnectivityChanged(boolean isConnected);
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private volatile boolean connected = true;
+
+    private ConnectivityMonitor(@NonNull Context context, @NonNull ConnectivityManager connectivityManager, @NonNull Listener listener) {
+        this.connectivityManager = connectivityManager;
+        this.listener = listener;
+        this.connected = this.queryIsConnected();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(@NonNull Network network) {
+                    ConnectivityMonitor.this.setConnected(true);
+                }
+
+                @Override
+                public void onLost(@NonNull Network network) {
+                    ConnectivityMonitor.this.setConnected(ConnectivityMonitor.this.queryIsConnected());
+                }
+            });
+        } else {
+            @SuppressWarnings("deprecation")
+            final String connectivityAction = ConnectivityManager.CONNECTIVITY_ACTION;
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    ConnectivityMonitor.this.setConnected(ConnectivityMonitor.this.queryIsConnected());
+                }
+            },
+                new IntentFilter(connectivityAction));
+        }
+    }
+
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    private void setConnected(boolean connected) {
+        if (this.connected == connected) return;
+        this.connected = connected;
+
+        try {
+            this.listener.onConnectivityChanged(connected);
+        } catch (Exception e) {
+            Teak.log.exception(e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean queryIsConnected() {
+        try {
+            final NetworkInfo networkInfo = this.connectivityManager.getActiveNetworkInfo();
+            return networkInfo != null && networkInfo.isConnected();
+        } catch (Exception ignored) {
+            return true;
+        }
+    }
+
+    @Nullable
+    public static ConnectivityMonitor open(@Nullable Context context, @NonNull Listener listener) {
+        if (context == null) return null;
+        try {
+            final ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (connectivityManager == null) return null;
+            return new ConnectivityMonitor(context, connectivityManager, listener);
+        } catch (Exception e) {
+            // SecurityException if ACCESS_NETWORK_STATE is missing
+            Teak.log.exception(e, false);
+            return null;
+        }
+    }
+}
@@ -21,17 +21,16 @@ import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import io.teak.sdk.Helpers;
 import io.teak.sdk.IntegrationChecker;
-import io.teak.sdk.RetriableTask;
 import io.teak.sdk.Teak;
 import io.teak.sdk.TeakEvent;
-import io.teak.sdk.core.ThreadFactory;
+import io.teak.sdk.core.Executors;
 import io.teak.sdk.event.AdvertisingInfoEvent;
 
 public class DefaultAndroidDeviceInfo implements IAndroidDeviceInfo {
@@ -143,35 +142,17 @@ public class DefaultAndroidDeviceInfo implements IAndroidDeviceInfo {
         return tempDeviceId;
     }
 
+    // Google Play services may not be ready yet when the app starts
+    private static final int ADVERTISING_ID_TRIES = 10;
+    private static final long ADVERTISING_ID_RETRY_DELAY_MS = 7000L;
+
     @Override
     public void requestAdvertisingId() {
         // First try to use Google Play
         boolean usingGooglePlayForAdId = false;
         try {
-            final FutureTask<AdvertisingIdClient.Info> adInfoFuture = new FutureTask<>(new RetriableTask<>(10, 7000L, () -> {
-                if (isGooglePlayServicesAvailable()) {
-                    return AdvertisingIdClient.getAdvertisingIdInfo(context);
-                }
-                throw new Exception("Retrying GooglePlayServicesUtil.isGooglePlayServicesAvailable()");
-            }));
-
             if (isGooglePlayServicesAvailable()) {
-                ThreadFactory.autoStart(() -> {
-                    try {
-                        final AdvertisingIdClient.Info adInfo = adInfoFuture.get();
-                        if (adInfo != null) {
-                            final String advertisingId = adInfo.getId();
-                            final boolean limitAdTracking = adInfo.isLimitAdTrackingEnabled();
-
-                            TeakEvent.postEvent(new AdvertisingInfoEvent(advertisingId, limitAdTracking));
-                        }
-                    } catch (Exception e) {
-                        Teak.log.exception(e);
-                    }
-                });
-
-                // Only start running the future if we get this far
-                ThreadFactory.autoStart(adInfoFuture);
+                this.requestAdvertisingIdFromGooglePlay(ADVERTISING_ID_TRIES);
 
                 // And we're good
                 usingGooglePlayForAdId = true;
@@ -192,6 +173,33 @@ public class DefaultAndroidDeviceInfo implements IAndroidDeviceInfo {
         }
     }
 
+    // Retries are scheduled, rather than slept through, so no thread waits on Google Play
+    private void requestAdvertisingIdFromGooglePlay(final int triesLeft) {
+        Executors.execute(() -> {
+            try {
+                if (!isGooglePlayServicesAvailable()) {
+                    throw new Exception("Retrying GooglePlayServicesUtil.isGooglePlayServicesAvailable()");
+                }
+
+                final AdvertisingIdClient.Info adInfo = AdvertisingIdClient.getAdvertisingIdInfo(context);
+                if (adInfo != null) {
+                    final String advertisingId = adInfo.getId();
+                    final boolean limitAdTracking = adInfo.isLimitAdTrackingEnabled();
+
+                    TeakEvent.postEvent(new AdvertisingInfoEvent(advertisingId, limitAdTracking));
+                }
+            } catch (final NoClassDefFoundError e) {
+                Teak.log.exception(e);
+            } catch (final Exception e) {
+                if (triesLeft > 1) {
+                    Executors.schedule(() -> this.requestAdvertisingIdFromGooglePlay(triesLeft - 1), ADVERTISING_ID_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+                } else {
+                    Teak.log.exception(e);
+                }
+            }
+        });
+    }
+
     private static final String PREFERENCE_DEVICE_ID = "io.teak.sdk.Preferences.DeviceId";
 
     // https://raw.githubusercontent.com/jaredrummler/AndroidDeviceNames/master/library/src/main/java/com/jaredrummler/android/device/DeviceName.java
@@ -86,7 +86,7 @@ public class DefaultAndroidNotification implements IAndroidNotification {
                     displayNotification(context, notificationDisplayEvent.teakNotification, notificationDisplayEvent.nativeNotification);
                 } break;
             }
-        });
+        }, PushNotificationEvent.Cleared, PushNotificationEvent.Interaction, NotificationDisplayEvent.Type);
     }
 
     private void scheduleScreenStateWork() {
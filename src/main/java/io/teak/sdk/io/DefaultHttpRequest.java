@@ -1,11 +1,14 @@
 package io.teak.sdk.io;
 
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.HttpRetryException;
 import java.net.HttpURLConnection;
@@ -13,40 +16,86 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLException;
 
-public class DefaultHttpRequest implements IHttpRequest {
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.teak.sdk.Teak;
+import io.teak.sdk.core.Executors;
+
+public class DefaultHttpRequest implements IHttpRequest, ITransport {
+    // Below this, the gzip header and trailer cost more than compression saves
+    public static final int MINIMUM_GZIP_BODY_LENGTH = 512;
+
+    // Bytes of an unread response body to read through, so the connection can be reused
+    private static final int MAXIMUM_DRAIN_LENGTH = 64 * 1024;
+
+    // Callers may block waiting on a transport request, so it has threads of its own
+    private static final int MAXIMUM_TRANSPORT_THREADS = 8;
+
+    private static ExecutorService transportExecutor;
+
     @Override
-    @SuppressWarnings("TryWithIdenticalCatches")
     public Response synchronousRequest(final URL url, final String method, final String requestBody, final String sig) throws IOException {
+        final byte[] body = requestBody.getBytes();
+        return this.synchronousRequest(url, method, RequestBody.signed(body, body.length, sig, false));
+    }
+
+    @Override
+    public Response synchronousRequest(final URL url, final String method, @NonNull final RequestBody body) throws IOException {
+        final Map<String, String> headers = new HashMap<>(body.headers);
+        if (body.sig != null) {
+            headers.put("Authorization", "TeakV2-HMAC-SHA256 Signature=" + body.sig);
+            headers.put("Content-Type", "application/json");
+        }
+
+        // The signature is always computed over the uncompressed body
+        if (body.gzip && body.bytes != null && body.length >= MINIMUM_GZIP_BODY_LENGTH) {
+            final byte[] compressed = DefaultHttpRequest.gzip(body.bytes, 0, body.length);
+            headers.put("Content-Encoding", "gzip");
+            return this.synchronousRequest(url, method, compressed, compressed.length, headers);
+        }
+        return this.synchronousRequest(url, method, body.bytes, body.length, headers);
+    }
+
+    /**
+     * Send only the first requestBodyLength bytes of requestBody, so that callers can hand over
+     * a reusable buffer without copying it.
+     */
+    @SuppressWarnings("TryWithIdenticalCatches")
+    protected Response synchronousRequest(final URL url, final String method, @Nullable final byte[] requestBody, final int requestBodyLength, @NonNull final Map<String, String> headers) throws IOException {
         Response ret = Response.ERROR_RESPONSE;
 
         HttpURLConnection connection = null;
         BufferedReader rd = null;
 
         try {
-            if ("https".equalsIgnoreCase(url.getProtocol())) {
-                connection = (HttpsURLConnection) url.openConnection();
-            } else if ("http".equalsIgnoreCase(url.getProtocol())) {
-                connection = (HttpURLConnection) url.openConnection();
-            }
+            connection = this.openConnection(url);
 
             connection.setRequestMethod(method);
             connection.setRequestProperty("Accept-Charset", "UTF-8");
             connection.setUseCaches(false);
-            connection.setDoOutput(true);
-            connection.setRequestProperty("Authorization", "TeakV2-HMAC-SHA256 Signature=" + sig);
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setRequestProperty("Content-Length",
-                "" + requestBody.getBytes().length);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
 
             // Send request
-            DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-            wr.writeBytes(requestBody);
-            wr.flush();
-            wr.close();
+            if (requestBody != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(requestBodyLength);
+                OutputStream wr = connection.getOutputStream();
+                wr.write(requestBody, 0, requestBodyLength);
+                wr.flush();
+                wr.close();
+            }
 
             // Get Response
             InputStream is;
@@ -55,15 +104,12 @@ public class DefaultHttpRequest implements IHttpRequest {
             } else {
                 is = connection.getErrorStream();
             }
-            rd = new BufferedReader(new InputStreamReader(is));
-            String line;
-            StringBuilder response = new StringBuilder();
-            while ((line = rd.readLine()) != null) {
-                response.append(line);
-                response.append('\r');
+            String responseBody = "";
+            if (is != null) {
+                rd = new BufferedReader(new InputStreamReader(is));
+                responseBody = DefaultHttpRequest.readResponseBody(rd);
             }
-            rd.close();
-            ret = new Response(connection.getResponseCode(), response.toString(), connection.getHeaderFields());
+            ret = new Response(connection.getResponseCode(), responseBody, connection.getHeaderFields());
         } catch (UnknownHostException uh_e) {
             // Ignored, Sentry issue 'TEAK-SDK-F', 'TEAK-SDK-M', 'TEAK-SDK-X'
         } catch (SocketTimeoutException st_e) {
@@ -89,10 +135,177 @@ public class DefaultHttpRequest implements IHttpRequest {
                 }
             }
             if (connection != null) {
-                connection.disconnect();
+                this.releaseConnection(connection, ret != Response.ERROR_RESPONSE);
             }
         }
 
         return ret;
     }
+
+    static String readResponseBody(@NonNull BufferedReader rd) throws IOException {
+        String line;
+        StringBuilder response = new StringBuilder();
+        while ((line = rd.readLine()) != null) {
+            response.append(line);
+            response.append('\r');
+        }
+        rd.close();
+        return response.toString();
+    }
+
+    public static byte[] gzip(@NonNull byte[] bytes) throws IOException {
+        return DefaultHttpRequest.gzip(bytes, 0, bytes.length);
+    }
+
+    public static byte[] gzip(@NonNull byte[] bytes, int offset, int length) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4);
+        final GZIPOutputStream wr = new GZIPOutputStream(compressed);
+        wr.write(bytes, offset, length);
+        wr.close();
+        return compressed.toByteArray();
+    }
+
+    ///// ITransport
+
+    private static class TransportCall implements Call {
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        volatile HttpURLConnection connection;
+
+        @Override
+        public void cancel() {
+            if (!this.cancelled.compareAndSet(false, true)) return;
+
+            // Unblocks any read or write in progress, which then fails
+            final HttpURLConnection connection = this.connection;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelled.get();
+        }
+    }
+
+    @NonNull
+    @Override
+    public Call enqueue(@NonNull final URL url, @NonNull final String method, @NonNull final Map<String, String> headers, @Nullable final Body body, @NonNull final Callback callback) {
+        final TransportCall call = new TransportCall();
+        DefaultHttpRequest.getTransportExecutor().execute(() -> this.execute(call, url, method, headers, body, false, callback));
+        return call;
+    }
+
+    @NonNull
+    @Override
+    public Call enqueueCacheable(@NonNull final URL url, @NonNull final Map<String, String> headers, @NonNull final Callback callback) {
+        final TransportCall call = new TransportCall();
+        DefaultHttpRequest.getTransportExecutor().execute(() -> this.execute(call, url, "GET", headers, null, true, callback));
+        return call;
+    }
+
+    private void execute(@NonNull TransportCall call, @NonNull URL url, @NonNull String method, @NonNull Map<String, String> headers, @Nullable Body body, boolean useCaches, @NonNull Callback callback) {
+        HttpURLConnection connection = null;
+        boolean responseWasRead = false;
+        Map<String, List<String>> responseHeaders = null;
+        int statusCode = 0;
+        InputStream is = null;
+
+        try {
+            if (call.isCancelled()) {
+                throw new InterruptedIOException("Cancelled");
+            }
+
+            connection = this.openConnection(url);
+            call.connection = connection;
+
+            connection.setRequestMethod(method);
+            connection.setUseCaches(useCaches);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            // Send request
+            if (body != null) {
+                connection.setDoOutput(true);
+                final long contentLength = body.getContentLength();
+                if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+                    connection.setFixedLengthStreamingMode((int) contentLength);
+                } else {
+                    connection.setChunkedStreamingMode(0);
+                }
+                final OutputStream wr = connection.getOutputStream();
+                body.writeTo(wr);
+                wr.flush();
+                wr.close();
+            }
+
+            // Get Response
+            statusCode = connection.getResponseCode();
+            is = statusCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+            responseHeaders = connection.getHeaderFields();
+        } catch (IOException e) {
+            if (connection != null) {
+                this.releaseConnection(connection, false);
+            }
+            callback.onFailure(call.isCancelled() ? new InterruptedIOException("Cancelled") : e);
+            return;
+        }
+
+        try {
+            final InputStream responseBody = is == null ? new ByteArrayInputStream(new byte[0]) : is;
+            try {
+                callback.onResponse(statusCode, responseHeaders == null ? new HashMap<>() : responseHeaders, responseBody);
+            } catch (Exception e) {
+                Teak.log.exception(e);
+            }
+            responseWasRead = !call.isCancelled() && DefaultHttpRequest.drain(responseBody);
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (Exception ignored) {
+                }
+            }
+            this.releaseConnection(connection, responseWasRead);
+        }
+    }
+
+    // Read what the callback left unread, so the connection can go back to the pool
+    private static boolean drain(@NonNull InputStream is) {
+        try {
+            final byte[] buffer = new byte[4096];
+            int drained = 0;
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAXIMUM_DRAIN_LENGTH) return false;
+            }
+            return true;
+        } catch (IOException ignored) {
+            return false;
+        }
+    }
+
+    private static synchronized ExecutorService getTransportExecutor() {
+        if (DefaultHttpRequest.transportExecutor == null) {
+            DefaultHttpRequest.transportExecutor = Executors.newDedicatedBoundedThreadPool(MAXIMUM_TRANSPORT_THREADS);
+        }
+        return DefaultHttpRequest.transportExecutor;
+    }
+
+    ///// Connection lifecycle, overridden by PooledHttpRequest
+
+    protected HttpURLConnection openConnection(@NonNull URL url) throws IOException {
+        if ("https".equalsIgnoreCase(url.getProtocol())) {
+            return (HttpsURLConnection) url.openConnection();
+        } else if ("http".equalsIgnoreCase(url.getProtocol())) {
+            return (HttpURLConnection) url.openConnection();
+        }
+        throw new IOException("Unsupported protocol: " + url.getProtocol());
+    }
+
+    protected void releaseConnection(@NonNull HttpURLConnection connection, boolean responseWasRead) {
+        connection.disconnect();
+    }
 }
@@ -2,9 +2,15 @@ package io.teak.sdk.io;
 
 import java.io.IOException;
 import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 public interface IHttpRequest {
@@ -20,8 +26,93 @@ public interface IHttpRequest {
         }
 
         public static final Response ERROR_RESPONSE = new Response(599, "{}", null);
+
+        /**
+         * @return The Retry-After header in milliseconds from now, or 0 if there was none.
+         */
+        public long getRetryAfterMillis() {
+            if (this.headers == null) return 0;
+
+            for (Map.Entry<String, List<String>> entry : this.headers.entrySet()) {
+                if (!"Retry-After".equalsIgnoreCase(entry.getKey()) || entry.getValue() == null || entry.getValue().isEmpty()) continue;
+
+                final String value = entry.getValue().get(0).trim();
+                try {
+                    // Delay in seconds
+                    return Math.max(0, Long.parseLong(value) * 1000);
+                } catch (NumberFormatException ignored) {
+                }
+
+                try {
+                    // HTTP-date
+                    final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                    final Date date = format.parse(value);
+                    return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+                } catch (Exception ignored) {
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * A request body, and how to send it. Built by the SDK, implementations only read it.
+     */
+    class RequestBody {
+        // Null to send no body
+        @Nullable
+        public final byte[] bytes;
+
+        // Only this many bytes of the array are sent
+        public final int length;
+
+        @NonNull
+        public final Map<String, String> headers;
+
+        // If non-null, the body is JSON signed with this TeakV2 signature
+        @Nullable
+        public final String sig;
+
+        // Compress the body, if that is worth it. The signature is always of the uncompressed body.
+        public final boolean gzip;
+
+        private RequestBody(@Nullable byte[] bytes, int length, @NonNull Map<String, String> headers, @Nullable String sig, boolean gzip) {
+            this.bytes = bytes;
+            this.length = length;
+            this.headers = headers;
+            this.sig = sig;
+            this.gzip = gzip;
+        }
+
+        /**
+         * A signed JSON body, which may be a reusable buffer only the first length bytes of
+         * which are valid.
+         */
+        public static RequestBody signed(@NonNull byte[] bytes, int length, @NonNull String sig, boolean gzip) {
+            return new RequestBody(bytes, length, new HashMap<>(), sig, gzip);
+        }
+
+        /**
+         * A body sent as it is, with the given headers.
+         */
+        public static RequestBody withHeaders(@Nullable byte[] bytes, @NonNull Map<String, String> headers) {
+            return new RequestBody(bytes, bytes == null ? 0 : bytes.length, headers, null, false);
+        }
     }
 
     @Nullable
     Response synchronousRequest(final URL url, final String method, final String requestBody, final String sig) throws IOException;
+
+    /**
+     * Make a request with a body built by the SDK.
+     *
+     * The default implementation sends the body as a string through the method above, and is
+     * only there so that implementations written before this method existed keep working.
+     */
+    @Nullable
+    default Response synchronousRequest(final URL url, final String method, @NonNull final RequestBody body) throws IOException {
+        final String requestBody = body.bytes == null ? "" : new String(body.bytes, 0, body.length, "UTF-8");
+        return this.synchronousRequest(url, method, requestBody, body.sig);
+    }
 }
@@ -0,0 +1,101 @@
+package io.teak.sdk.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Asynchronous HTTP transport which every SDK network path goes through.
+ *
+ * An app can provide its own from IObjectFactory.getTransport(), so that SDK traffic shares the
+ * app's HTTP client, connection pool and DNS cache. Otherwise PooledHttpRequest is used.
+ */
+public interface ITransport {
+    /**
+     * A request body, written directly to the connection.
+     */
+    interface Body {
+        /**
+         * @return The length of the body in bytes, or -1 if it is not known ahead of time.
+         */
+        long getContentLength();
+
+        void writeTo(@NonNull OutputStream outputStream) throws IOException;
+    }
+
+    class ByteArrayBody implements Body {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        public ByteArrayBody(@NonNull byte[] bytes) {
+            this(bytes, 0, bytes.length);
+        }
+
+        public ByteArrayBody(@NonNull byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long getContentLength() {
+            return this.length;
+        }
+
+        @Override
+        public void writeTo(@NonNull OutputStream outputStream) throws IOException {
+            outputStream.write(this.bytes, this.offset, this.length);
+        }
+    }
+
+    /**
+     * Exactly one of these methods is called for every request, on a thread owned by the
+     * transport.
+     */
+    interface Callback {
+        /**
+         * Called for any response from the server, including error statuses.
+         *
+         * @param body The response body, only valid until this method returns. The transport
+         *             closes it afterwards.
+         */
+        void onResponse(int statusCode, @NonNull Map<String, List<String>> headers, @NonNull InputStream body) throws IOException;
+
+        /**
+         * Called if no response was received, including when the request was cancelled.
+         */
+        void onFailure(@NonNull IOException e);
+    }
+
+    interface Call {
+        /**
+         * Abort the request, if it has not yet completed. The callback's onFailure() is called
+         * unless onResponse() already has been.
+         */
+        void cancel();
+
+        boolean isCancelled();
+    }
+
+    /**
+     * Requests made with enqueue() must not be answered from an HTTP cache.
+     */
+    @NonNull
+    Call enqueue(@NonNull URL url, @NonNull String method, @NonNull Map<String, String> headers, @Nullable Body body, @NonNull Callback callback);
+
+    /**
+     * A GET whose response may be answered from, and stored in, an HTTP cache, like a notification
+     * image. Transports without a cache can leave this as it is.
+     */
+    @NonNull
+    default Call enqueueCacheable(@NonNull URL url, @NonNull Map<String, String> headers, @NonNull Callback callback) {
+        return this.enqueue(url, "GET", headers, null, callback);
+    }
+}
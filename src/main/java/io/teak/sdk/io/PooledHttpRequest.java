@@ -0,0 +1,267 @@
+package io.teak.sdk.io;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import androidx.annotation.NonNull;
+import io.teak.sdk.Teak;
+import io.teak.sdk.core.Executors;
+
+/**
+ * Keep-alive transport shared by every SDK network path.
+ *
+ * HttpURLConnection already pools keep-alive connections per (host, port, SSLSocketFactory) as
+ * long as the response is read to the end and disconnect() is never called, so this mostly stays
+ * out of the way. It routes every HTTPS connection through one SSLSocketFactory, which keeps
+ * connections in a single pool and lets TLS sessions be resumed, and counts sockets and handshakes
+ * per host so the reuse rate can be checked. Hosts which have been idle longer than
+ * IDLE_TIMEOUT_MS have their sockets closed so the radio is not held open by a connection we
+ * are unlikely to use again.
+ */
+public class PooledHttpRequest extends DefaultHttpRequest {
+    public static final long IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final int TLS_SESSION_CACHE_SIZE = 16;
+    private static final int TLS_SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    private static PooledHttpRequest Instance;
+
+    public static synchronized PooledHttpRequest get() {
+        if (Instance == null) {
+            Instance = new PooledHttpRequest();
+        }
+        return Instance;
+    }
+
+    ///// Per-host accounting
+
+    private static class HostStatistics {
+        final List<Socket> sockets = new ArrayList<>();
+        long requests;
+        long socketsOpened;
+        long handshakes;
+        int inFlight;
+        long lastUsedAt;
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> ret = new HashMap<>();
+            ret.put("requests", this.requests);
+            ret.put("connections_opened", this.socketsOpened);
+            ret.put("handshakes", this.handshakes);
+            ret.put("open_connections", this.sockets.size());
+            ret.put("reuse_rate", this.requests > 0 ? 1.0 - Math.min(1.0, (double) this.socketsOpened / this.requests) : 0.0);
+            return ret;
+        }
+    }
+
+    private final Map<String, HostStatistics> hosts = new HashMap<>();
+    private final AtomicLong totalHandshakes = new AtomicLong(0);
+    private final SSLSocketFactory socketFactory;
+    private ScheduledFuture<?> scheduledEviction;
+
+    private PooledHttpRequest() {
+        SSLSocketFactory delegate;
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            sslContext.getClientSessionContext().setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+            sslContext.getClientSessionContext().setSessionTimeout(TLS_SESSION_TIMEOUT_SECONDS);
+            delegate = sslContext.getSocketFactory();
+        } catch (Exception e) {
+            Teak.log.exception(e, false);
+            delegate = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        this.socketFactory = new TrackingSocketFactory(delegate);
+    }
+
+    @Override
+    protected HttpURLConnection openConnection(@NonNull URL url) throws IOException {
+        final HttpURLConnection connection = super.openConnection(url);
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(this.socketFactory);
+        }
+        connection.setRequestProperty("Connection", "keep-alive");
+
+        synchronized (this.hosts) {
+            final HostStatistics host = this.statisticsFor(url.getHost());
+            host.requests++;
+            host.inFlight++;
+        }
+        return connection;
+    }
+
+    @Override
+    protected void releaseConnection(@NonNull HttpURLConnection connection, boolean responseWasRead) {
+        // A connection is only returned to the pool once its response has been read to the end.
+        // If something went wrong part way through, throw the connection away.
+        if (!responseWasRead) {
+            connection.disconnect();
+        }
+
+        synchronized (this.hosts) {
+            final HostStatistics host = this.statisticsFor(connection.getURL().getHost());
+            host.inFlight--;
+            host.lastUsedAt = System.currentTimeMillis();
+        }
+        this.scheduleEviction();
+    }
+
+    ///// Idle eviction
+
+    private void scheduleEviction() {
+        synchronized (this.hosts) {
+            if (this.scheduledEviction != null && !this.scheduledEviction.isDone()) return;
+            this.scheduledEviction = Executors.schedule(this::evictIdleConnections, IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void evictIdleConnections() {
+        final long now = System.currentTimeMillis();
+        final List<Socket> toClose = new ArrayList<>();
+        boolean stillActive = false;
+
+        synchronized (this.hosts) {
+            for (HostStatistics host : this.hosts.values()) {
+                final Iterator<Socket> itr = host.sockets.iterator();
+                while (itr.hasNext()) {
+                    if (itr.next().isClosed()) itr.remove();
+                }
+
+                if (host.inFlight == 0 && now - host.lastUsedAt >= IDLE_TIMEOUT_MS) {
+                    toClose.addAll(host.sockets);
+                    host.sockets.clear();
+                } else if (!host.sockets.isEmpty()) {
+                    stillActive = true;
+                }
+            }
+            this.scheduledEviction = null;
+        }
+
+        // Closed sockets are detected as stale and discarded by the connection pool
+        for (Socket socket : toClose) {
+            try {
+                socket.close();
+            } catch (Exception ignored) {
+            }
+        }
+
+        if (stillActive) {
+            this.scheduleEviction();
+        }
+    }
+
+    ///// Statistics
+
+    public long getHandshakeCount() {
+        return this.totalHandshakes.get();
+    }
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> ret = new HashMap<>();
+        synchronized (this.hosts) {
+            for (Map.Entry<String, HostStatistics> entry : this.hosts.entrySet()) {
+                ret.put(entry.getKey(), entry.getValue().toMap());
+            }
+        }
+        return ret;
+    }
+
+    private HostStatistics statisticsFor(String hostname) {
+        if (hostname == null) hostname = "unknown";
+        HostStatistics host = this.hosts.get(hostname);
+        if (host == null) {
+            host = new HostStatistics();
+            this.hosts.put(hostname, host);
+        }
+        return host;
+    }
+
+    private void onSocketCreated(@NonNull Socket socket, String hostname) {
+        synchronized (this.hosts) {
+            final HostStatistics host = this.statisticsFor(hostname);
+            host.socketsOpened++;
+            host.sockets.add(socket);
+        }
+
+        if (socket instanceof SSLSocket) {
+            // Resumed and full handshakes are counted together. Telling them apart by session id
+            // does not work with TLS 1.3 or session tickets, which do not keep the id stable.
+            final HandshakeCompletedListener listener = event -> {
+                this.totalHandshakes.incrementAndGet();
+                synchronized (this.hosts) {
+                    this.statisticsFor(hostname).handshakes++;
+                }
+            };
+            ((SSLSocket) socket).addHandshakeCompletedListener(listener);
+        }
+    }
+
+    private class TrackingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+
+        TrackingSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        private Socket track(Socket socket, String hostname) {
+            PooledHttpRequest.this.onSocketCreated(socket, hostname);
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return this.delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return this.delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            return this.track(this.delegate.createSocket(s, host, port, autoClose), host);
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return this.track(this.delegate.createSocket(), null);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return this.track(this.delegate.createSocket(host, port), host);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return this.track(this.delegate.createSocket(host, port, localHost, localPort), host);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return this.track(this.delegate.createSocket(host, port), host.getHostAddress());
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return this.track(this.delegate.createSocket(address, port, localAddress, localPort), address.getHostAddress());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package io.teak.sdk.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.crypto.Mac;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.teak.sdk.json.JSONArray;
+import io.teak.sdk.json.JSONObject;
+import io.teak.sdk.json.JSONString;
+
+/**
+ * Per-thread, reusable buffer that request bodies are serialized into.
+ *
+ * The JSON is encoded exactly once, as UTF-8, straight into the backing array, and a Mac can be
+ * updated from that same array. The transport then sends from the backing array, so the body
+ * never exists as a String, and is never copied.
+ *
+ * The buffer belongs to the calling thread, and is only valid until the next call to obtain()
+ * on that thread.
+ */
+public class RequestBodyBuffer extends ByteArrayOutputStream {
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+
+    // Don't hang on to the buffer for an outlier; it will be regrown if it is needed again
+    private static final int MAXIMUM_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final ThreadLocal<RequestBodyBuffer> buffers = new ThreadLocal<RequestBodyBuffer>() {
+        @Override
+        protected RequestBodyBuffer initialValue() {
+            return new RequestBodyBuffer();
+        }
+    };
+
+    /**
+     * Encodes UTF-8 directly into the buffer.
+     *
+     * OutputStreamWriter allocates on nearly every write, and JSONObject.write() makes a great
+     * many very small writes.
+     */
+    private class Utf8Writer extends Writer {
+        private char highSurrogate;
+
+        @Override
+        public void write(int c) {
+            final char ch = (char) c;
+            if (this.highSurrogate != 0) {
+                final char high = this.highSurrogate;
+                this.highSurrogate = 0;
+                if (Character.isLowSurrogate(ch)) {
+                    this.writeCodePoint(Character.toCodePoint(high, ch));
+                    return;
+                }
+                this.writeCodePoint('?');
+            }
+
+            if (Character.isHighSurrogate(ch)) {
+                this.highSurrogate = ch;
+            } else if (Character.isLowSurrogate(ch)) {
+                this.writeCodePoint('?');
+            } else {
+                this.writeCodePoint(ch);
+            }
+        }
+
+        @Override
+        public void write(@NonNull char[] cbuf, int off, int len) {
+            final RequestBodyBuffer out = RequestBodyBuffer.this;
+            out.ensureCapacity(len);
+            for (int i = off; i < off + len; i++) {
+                final char ch = cbuf[i];
+                if (ch < 0x80 && this.highSurrogate == 0) {
+                    out.buf[out.count++] = (byte) ch;
+                } else {
+                    this.write(ch);
+                }
+            }
+        }
+
+        @Override
+        public void write(@NonNull String str, int off, int len) {
+            final RequestBodyBuffer out = RequestBodyBuffer.this;
+            out.ensureCapacity(len);
+            for (int i = off; i < off + len; i++) {
+                final char ch = str.charAt(i);
+                if (ch < 0x80 && this.highSurrogate == 0) {
+                    out.buf[out.count++] = (byte) ch;
+                } else {
+                    this.write(ch);
+                }
+            }
+        }
+
+        private void writeCodePoint(int cp) {
+            final RequestBodyBuffer out = RequestBodyBuffer.this;
+            out.ensureCapacity(4);
+            final byte[] buf = out.buf;
+            if (cp < 0x80) {
+                buf[out.count++] = (byte) cp;
+            } else if (cp < 0x800) {
+                buf[out.count++] = (byte) (0xC0 | (cp >> 6));
+                buf[out.count++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (cp < 0x10000) {
+                buf[out.count++] = (byte) (0xE0 | (cp >> 12));
+                buf[out.count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[out.count++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                buf[out.count++] = (byte) (0xF0 | (cp >> 18));
+                buf[out.count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[out.count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[out.count++] = (byte) (0x80 | (cp & 0x3F));
+            }
+        }
+
+        @Override
+        public void flush() {
+            // An unpaired high surrogate at the very end
+            if (this.highSurrogate != 0) {
+                this.highSurrogate = 0;
+                this.writeCodePoint('?');
+            }
+        }
+
+        @Override
+        public void close() {
+            this.flush();
+        }
+    }
+
+    private final Utf8Writer writer = new Utf8Writer();
+
+    private RequestBodyBuffer() {
+        super(INITIAL_CAPACITY);
+    }
+
+    // ByteArrayOutputStream.write() is synchronized; the writer fills the array directly instead,
+    // since the buffer never leaves its thread
+    private void ensureCapacity(int additional) {
+        final int required = this.count + additional;
+        if (required > this.buf.length) {
+            this.buf = Arrays.copyOf(this.buf, Math.max(required, this.buf.length * 2));
+        }
+    }
+
+    /**
+     * @return The empty buffer for the calling thread.
+     */
+    public static RequestBodyBuffer obtain() {
+        final RequestBodyBuffer buffer = buffers.get();
+        if (buffer.buf.length > MAXIMUM_RETAINED_CAPACITY) {
+            final RequestBodyBuffer replacement = new RequestBodyBuffer();
+            buffers.set(replacement);
+            return replacement;
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Serialize JSON into the buffer.
+     *
+     * @param json The JSON to write.
+     * @param mac  If non-null, updated with exactly the bytes that were written. The caller still
+     *             owns it, and is responsible for calling doFinal().
+     */
+    public void writeJson(@NonNull JSONObject json, @Nullable Mac mac) {
+        final int start = this.count;
+        json.write(this.writer);
+        this.writer.flush();
+        if (mac != null) {
+            mac.update(this.buf, start, this.count - start);
+        }
+    }
+
+    /**
+     * Estimate the bytes writeJson() would write for a value, without serializing it.
+     *
+     * Walks maps, collections and arrays, counting strings as UTF-8. Escapes are not counted, so
+     * the estimate can come in slightly low for strings with quotes or control characters.
+     */
+    public static long estimateJson(@Nullable Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return 4;
+        } else if (value instanceof String) {
+            return utf8Length((String) value) + 2;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return value.toString().length();
+        } else if (value instanceof JSONString) {
+            final String json = ((JSONString) value).toJSONString();
+            return json == null ? 4 : utf8Length(json);
+        } else if (value instanceof JSONObject) {
+            return estimateJson(((JSONObject) value).toMap());
+        } else if (value instanceof JSONArray) {
+            return estimateJson(((JSONArray) value).toList());
+        } else if (value instanceof Map) {
+            long length = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                // "key": value,
+                length += utf8Length(String.valueOf(entry.getKey())) + 4 + estimateJson(entry.getValue());
+            }
+            return ((Map<?, ?>) value).isEmpty() ? length : length - 1;
+        } else if (value instanceof Collection) {
+            long length = 2;
+            for (Object element : (Collection<?>) value) {
+                length += estimateJson(element) + 1;
+            }
+            return ((Collection<?>) value).isEmpty() ? length : length - 1;
+        } else if (value.getClass().isArray()) {
+            final int count = Array.getLength(value);
+            long length = 2;
+            for (int i = 0; i < count; i++) {
+                length += estimateJson(Array.get(value, i)) + 1;
+            }
+            return count == 0 ? length : length - 1;
+        }
+        return utf8Length(value.toString()) + 2;
+    }
+
+    // Bytes the string takes as UTF-8, the same way Utf8Writer encodes it
+    static int utf8Length(@NonNull String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            final char ch = string.charAt(i);
+            if (ch < 0x80) {
+                length += 1;
+            } else if (ch < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(ch)) {
+                // Unpaired, written as '?'
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return The backing array, only the first getLength() bytes of which are valid.
+     */
+    public byte[] getBytes() {
+        return this.buf;
+    }
+
+    public int getLength() {
+        return this.count;
+    }
+}
@@ -0,0 +1,424 @@
+package io.teak.sdk.io;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.teak.sdk.Helpers;
+import io.teak.sdk.Teak;
+import io.teak.sdk.core.Executors;
+import io.teak.sdk.json.JSONObject;
+
+/**
+ * Append-only journal of requests which have been submitted but not yet completed.
+ *
+ * Each submit appends an entry, and each completed request appends an acknowledgement for
+ * the entries it carried. On the next launch, anything without an acknowledgement is handed
+ * back, in submission order, so it can be sent again.
+ *
+ * append() and acknowledge() never touch the file on the calling thread. They queue the record,
+ * and a serial background queue writes everything queued so far with a single write and flush.
+ * Reading the previous run's journal happens on that queue too, as soon as the journal is
+ * opened. Records are flushed to the OS, which is enough to survive the process being killed
+ * once they are written; we do not fsync, so a power loss may still lose the tail of the journal.
+ *
+ * Sizes, and so the byte budget, are counted in UTF-8 bytes, as written to the file.
+ */
+public class RequestJournal {
+    private static final String JOURNAL_FILE = "io.teak.sdk.RequestJournal";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 512 * 1024;
+    public static final long DEFAULT_TIME_TO_LIVE_MS = TimeUnit.DAYS.toMillis(3);
+
+    public static class Entry {
+        public final long id;
+        public final long createdAt;
+        public final String hostname;
+        public final String method;
+        public final String endpoint;
+        public final Map<String, Object> payload;
+
+        int sizeInBytes;
+
+        Entry(long id, long createdAt, @NonNull String hostname, @NonNull String method, @NonNull String endpoint, @NonNull Map<String, Object> payload, int sizeInBytes) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.hostname = hostname;
+            this.method = method;
+            this.endpoint = endpoint;
+            this.payload = payload;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        Entry withId(long id) {
+            return new Entry(id, this.createdAt, this.hostname, this.method, this.endpoint, this.payload, this.sizeInBytes);
+        }
+
+        JSONObject toJson() {
+            final JSONObject json = new JSONObject();
+            json.put("id", this.id);
+            json.put("created_at", this.createdAt);
+            json.put("hostname", this.hostname);
+            json.put("method", this.method);
+            json.put("endpoint", this.endpoint);
+            json.put("payload", this.payload);
+            return json;
+        }
+
+        static Entry fromJson(@NonNull JSONObject json, int sizeInBytes) {
+            return new Entry(json.getLong("id"),
+                json.getLong("created_at"),
+                json.getString("hostname"),
+                json.getString("method"),
+                json.getString("endpoint"),
+                json.getJSONObject("payload").toMap(),
+                sizeInBytes);
+        }
+    }
+
+    private final File file;
+    private final long maximumBytes;
+    private final long timeToLiveMs;
+    private final ExecutorService writeQueue = Executors.newSingleThreadExecutor();
+
+    // Ids are handed out on the calling thread. Entries from the previous run are renumbered
+    // from the same counter when they are read, so they can never collide with new ones.
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    // Entries and acknowledgement lists waiting to be written, in the order they were made
+    private List<Object> queued = new ArrayList<>();
+    private boolean isWriteScheduled;
+
+    // Only touched on the write queue
+    private final LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+    private List<Entry> entriesFromPreviousRun = null;
+    private OutputStream output;
+    private long pendingBytes = 0;
+    private long fileBytes = 0;
+    private boolean loaded = false;
+
+    private volatile int pendingCount;
+
+    public RequestJournal(@NonNull Context context) {
+        this(new File(context.getFilesDir(), JOURNAL_FILE), DEFAULT_MAXIMUM_BYTES, DEFAULT_TIME_TO_LIVE_MS);
+    }
+
+    public RequestJournal(@NonNull File file, long maximumBytes, long timeToLiveMs) {
+        this.file = file;
+        this.maximumBytes = maximumBytes;
+        this.timeToLiveMs = timeToLiveMs;
+
+        // Read the previous run's journal now, rather than on whichever thread appends first
+        this.writeQueue.execute(this::loadIfNeeded);
+    }
+
+    /**
+     * Record a request that is about to be queued. The entry is written in the background.
+     *
+     * @return The id of the entry, used to acknowledge it later.
+     */
+    public long append(@NonNull String hostname, @NonNull String method, @NonNull String endpoint, @NonNull Map<String, Object> payload) {
+        final Entry entry = new Entry(this.nextId.getAndIncrement(), System.currentTimeMillis(), hostname, method, endpoint, payload, 0);
+        this.enqueue(entry);
+        return entry.id;
+    }
+
+    /**
+     * Add several requests to the journal, in one write.
+     *
+     * @return The id of each entry, in order.
+     */
+    @NonNull
+    public List<Long> appendAll(@NonNull String hostname, @NonNull String method, @NonNull String endpoint, @NonNull List<Map<String, Object>> payloads) {
+        final long now = System.currentTimeMillis();
+        final List<Object> entries = new ArrayList<>(payloads.size());
+        final List<Long> ids = new ArrayList<>(payloads.size());
+        for (Map<String, Object> payload : payloads) {
+            final Entry entry = new Entry(this.nextId.getAndIncrement(), now, hostname, method, endpoint, payload, 0);
+            entries.add(entry);
+            ids.add(entry.id);
+        }
+        this.enqueueAll(entries);
+        return ids;
+    }
+
+    /**
+     * Mark entries as completed, they will not be replayed.
+     */
+    public void acknowledge(@NonNull List<Long> ids) {
+        if (ids.isEmpty()) return;
+        this.enqueue(new ArrayList<>(ids));
+    }
+
+    /**
+     * Entries left over from a previous run, in submission order. Only returns them once.
+     *
+     * Blocks until the journal has been read, so must not be called on the main thread.
+     */
+    public @NonNull List<Entry> takeEntriesFromPreviousRun() {
+        try {
+            return this.writeQueue.submit(() -> {
+                this.loadIfNeeded();
+                final List<Entry> ret = this.entriesFromPreviousRun == null ? new ArrayList<>() : this.entriesFromPreviousRun;
+                this.entriesFromPreviousRun = null;
+                return ret;
+            }).get();
+        } catch (Exception e) {
+            Teak.log.exception(e, false);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * @return The number of entries not yet acknowledged, as of the last write.
+     */
+    public int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * Wait until everything appended or acknowledged so far has been written.
+     *
+     * @return false if that did not happen within the timeout.
+     */
+    public boolean flush(long timeout, @NonNull TimeUnit unit) {
+        try {
+            final Future<?> written = this.writeQueue.submit(this::writeQueued);
+            written.get(timeout, unit);
+            return true;
+        } catch (Exception ignored) {
+            return false;
+        }
+    }
+
+    ///// Write queue
+
+    private void enqueue(@NonNull Object record) {
+        this.enqueueAll(Collections.singletonList(record));
+    }
+
+    private void enqueueAll(@NonNull List<Object> records) {
+        synchronized (this) {
+            this.queued.addAll(records);
+            if (this.isWriteScheduled) return;
+            this.isWriteScheduled = true;
+        }
+        this.writeQueue.execute(this::writeQueued);
+    }
+
+    // Runs on the write queue
+    private void writeQueued() {
+        final List<Object> records;
+        synchronized (this) {
+            records = this.queued;
+            this.queued = new ArrayList<>();
+            this.isWriteScheduled = false;
+        }
+        if (records.isEmpty()) return;
+
+        this.loadIfNeeded();
+
+        try {
+            final RequestBodyBuffer buffer = RequestBodyBuffer.obtain();
+            for (Object record : records) {
+                if (record instanceof Entry) {
+                    final Entry entry = (Entry) record;
+                    final int start = buffer.getLength();
+                    buffer.writeJson(entry.toJson(), null);
+                    buffer.write('\n');
+                    entry.sizeInBytes = buffer.getLength() - start;
+
+                    this.pending.put(entry.id, entry);
+                    this.pendingBytes += entry.sizeInBytes;
+                } else {
+                    @SuppressWarnings("unchecked")
+                    final List<Long> ids = (List<Long>) record;
+                    for (Long id : ids) {
+                        final Entry removed = this.pending.remove(id);
+                        if (removed != null) {
+                            this.pendingBytes -= removed.sizeInBytes;
+                            final byte[] ack = ("{\"ack\":" + id + "}\n").getBytes(UTF8);
+                            buffer.write(ack, 0, ack.length);
+                        }
+                    }
+                }
+            }
+
+            this.write(buffer.getBytes(), buffer.getLength());
+            this.evictIfNeeded();
+        } catch (Exception e) {
+            Teak.log.exception(e, false);
+        }
+        this.pendingCount = this.pending.size();
+    }
+
+    ///// Persistence
+
+    // Runs on the write queue
+    private void loadIfNeeded() {
+        if (this.loaded) return;
+        this.loaded = true;
+
+        final long now = System.currentTimeMillis();
+        int expired = 0;
+        int invalid = 0;
+
+        // Keyed by the ids in the file, which are only meaningful within it
+        final LinkedHashMap<Long, Entry> previousRun = new LinkedHashMap<>();
+        if (this.file.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), UTF8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        final JSONObject json = new JSONObject(line);
+                        if (json.has("ack")) {
+                            previousRun.remove(json.getLong("ack"));
+                        } else {
+                            final Entry entry = Entry.fromJson(json, RequestBodyBuffer.utf8Length(line) + 1);
+                            if (now - entry.createdAt > this.timeToLiveMs) {
+                                expired++;
+                            } else {
+                                previousRun.put(entry.id, entry);
+                            }
+                        }
+                    } catch (Exception ignored) {
+                        // A partial trailing record from a process that died mid-write
+                        invalid++;
+                    }
+                }
+            } catch (Exception e) {
+                Teak.log.exception(e, false);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+        }
+
+        // Nothing from this run has been written yet, this always runs first
+        this.entriesFromPreviousRun = new ArrayList<>();
+        for (Entry entry : previousRun.values()) {
+            final Entry renumbered = entry.withId(this.nextId.getAndIncrement());
+            this.pending.put(renumbered.id, renumbered);
+            this.pendingBytes += renumbered.sizeInBytes;
+            this.entriesFromPreviousRun.add(renumbered);
+        }
+        this.pendingCount = this.pending.size();
+
+        if (!this.entriesFromPreviousRun.isEmpty() || expired > 0 || invalid > 0) {
+            Teak.log.i("request.journal.loaded", Helpers.mm.h("pending", this.entriesFromPreviousRun.size(), "expired", expired, "invalid", invalid));
+        }
+
+        // Start each run with a compacted file
+        try {
+            this.compact();
+        } catch (Exception e) {
+            Teak.log.exception(e, false);
+        }
+    }
+
+    private void write(@NonNull byte[] bytes, int length) throws IOException {
+        if (length == 0) return;
+
+        if (this.output == null) {
+            this.output = new FileOutputStream(this.file, true);
+        }
+        this.output.write(bytes, 0, length);
+        this.output.flush();
+        this.fileBytes += length;
+    }
+
+    private void evictIfNeeded() throws IOException {
+        if (this.fileBytes <= this.maximumBytes) return;
+
+        // Drop the oldest entries until what is pending fits in three quarters of the budget,
+        // so that compaction is not triggered again on the very next write.
+        int dropped = 0;
+        final long now = System.currentTimeMillis();
+        final Iterator<Entry> itr = this.pending.values().iterator();
+        while (itr.hasNext()) {
+            final Entry entry = itr.next();
+            if (this.pendingBytes <= (this.maximumBytes * 3) / 4 && now - entry.createdAt <= this.timeToLiveMs) {
+                break;
+            }
+            itr.remove();
+            this.pendingBytes -= entry.sizeInBytes;
+            dropped++;
+        }
+
+        if (dropped > 0) {
+            Teak.log.w("request.journal.evicted", "Dropped oldest pending requests.", Helpers.mm.h("dropped", dropped, "pending", this.pending.size()));
+        }
+
+        this.compact();
+    }
+
+    private void compact() throws IOException {
+        if (this.output != null) {
+            try {
+                this.output.close();
+            } catch (Exception ignored) {
+            }
+            this.output = null;
+        }
+
+        final File temp = new File(this.file.getPath() + ".tmp");
+        final OutputStream tempOutput = new FileOutputStream(temp, false);
+        long bytes = 0;
+        try {
+            final RequestBodyBuffer buffer = RequestBodyBuffer.obtain();
+            for (Entry entry : this.pending.values()) {
+                final int start = buffer.getLength();
+                buffer.writeJson(entry.toJson(), null);
+                buffer.write('\n');
+                entry.sizeInBytes = buffer.getLength() - start;
+            }
+            tempOutput.write(buffer.getBytes(), 0, buffer.getLength());
+            bytes = buffer.getLength();
+        } finally {
+            tempOutput.close();
+        }
+
+        if (!temp.renameTo(this.file)) {
+            throw new IOException("Unable to replace " + this.file.getPath());
+        }
+        this.fileBytes = bytes;
+        this.pendingBytes = bytes;
+    }
+
+    @Nullable
+    public static RequestJournal open(@Nullable Context context) {
+        if (context == null) return null;
+        try {
+            return new RequestJournal(context);
+        } catch (Exception e) {
+            Teak.log.exception(e, false);
+            return null;
+        }
+    }
+}
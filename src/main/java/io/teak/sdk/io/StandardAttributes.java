@@ -0,0 +1,157 @@
+package io.teak.sdk.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import io.teak.sdk.json.JSONException;
+import io.teak.sdk.json.JSONObject;
+import io.teak.sdk.json.JSONString;
+
+/**
+ * Immutable snapshot of the attributes that are sent with every request.
+ *
+ * A new snapshot, with a new version, is made whenever the attributes change; an existing one is
+ * never modified, so it may be shared between threads without locking. The attributes are
+ * serialized once, when the snapshot is made, and that JSON is spliced into each request body.
+ */
+public class StandardAttributes implements JSONString {
+    public static final StandardAttributes Empty = new StandardAttributes(0, new HashMap<>());
+
+    public final long version;
+    public final Map<String, Object> values;
+    private final String json;
+    private final String fragment;
+
+    private StandardAttributes(long version, @NonNull Map<String, Object> values) {
+        this.version = version;
+        this.values = Collections.unmodifiableMap(values);
+        this.json = new JSONObject(values).toString();
+
+        // Members only, without the enclosing braces
+        this.fragment = this.json.substring(1, this.json.length() - 1);
+    }
+
+    /**
+     * @return A new snapshot, with the next version, containing these attributes updated with
+     *         the given values.
+     */
+    @NonNull
+    public StandardAttributes with(@NonNull Map<String, Object> values) {
+        final Map<String, Object> merged = new HashMap<>(this.values);
+        merged.putAll(values);
+        return new StandardAttributes(this.version + 1, merged);
+    }
+
+    /**
+     * @return The JSON object for the payload with these attributes added. Where the payload
+     *         and the attributes share a key, the attribute is used.
+     */
+    @NonNull
+    public JSONObject splice(@NonNull Map<String, Object> payload) {
+        return new Spliced(this, payload);
+    }
+
+    @Override
+    public String toJSONString() {
+        return this.json;
+    }
+
+    private static class Spliced extends JSONObject {
+        private final StandardAttributes attributes;
+
+        Spliced(@NonNull StandardAttributes attributes, @NonNull Map<String, Object> payload) {
+            super(payload);
+            this.attributes = attributes;
+            for (String key : attributes.values.keySet()) {
+                this.remove(key);
+            }
+        }
+
+        @Override
+        public Writer write(Writer writer, int indentFactor, int indent) throws JSONException {
+            // Only compact output is spliced, anything else is for humans and can afford to merge
+            if (indentFactor > 0) {
+                final JSONObject merged = new JSONObject(this.toMap());
+                for (Map.Entry<String, Object> entry : this.attributes.values.entrySet()) {
+                    merged.put(entry.getKey(), entry.getValue());
+                }
+                return merged.write(writer, indentFactor, indent);
+            }
+
+            if (this.length() == 0) {
+                try {
+                    writer.write(this.attributes.json);
+                } catch (IOException e) {
+                    throw new JSONException(e);
+                }
+                return writer;
+            } else if (this.attributes.fragment.isEmpty()) {
+                return super.write(writer, indentFactor, indent);
+            }
+
+            try {
+                writer.write('{');
+                writer.write(this.attributes.fragment);
+                writer.write(',');
+            } catch (IOException e) {
+                throw new JSONException(e);
+            }
+
+            // The payload's members follow the attributes, in place of its opening brace
+            super.write(new OpeningBraceSkippingWriter(writer), indentFactor, indent);
+            return writer;
+        }
+    }
+
+    private static class OpeningBraceSkippingWriter extends Writer {
+        private final Writer writer;
+        private boolean skipped;
+
+        OpeningBraceSkippingWriter(@NonNull Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (this.skipped) {
+                this.writer.write(c);
+            } else {
+                this.skipped = true;
+            }
+        }
+
+        @Override
+        public void write(@NonNull char[] cbuf, int off, int len) throws IOException {
+            if (!this.skipped && len > 0) {
+                this.skipped = true;
+                off++;
+                len--;
+            }
+            this.writer.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(@NonNull String str, int off, int len) throws IOException {
+            if (!this.skipped && len > 0) {
+                this.skipped = true;
+                off++;
+                len--;
+            }
+            this.writer.write(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.writer.flush();
+        }
+
+        @Override
+        public void close() {
+            // The underlying writer belongs to the caller
+        }
+    }
+}
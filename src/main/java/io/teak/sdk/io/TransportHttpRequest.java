@@ -0,0 +1,65 @@
+package io.teak.sdk.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Synchronous requests made through an app provided ITransport.
+ */
+class TransportHttpRequest extends DefaultHttpRequest {
+    // The app's transport is expected to apply its own timeouts, this only stops a lost callback
+    // from blocking a request thread forever
+    private static final long MAXIMUM_WAIT_SECONDS = 120;
+
+    private final ITransport transport;
+
+    TransportHttpRequest(@NonNull ITransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    protected Response synchronousRequest(final URL url, final String method, @Nullable final byte[] requestBody, final int requestBodyLength, @NonNull final Map<String, String> headers) throws IOException {
+        final Map<String, String> requestHeaders = new HashMap<>(headers);
+        requestHeaders.put("Accept-Charset", "UTF-8");
+
+        final Response[] ret = new Response[] {Response.ERROR_RESPONSE};
+        Transports.execute(this.transport, url, method, requestHeaders,
+            requestBody == null ? null : new ITransport.ByteArrayBody(requestBody, 0, requestBodyLength),
+            new ITransport.Callback() {
+                @Override
+                public void onResponse(int statusCode, @NonNull Map<String, List<String>> headers, @NonNull InputStream body) throws IOException {
+                    final String responseBody = DefaultHttpRequest.readResponseBody(new BufferedReader(new InputStreamReader(body)));
+                    ret[0] = new Response(statusCode, responseBody, headers);
+                }
+
+                @Override
+                public void onFailure(@NonNull IOException e) {
+                    // Same as DefaultHttpRequest, any failure to get a response is an ERROR_RESPONSE
+                }
+            },
+            MAXIMUM_WAIT_SECONDS, TimeUnit.SECONDS);
+        return ret[0];
+    }
+
+    @NonNull
+    @Override
+    public Call enqueue(@NonNull URL url, @NonNull String method, @NonNull Map<String, String> headers, @Nullable Body body, @NonNull Callback callback) {
+        return this.transport.enqueue(url, method, headers, body, callback);
+    }
+
+    @NonNull
+    @Override
+    public Call enqueueCacheable(@NonNull URL url, @NonNull Map<String, String> headers, @NonNull Callback callback) {
+        return this.transport.enqueueCacheable(url, headers, callback);
+    }
+}
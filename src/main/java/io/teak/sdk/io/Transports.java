@@ -0,0 +1,105 @@
+package io.teak.sdk.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The transport every SDK network path goes through: the one provided by the app, if any,
+ * otherwise PooledHttpRequest.
+ */
+public class Transports {
+    private static ITransport transport;
+    private static IHttpRequest httpRequest;
+
+    /**
+     * @param transport Transport provided by the app, or null to use PooledHttpRequest.
+     */
+    public static synchronized void setTransport(@Nullable ITransport transport) {
+        Transports.transport = transport;
+        Transports.httpRequest = transport == null ? null : new TransportHttpRequest(transport);
+    }
+
+    @NonNull
+    public static synchronized ITransport get() {
+        return Transports.transport == null ? PooledHttpRequest.get() : Transports.transport;
+    }
+
+    /**
+     * @return Synchronous requests, on top of the current transport.
+     */
+    @NonNull
+    public static synchronized IHttpRequest getHttpRequest() {
+        return Transports.httpRequest == null ? PooledHttpRequest.get() : Transports.httpRequest;
+    }
+
+    /**
+     * Make a request and block until the callback has returned, or the timeout elapses, in which
+     * case the request is cancelled.
+     *
+     * The transport runs on threads of its own, so this may be called from any SDK thread, but
+     * never from the transport's callback.
+     *
+     * @return true if the callback returned within the timeout.
+     */
+    public static boolean execute(@NonNull URL url, @NonNull String method, @NonNull Map<String, String> headers, @Nullable ITransport.Body body, @NonNull ITransport.Callback callback, long timeout, @NonNull TimeUnit unit) {
+        return Transports.execute(Transports.get(), url, method, headers, body, callback, timeout, unit);
+    }
+
+    /**
+     * Same as execute(), for a GET which may be answered from the HTTP cache.
+     */
+    public static boolean executeCacheable(@NonNull URL url, @NonNull Map<String, String> headers, @NonNull ITransport.Callback callback, long timeout, @NonNull TimeUnit unit) {
+        final ITransport transport = Transports.get();
+        return Transports.await(completion -> transport.enqueueCacheable(url, headers, completion), callback, timeout, unit);
+    }
+
+    static boolean execute(@NonNull ITransport transport, @NonNull URL url, @NonNull String method, @NonNull Map<String, String> headers, @Nullable ITransport.Body body, @NonNull ITransport.Callback callback, long timeout, @NonNull TimeUnit unit) {
+        return Transports.await(completion -> transport.enqueue(url, method, headers, body, completion), callback, timeout, unit);
+    }
+
+    private interface Enqueue {
+        @NonNull
+        ITransport.Call enqueue(@NonNull ITransport.Callback callback);
+    }
+
+    private static boolean await(@NonNull Enqueue enqueue, @NonNull final ITransport.Callback callback, long timeout, @NonNull TimeUnit unit) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ITransport.Call call = enqueue.enqueue(new ITransport.Callback() {
+            @Override
+            public void onResponse(int statusCode, @NonNull Map<String, List<String>> headers, @NonNull InputStream body) throws IOException {
+                try {
+                    callback.onResponse(statusCode, headers, body);
+                } finally {
+                    latch.countDown();
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull IOException e) {
+                try {
+                    callback.onFailure(e);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+
+        try {
+            if (latch.await(timeout, unit)) {
+                return true;
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        call.cancel();
+        return false;
+    }
+}
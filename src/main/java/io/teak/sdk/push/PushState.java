@@ -162,7 +162,7 @@ public class PushState {
                     PushState.this.updateStateChain(lifecycleEvent.context);
                 } break;
             }
-        });
+        }, LifecycleEvent.Resumed);
     }
 
     private Future<State> updateStateChain(@NonNull final Context context) {
@@ -156,7 +156,7 @@ public class Raven implements Thread.UncaughtExceptionHandler {
             if (event instanceof UserIdEvent) {
                 user.put("id", ((UserIdEvent) event).userId);
             }
-        });
+        }, UserIdEvent.Type);
 
         final HashMap<String, Object> tagsAttribute = new HashMap<>();
         tagsAttribute.put("app_id", configuration.appConfiguration.appId);
@@ -2,21 +2,20 @@ package io.teak.sdk.raven;
 
 import android.content.Context;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
-import java.util.zip.GZIPOutputStream;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 import androidx.work.Data;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
+import io.teak.sdk.io.DefaultHttpRequest;
+import io.teak.sdk.io.IHttpRequest;
+import io.teak.sdk.io.Transports;
 import io.teak.sdk.json.JSONObject;
 
 public class Sender extends Worker {
@@ -54,43 +53,25 @@ public class Sender extends Worker {
             return Result.failure();
         }
 
-        HttpsURLConnection connection = null;
-        BufferedReader rd = null;
-
         try {
-            connection = (HttpsURLConnection) endpoint.openConnection();
-            connection.setRequestProperty("Accept-Charset", "UTF-8");
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setRequestProperty("Content-Encoding", "gzip");
-            connection.setRequestProperty("User-Agent", SENTRY_CLIENT);
-            connection.setRequestProperty("X-Sentry-Auth",
+            final byte[] body = DefaultHttpRequest.gzip(this.payload.getBytes());
+
+            final Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "application/json");
+            headers.put("Content-Encoding", "gzip");
+            headers.put("User-Agent", SENTRY_CLIENT);
+            headers.put("X-Sentry-Auth",
                 String.format(Locale.US, "Sentry sentry_version=%d,sentry_timestamp=%d,sentry_key=%s,sentry_secret=%s,sentry_client=%s",
                     SENTRY_VERSION, this.timestamp, this.sentryKey, this.sentrySecret, SENTRY_CLIENT));
 
-            GZIPOutputStream wr = new GZIPOutputStream(connection.getOutputStream());
-            wr.write(this.payload.getBytes());
-            wr.flush();
-            wr.close();
-
-            InputStream is;
-            if (connection.getResponseCode() < 400) {
-                is = connection.getInputStream();
-            } else {
-                is = connection.getErrorStream();
-            }
-            rd = new BufferedReader(new InputStreamReader(is));
-            String line;
-            StringBuilder response = new StringBuilder();
-            while ((line = rd.readLine()) != null) {
-                response.append(line);
-                response.append('\r');
+            final IHttpRequest.Response response = Transports.getHttpRequest().synchronousRequest(this.endpoint, "POST", IHttpRequest.RequestBody.withHeaders(body, headers));
+            if (response == null || response == IHttpRequest.Response.ERROR_RESPONSE) {
+                return Result.failure();
             }
 
             try {
                 // TODO: If this was throttled etc, return false and it will be retried
-                JSONObject jsonResponse = new JSONObject(response.toString());
+                JSONObject jsonResponse = new JSONObject(response.body);
                 if (jsonResponse.getBoolean("foo")) {
                     return Result.failure();
                 }
@@ -100,17 +81,6 @@ public class Sender extends Worker {
             return Result.success();
         } catch (Exception ignored) {
             return Result.failure();
-        } finally {
-            if (rd != null) {
-                try {
-                    rd.close();
-                } catch (Exception ignored) {
-                }
-            }
-
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 }
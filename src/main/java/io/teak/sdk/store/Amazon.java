@@ -38,7 +38,7 @@ public class Amazon implements Unobfuscable, IStore, PurchasingListener {
                 if (event.eventType.equals(LifecycleEvent.Resumed)) {
                     PurchasingService.getUserData();
                 }
-            });
+            }, LifecycleEvent.Resumed);
         } catch (Exception e) {
             Teak.log.exception(e);
         }
@@ -1,8 +1,11 @@
 package io.teak.app.test;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import io.teak.sdk.TeakConfiguration;
 import io.teak.sdk.TeakEvent;
@@ -13,9 +16,21 @@ class TestHelpers {
         f.setAccessible(true);
         TeakEvent.EventListeners listeners = ((TeakEvent.EventListeners) f.get(null));
 
-        f = TeakEvent.EventListeners.class.getDeclaredField("eventListeners");
+        f = TeakEvent.EventListeners.class.getDeclaredField("registrations");
         f.setAccessible(true);
-        f.set(listeners, new ArrayList<TeakEvent.EventListener>());
+        ((List<?>) f.get(listeners)).clear();
+
+        // Dispatch only reads the snapshots, so empty those as well
+        for (String name : new String[] {"lanesForAllEventTypes", "allLanes"}) {
+            f = TeakEvent.EventListeners.class.getDeclaredField(name);
+            f.setAccessible(true);
+            f.set(listeners, Array.newInstance(f.getType().getComponentType(), 0));
+        }
+        for (String name : new String[] {"lanesByEventType", "stateListenersByEventType"}) {
+            f = TeakEvent.EventListeners.class.getDeclaredField(name);
+            f.setAccessible(true);
+            f.set(listeners, Collections.emptyMap());
+        }
     }
 
     static void resetTeakConfiguration() throws NoSuchFieldException, IllegalAccessException {
@@ -0,0 +1,58 @@
+package io.teak.app.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Timing and allocation helpers for the benchmarks.
+ *
+ * Benchmarks are skipped unless the tests are run with: ./gradlew test -Dteak.benchmarks=true
+ */
+class Benchmark {
+    static void assumeEnabled() {
+        assumeTrue("Benchmarks only run with -Dteak.benchmarks=true", Boolean.getBoolean("teak.benchmarks"));
+    }
+
+    /**
+     * @return Average nanoseconds per call, after a warm up of the same number of calls.
+     */
+    static double nanosPerOp(int iterations, Runnable runnable) {
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+
+        final long startedAt = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+        return (double) (System.nanoTime() - startedAt) / iterations;
+    }
+
+    /**
+     * @return Average bytes allocated by the calling thread per call, or -1 if the JVM can not
+     *         measure it.
+     */
+    static double bytesPerOp(int iterations, Runnable runnable) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return -1;
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return -1;
+
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            runnable.run();
+        }
+        return (double) (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / iterations;
+    }
+
+    static void report(String benchmark, String format, Object... args) {
+        System.out.println("[benchmark] " + benchmark + ": " + String.format(Locale.US, format, args));
+    }
+}
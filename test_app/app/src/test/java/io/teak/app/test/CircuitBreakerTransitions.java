@@ -0,0 +1,164 @@
+package io.teak.app.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.teak.sdk.core.CircuitBreaker;
+import io.teak.sdk.core.RequestDispatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CircuitBreakerTransitions {
+    private static final String Host = "gocarrot.com";
+
+    private RequestDispatcher dispatcher;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        this.dispatcher = new RequestDispatcher(1);
+        this.circuitBreaker = this.dispatcher.circuitBreakerFor(Host);
+    }
+
+    @Test
+    public void SameBreakerForSameHost() {
+        assertTrue(this.circuitBreaker == this.dispatcher.circuitBreakerFor(Host));
+        assertFalse(this.circuitBreaker == this.dispatcher.circuitBreakerFor("other.gocarrot.com"));
+    }
+
+    @Test
+    public void OpensAfterConsecutiveFailures() {
+        for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertEquals(0, this.circuitBreaker.onRequestCompleted(500, 0));
+            assertEquals(CircuitBreaker.State.Closed, this.circuitBreaker.getState());
+        }
+
+        assertEquals(CircuitBreaker.MINIMUM_OPEN_MS, this.circuitBreaker.onRequestCompleted(0, 0));
+        assertEquals(CircuitBreaker.State.Open, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void SuccessResetsFailureCount() {
+        for (int i = 1; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            this.circuitBreaker.onRequestCompleted(503, 0);
+        }
+        this.circuitBreaker.onRequestCompleted(200, 0);
+        this.circuitBreaker.onRequestCompleted(503, 0);
+        assertEquals(CircuitBreaker.State.Closed, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void ClientErrorsAreNotFailures() {
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD * 2; i++) {
+            this.circuitBreaker.onRequestCompleted(404, 0);
+        }
+        assertEquals(CircuitBreaker.State.Closed, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void TooManyRequestsOpensImmediately() {
+        assertEquals(CircuitBreaker.MINIMUM_OPEN_MS, this.circuitBreaker.onRequestCompleted(429, 0));
+        assertEquals(CircuitBreaker.State.Open, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void RetryAfterOpensForThatLong() {
+        assertEquals(30000, this.circuitBreaker.onRequestCompleted(503, 30000));
+        assertEquals(CircuitBreaker.State.Open, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void RetryAfterIsCapped() {
+        assertEquals(CircuitBreaker.MAXIMUM_RETRY_AFTER_MS, this.circuitBreaker.onRequestCompleted(503, TimeUnit.DAYS.toMillis(1)));
+    }
+
+    @Test
+    public void StaysOpenUntilRetryAfterElapses() throws InterruptedException {
+        this.circuitBreaker.onRequestCompleted(429, 100);
+        this.circuitBreaker.onRequestStarting();
+        assertEquals(CircuitBreaker.State.Open, this.circuitBreaker.getState());
+
+        Thread.sleep(150);
+        this.circuitBreaker.onRequestStarting();
+        assertEquals(CircuitBreaker.State.HalfOpen, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void HalfOpenSuccessCloses() throws InterruptedException {
+        this.circuitBreaker.onRequestCompleted(429, 50);
+        Thread.sleep(100);
+        this.circuitBreaker.onRequestStarting();
+
+        assertEquals(0, this.circuitBreaker.onRequestCompleted(200, 0));
+        assertEquals(CircuitBreaker.State.Closed, this.circuitBreaker.getState());
+
+        // Fully closed, so it takes the whole threshold to open again
+        this.circuitBreaker.onRequestCompleted(500, 0);
+        assertEquals(CircuitBreaker.State.Closed, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void HalfOpenFailureReopensWithLongerBackoff() throws InterruptedException {
+        this.circuitBreaker.onRequestCompleted(429, 50);
+        Thread.sleep(100);
+        this.circuitBreaker.onRequestStarting();
+        assertEquals(CircuitBreaker.State.HalfOpen, this.circuitBreaker.getState());
+
+        // A single failure is enough, and the backoff has doubled since the first open
+        assertEquals(CircuitBreaker.MINIMUM_OPEN_MS * 2, this.circuitBreaker.onRequestCompleted(500, 0));
+        assertEquals(CircuitBreaker.State.Open, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void InFlightFailureWhileOpenDoesNotExtendHold() {
+        final long openFor = this.circuitBreaker.onRequestCompleted(503, 30000);
+        final long remaining = this.circuitBreaker.onRequestCompleted(503, 0);
+        assertTrue(remaining > 0 && remaining <= openFor);
+        assertEquals(CircuitBreaker.State.Open, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void OpenHoldsTheLaneUntilClosed() throws InterruptedException {
+        this.circuitBreaker.onRequestCompleted(503, 30000);
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        this.dispatcher.execute(Host, ran::countDown);
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, this.dispatcher.getQueueDepth(Host));
+
+        // Other hosts are not held
+        final CountDownLatch otherRan = new CountDownLatch(1);
+        this.dispatcher.execute("other.gocarrot.com", otherRan::countDown);
+        assertTrue(otherRan.await(5, TimeUnit.SECONDS));
+
+        this.circuitBreaker.onRequestCompleted(200, 0);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(this.dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void HoldIsReleasedWhenRetryAfterElapses() throws InterruptedException {
+        this.circuitBreaker.onRequestCompleted(429, 100);
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        this.dispatcher.execute(Host, ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void ReportsState() {
+        assertEquals("closed", this.circuitBreaker.toMap().get("state"));
+        this.circuitBreaker.onRequestCompleted(429, 30000);
+        assertEquals("open", this.circuitBreaker.toMap().get("state"));
+        assertEquals(1L, this.circuitBreaker.toMap().get("times_opened"));
+        assertTrue(this.circuitBreaker.toMap().containsKey("open_for_ms"));
+    }
+}
@@ -0,0 +1,82 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.teak.sdk.Teak;
+import io.teak.sdk.TeakConfiguration;
+import io.teak.sdk.TeakEvent;
+import io.teak.sdk.event.AdvertisingInfoEvent;
+import io.teak.sdk.event.PushRegistrationEvent;
+import io.teak.sdk.event.UserIdEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DataCollectionOptOuts extends TeakUnitTest {
+    private static final String AdvertisingId = "38400000-8cf0-11bd-b23e-10b96e40000d";
+    private static final String FacebookAccessToken = "unit_test_facebook_access_token";
+    private static final String PushKey = "unit_test_push_key";
+
+    /**
+     * Post a UserIdEvent, and build the identifiers in the identify payload the way Session does,
+     * from a listener that sees the UserIdEvent at the same point Session's listener does.
+     */
+    private Map<String, Object> identifyPayloadFor(Teak.UserConfiguration userConfiguration) throws InterruptedException {
+        final TeakConfiguration teakConfiguration = TeakConfiguration.get();
+        final AtomicReference<Map<String, Object>> identifyPayload = new AtomicReference<>();
+        final CountDownLatch identified = new CountDownLatch(1);
+        TeakEvent.addEventListener(event -> {
+            final Map<String, Object> payload = new HashMap<>();
+            teakConfiguration.dataCollectionConfiguration.putIdentifiers(payload, teakConfiguration.deviceConfiguration, FacebookAccessToken);
+            identifyPayload.set(payload);
+            identified.countDown();
+        }, UserIdEvent.Type);
+
+        TeakEvent.postEvent(new AdvertisingInfoEvent(AdvertisingId, false));
+        TeakEvent.postEvent(new PushRegistrationEvent("fcm_push_key", PushKey, null));
+        TeakEvent.postEvent(new UserIdEvent("unit_test_user", userConfiguration));
+
+        assertTrue(identified.await(5, TimeUnit.SECONDS));
+        return identifyPayload.get();
+    }
+
+    @Test
+    public void IdentifiersAreSentWithoutOptOuts() throws InterruptedException {
+        final Map<String, Object> payload = identifyPayloadFor(new Teak.UserConfiguration());
+
+        assertEquals(false, payload.get("android_limit_ad_tracking"));
+        assertEquals(AdvertisingId, payload.get("android_ad_id"));
+        assertEquals(FacebookAccessToken, payload.get("access_token"));
+        assertEquals(PushKey, payload.get("fcm_push_key"));
+    }
+
+    @Test
+    public void OptOutsApplyBeforeIdentify() throws InterruptedException {
+        final Map<String, Object> payload = identifyPayloadFor(new Teak.UserConfiguration(null, null, true, true, true));
+
+        assertEquals(true, payload.get("android_limit_ad_tracking"));
+        assertEquals("", payload.get("android_ad_id"));
+        assertFalse(payload.containsKey("access_token"));
+        assertFalse(payload.containsKey("fcm_push_key"));
+    }
+
+    @Test
+    public void LimitAdTrackingApplies() throws InterruptedException {
+        TeakEvent.postEvent(new AdvertisingInfoEvent(AdvertisingId, true));
+        final Map<String, Object> payload = identifyPayloadFor(new Teak.UserConfiguration());
+
+        assertEquals(true, payload.get("android_limit_ad_tracking"));
+        assertEquals("", payload.get("android_ad_id"));
+        assertEquals(PushKey, payload.get("fcm_push_key"));
+    }
+}
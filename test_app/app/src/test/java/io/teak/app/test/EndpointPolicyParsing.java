@@ -0,0 +1,180 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.teak.sdk.configuration.EndpointPolicy;
+import io.teak.sdk.core.RequestDispatcher;
+import io.teak.sdk.json.JSONObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EndpointPolicyParsing {
+    private static Map<String, Map<String, EndpointPolicy>> compile(String json, List<String> errors) {
+        return EndpointPolicy.compile(new JSONObject(json).toMap(), errors);
+    }
+
+    @Test
+    public void CompilesValidConfiguration() {
+        final List<String> errors = new ArrayList<>();
+        final Map<String, Map<String, EndpointPolicy>> policies = compile("{" +
+                                                                              "\"gocarrot.com\": {" +
+                                                                              "  \"/me/events\": {" +
+                                                                              "    \"gzip\": true," +
+                                                                              "    \"priority\": \"bulk\"," +
+                                                                              "    \"retry\": {\"jitter\": 0.5, \"times\": [1, 2.5, 10]}," +
+                                                                              "    \"batch\": {\"count\": 50, \"time\": 5, \"maximum_wait_time\": 30, \"maximum_bytes\": 65536}" +
+                                                                              "  }," +
+                                                                              "  \"/games/1/users.json\": {\"single_flight\": true, \"priority\": \"interactive\"}" +
+                                                                              "}," +
+                                                                              "\"parsnip.gocarrot.com\": {" +
+                                                                              "  \"/batch\": {\"blackhole\": true, \"batch\": {\"shared_attributes\": true}}" +
+                                                                              "}" +
+                                                                              "}",
+            errors);
+        assertEquals(0, errors.size());
+
+        final EndpointPolicy events = policies.get("gocarrot.com").get("/me/events");
+        assertTrue(events.gzip);
+        assertFalse(events.blackhole);
+        assertEquals(RequestDispatcher.Priority.Bulk, events.priority);
+        assertNull(events.singleFlight);
+        assertEquals(0.5f, events.retry.jitter, 0.0001);
+        assertEquals(3, events.retry.getRetryCount());
+        assertEquals(2.5f, events.retry.getDelay(1), 0.0001);
+        assertEquals(50, events.batch.count);
+        assertEquals(5.0f, events.batch.time, 0.0001);
+        assertEquals(30.0f, events.batch.maximumWaitTime, 0.0001);
+        assertEquals(65536, events.batch.maximumBytes);
+        assertFalse(events.batch.sharedAttributes);
+
+        final EndpointPolicy users = policies.get("gocarrot.com").get("/games/1/users.json");
+        assertEquals(Boolean.TRUE, users.singleFlight);
+        assertEquals(RequestDispatcher.Priority.Interactive, users.priority);
+
+        final EndpointPolicy parsnip = policies.get("parsnip.gocarrot.com").get("/batch");
+        assertTrue(parsnip.blackhole);
+        assertTrue(parsnip.batch.sharedAttributes);
+        assertEquals(EndpointPolicy.Default.batch.count, parsnip.batch.count);
+    }
+
+    @Test
+    public void MissingSectionsUseDefaults() {
+        final List<String> errors = new ArrayList<>();
+        final EndpointPolicy policy = compile("{\"gocarrot.com\": {\"/me/events\": {}}}", errors).get("gocarrot.com").get("/me/events");
+        assertEquals(0, errors.size());
+
+        assertFalse(policy.blackhole);
+        assertFalse(policy.gzip);
+        assertNull(policy.priority);
+        assertNull(policy.singleFlight);
+        assertSame(EndpointPolicy.Default.retry, policy.retry);
+        assertSame(EndpointPolicy.Default.batch, policy.batch);
+    }
+
+    @Test
+    public void NullConfigurationCompilesToNothing() {
+        final List<String> errors = new ArrayList<>();
+        assertEquals(0, EndpointPolicy.compile(null, errors).size());
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void NumbersAndBooleansMayBeStrings() {
+        final List<String> errors = new ArrayList<>();
+        final EndpointPolicy policy = compile("{\"gocarrot.com\": {\"/me/events\": {" +
+                                                  "\"gzip\": \"TRUE\"," +
+                                                  "\"retry\": {\"jitter\": \"0.25\", \"times\": [\"3\"]}," +
+                                                  "\"batch\": {\"count\": \"20\", \"time\": \"1.5\"}" +
+                                                  "}}}",
+            errors).get("gocarrot.com").get("/me/events");
+        assertEquals(0, errors.size());
+
+        assertTrue(policy.gzip);
+        assertEquals(0.25f, policy.retry.jitter, 0.0001);
+        assertEquals(3.0f, policy.retry.getDelay(0), 0.0001);
+        assertEquals(20, policy.batch.count);
+        assertEquals(1.5f, policy.batch.time, 0.0001);
+    }
+
+    @Test
+    public void LastWriteWinsBatchesAreNeverFull() {
+        final List<String> errors = new ArrayList<>();
+        final EndpointPolicy policy = compile("{\"gocarrot.com\": {\"/me/profile\": {\"batch\": {\"lww\": true, \"count\": 5}}}}", errors).get("gocarrot.com").get("/me/profile");
+        assertEquals(0, errors.size());
+        assertEquals(Long.MAX_VALUE, policy.batch.count);
+    }
+
+    @Test
+    public void BadValuesAreReportedAndDefaulted() {
+        final List<String> errors = new ArrayList<>();
+        final EndpointPolicy policy = compile("{\"gocarrot.com\": {\"/me/events\": {" +
+                                                  "\"gzip\": \"sometimes\"," +
+                                                  "\"priority\": \"urgent\"," +
+                                                  "\"retry\": {\"jitter\": \"lots\", \"times\": [1, \"soon\"]}," +
+                                                  "\"batch\": {\"count\": \"2.5e\", \"maximum_bytes\": \"big\"}" +
+                                                  "}}}",
+            errors).get("gocarrot.com").get("/me/events");
+
+        assertEquals(errors.toString(), 6, errors.size());
+        assertTrue(errors.contains("gocarrot.com/me/events/gzip: expected a boolean, got 'sometimes'"));
+        assertTrue(errors.contains("gocarrot.com/me/events/priority: unknown priority 'urgent'"));
+        assertTrue(errors.contains("gocarrot.com/me/events/retry/jitter: expected a number, got 'lots'"));
+        assertTrue(errors.contains("gocarrot.com/me/events/retry/times/1: expected a number, got 'soon'"));
+        assertTrue(errors.contains("gocarrot.com/me/events/batch/count: expected an integer, got '2.5e'"));
+        assertTrue(errors.contains("gocarrot.com/me/events/batch/maximum_bytes: expected an integer, got 'big'"));
+
+        assertEquals(EndpointPolicy.Default.gzip, policy.gzip);
+        assertNull(policy.priority);
+        assertEquals(EndpointPolicy.Default.retry.jitter, policy.retry.jitter, 0.0001);
+        assertEquals(1.0f, policy.retry.getDelay(0), 0.0001);
+        assertEquals(10.0f, policy.retry.getDelay(1), 0.0001);
+        assertEquals(EndpointPolicy.Default.batch.count, policy.batch.count);
+        assertEquals(EndpointPolicy.Default.batch.maximumBytes, policy.batch.maximumBytes);
+    }
+
+    @Test
+    public void WrongShapesAreReportedAndSkipped() {
+        final List<String> errors = new ArrayList<>();
+        final Map<String, Map<String, EndpointPolicy>> policies = compile("{" +
+                                                                              "\"gocarrot.com\": {\"/me/events\": {\"retry\": [1, 2], \"batch\": {\"count\": 5}}, \"/me/purchase\": true}," +
+                                                                              "\"parsnip.gocarrot.com\": \"nope\"" +
+                                                                              "}",
+            errors);
+
+        assertEquals(errors.toString(), 3, errors.size());
+        assertTrue(errors.contains("gocarrot.com/me/events/retry: expected an object, got '[1, 2]'"));
+        assertTrue(errors.contains("gocarrot.com/me/purchase: expected an object, got 'true'"));
+        assertTrue(errors.contains("parsnip.gocarrot.com: expected an object, got 'nope'"));
+
+        assertFalse(policies.containsKey("parsnip.gocarrot.com"));
+        assertFalse(policies.get("gocarrot.com").containsKey("/me/purchase"));
+
+        // The rest of the endpoint is still used
+        final EndpointPolicy events = policies.get("gocarrot.com").get("/me/events");
+        assertSame(EndpointPolicy.Default.retry, events.retry);
+        assertEquals(5, events.batch.count);
+    }
+
+    @Test
+    public void CompiledTableIsImmutable() {
+        final List<String> errors = new ArrayList<>();
+        final Map<String, Map<String, EndpointPolicy>> policies = compile("{\"gocarrot.com\": {\"/me/events\": {}}}", errors);
+        try {
+            policies.get("gocarrot.com").put("/me/purchase", EndpointPolicy.Default);
+            fail("Policy table was modified");
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Map;
+
+import io.teak.sdk.core.Histogram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HistogramPercentiles {
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue("Expected about " + expected + ", got " + actual, Math.abs(actual - expected) <= expected * 0.125);
+    }
+
+    @Test
+    public void EmptyHistogram() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50.0));
+
+        final Map<String, Object> map = histogram.toMap();
+        assertEquals(0L, map.get("count"));
+        assertFalse(map.containsKey("p50"));
+    }
+
+    @Test
+    public void SmallValuesAreExact() {
+        final Histogram histogram = new Histogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+        assertEquals(8, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.0));
+        assertEquals(3, histogram.getPercentile(50.0));
+        assertEquals(7, histogram.getPercentile(100.0));
+    }
+
+    @Test
+    public void PercentilesAreWithinBucketAccuracy() {
+        final Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        for (double percentile : new double[] {1.0, 10.0, 50.0, 90.0, 99.0, 99.9}) {
+            assertWithinBucket((long) (100000 * percentile / 100.0), histogram.getPercentile(percentile));
+        }
+    }
+
+    @Test
+    public void PercentilesStayWithinRecordedRange() {
+        final Histogram histogram = new Histogram();
+        histogram.record(1000);
+        histogram.record(1001);
+
+        assertTrue(histogram.getPercentile(0.0) >= 1000);
+        assertTrue(histogram.getPercentile(100.0) <= 1001);
+    }
+
+    @Test
+    public void NegativeValuesCountAsZero() {
+        final Histogram histogram = new Histogram();
+        histogram.record(-50);
+        histogram.record(-1);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(100.0));
+        assertEquals(0L, histogram.toMap().get("min"));
+    }
+
+    @Test
+    public void LargeValuesAreClampedToTheLastBucket() {
+        final Histogram histogram = new Histogram();
+        histogram.record(1);
+        histogram.record(Histogram.MAXIMUM_VALUE * 100);
+        histogram.record(Histogram.MAXIMUM_VALUE * 100);
+
+        assertEquals(3, histogram.getCount());
+        assertWithinBucket(Histogram.MAXIMUM_VALUE, histogram.getPercentile(100.0));
+
+        // The exact value is still reported as the maximum
+        assertEquals(Histogram.MAXIMUM_VALUE * 100, histogram.toMap().get("max"));
+    }
+
+    @Test
+    public void ReportsSummary() {
+        final Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(20);
+        histogram.record(30);
+
+        final Map<String, Object> map = histogram.toMap();
+        assertEquals(3L, map.get("count"));
+        assertEquals(20.0, (Double) map.get("mean"), 0.001);
+        assertEquals(10L, map.get("min"));
+        assertEquals(30L, map.get("max"));
+        assertTrue(map.containsKey("p50") && map.containsKey("p90") && map.containsKey("p99"));
+    }
+
+    @Test
+    public void RollingWindowAgesOut() throws InterruptedException {
+        final Histogram histogram = new Histogram(200);
+        histogram.record(5);
+
+        // One window later, the previous window is still counted
+        Thread.sleep(250);
+        assertEquals(1, histogram.getCount());
+        histogram.record(6);
+        assertEquals(2, histogram.getCount());
+
+        // Two windows later, everything is gone
+        Thread.sleep(500);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50.0));
+    }
+}
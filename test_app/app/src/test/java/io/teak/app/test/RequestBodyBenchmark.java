@@ -0,0 +1,89 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.teak.sdk.event.TrackEventEvent;
+import io.teak.sdk.io.RequestBodyBuffer;
+import io.teak.sdk.json.JSONObject;
+
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestBodyBenchmark {
+    private static final int ITERATIONS = 2000;
+
+    private final SecretKeySpec keySpec = new SecretKeySpec("1f3850f794b9093864a0778009744d03".getBytes(), "HmacSHA256");
+
+    private static Map<String, Object> batchOf(int events) {
+        final List<Map<String, Object>> batch = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            batch.add(TrackEventEvent.payloadForEvent("action_" + i, "object_type", "object_instance_" + i, i));
+        }
+
+        final Map<String, Object> payload = new HashMap<>();
+        payload.put("batch", batch);
+        payload.put("sdk_version", "4.3.0");
+        payload.put("game_id", "1136371193060244");
+        payload.put("device_model", "Pixel 7");
+        return payload;
+    }
+
+    private Mac newMac() {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(this.keySpec);
+            return mac;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void SerializeAndSignBatch() {
+        Benchmark.assumeEnabled();
+
+        for (int events : new int[] {1, 10, 100}) {
+            final Map<String, Object> payload = batchOf(events);
+
+            // What Request.run and DefaultHttpRequest used to do: a String, then bytes for the
+            // hash, then bytes again for Content-Length and the body
+            final Runnable legacy = () -> {
+                final String body = new JSONObject(payload).toString();
+                this.newMac().doFinal(body.getBytes());
+                final byte[] contentLength = body.getBytes();
+                final byte[] sent = body.getBytes();
+                assertTrue(contentLength.length == sent.length);
+            };
+
+            // Serialized once into the thread's buffer, hashing as it is written
+            final Runnable buffered = () -> {
+                final RequestBodyBuffer buffer = RequestBodyBuffer.obtain();
+                final Mac mac = this.newMac();
+                buffer.writeJson(new JSONObject(payload), mac);
+                mac.doFinal();
+            };
+
+            final double legacyBytes = Benchmark.bytesPerOp(ITERATIONS, legacy);
+            final double bufferedBytes = Benchmark.bytesPerOp(ITERATIONS, buffered);
+            final double legacyNanos = Benchmark.nanosPerOp(ITERATIONS, legacy);
+            final double bufferedNanos = Benchmark.nanosPerOp(ITERATIONS, buffered);
+
+            Benchmark.report("request_body", "%d events: legacy %.0f B/op %.1f us/op, buffered %.0f B/op %.1f us/op",
+                events, legacyBytes, legacyNanos / 1000.0, bufferedBytes, bufferedNanos / 1000.0);
+
+            if (legacyBytes >= 0 && events >= 10) {
+                assertTrue(bufferedBytes < legacyBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.teak.sdk.core.RequestDispatcher;
+import io.teak.sdk.core.RequestDispatcher.Priority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestDispatcherOrdering {
+    /**
+     * Occupy a lane until the returned latch is counted down.
+     */
+    private static CountDownLatch block(RequestDispatcher dispatcher, String lane) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        dispatcher.execute(lane, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static Runnable recording(List<String> order, String name) {
+        return () -> order.add(name);
+    }
+
+    @Test
+    public void LaneRunsInSubmissionOrder() {
+        final RequestDispatcher dispatcher = new RequestDispatcher(3);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final int n = i;
+            dispatcher.execute("gocarrot.com", () -> order.add(n));
+            expected.add(i);
+        }
+
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(expected, order);
+    }
+
+    @Test
+    public void LaneRunsOneAtATime() {
+        final RequestDispatcher dispatcher = new RequestDispatcher(3);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximumRunning = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            dispatcher.execute("gocarrot.com", () -> {
+                maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.yield();
+                running.decrementAndGet();
+            });
+        }
+
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(1, maximumRunning.get());
+    }
+
+    @Test
+    public void LanesShareTheConcurrencyCap() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maximumRunning = new AtomicInteger();
+        for (int i = 0; i < 40; i++) {
+            dispatcher.execute("host" + (i % 4), () -> {
+                maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ignored) {
+                }
+                running.decrementAndGet();
+            });
+        }
+
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(2, maximumRunning.get());
+    }
+
+    @Test
+    public void SlowLaneDoesNotBlockOtherLanes() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(2);
+        final CountDownLatch release = block(dispatcher, "slow.gocarrot.com");
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        dispatcher.execute("gocarrot.com", ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void HigherPriorityRunsFirstWithinLane() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release = block(dispatcher, "gocarrot.com");
+
+        dispatcher.execute("gocarrot.com", Priority.Bulk, recording(order, "bulk 1"));
+        dispatcher.execute("gocarrot.com", Priority.Default, recording(order, "default 1"));
+        dispatcher.execute("gocarrot.com", Priority.Bulk, recording(order, "bulk 2"));
+        dispatcher.execute("gocarrot.com", Priority.Interactive, recording(order, "interactive 1"));
+        dispatcher.execute("gocarrot.com", Priority.Default, recording(order, "default 2"));
+        assertEquals(5, dispatcher.getQueueDepth("gocarrot.com"));
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("interactive 1", "default 1", "default 2", "bulk 1", "bulk 2"), order);
+    }
+
+    @Test
+    public void HigherPriorityLaneGoesNext() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release = block(dispatcher, "a.gocarrot.com");
+
+        dispatcher.execute("b.gocarrot.com", Priority.Bulk, recording(order, "bulk"));
+        dispatcher.execute("c.gocarrot.com", Priority.Interactive, recording(order, "interactive"));
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("interactive", "bulk"), order);
+    }
+
+    @Test
+    public void StarvedWorkIsPromoted() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release = block(dispatcher, "gocarrot.com");
+
+        dispatcher.execute("gocarrot.com", Priority.Bulk, recording(order, "bulk"));
+        Thread.sleep(RequestDispatcher.STARVATION_THRESHOLD_MS + 100);
+        dispatcher.execute("gocarrot.com", Priority.Interactive, recording(order, "interactive"));
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("bulk", "interactive"), order);
+    }
+
+    @Test
+    public void CancelPreventsQueuedWork() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        final CountDownLatch release = block(dispatcher, "gocarrot.com");
+
+        final AtomicInteger ran = new AtomicInteger();
+        final RequestDispatcher.Task task = dispatcher.execute("gocarrot.com", ran::incrementAndGet);
+        assertEquals(1, dispatcher.getQueueDepth("gocarrot.com"));
+        assertTrue(task.cancel());
+        assertTrue(task.isDone());
+        assertEquals(0, dispatcher.getQueueDepth("gocarrot.com"));
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+        assertFalse(task.cancel());
+    }
+
+    @Test
+    public void CancelFailsOnceStarted() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RequestDispatcher.Task task = dispatcher.execute("gocarrot.com", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertFalse(task.cancel());
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertTrue(task.isDone());
+    }
+
+    @Test
+    public void ScheduledWorkWaitsForItsDelay() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        final CountDownLatch ran = new CountDownLatch(1);
+        final long startedAt = System.nanoTime();
+        dispatcher.schedule("gocarrot.com", ran::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) >= 100);
+    }
+
+    @Test
+    public void ScheduledWorkCanBeCancelledDuringItsDelay() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        final AtomicInteger ran = new AtomicInteger();
+        final RequestDispatcher.Task task = dispatcher.schedule("gocarrot.com", ran::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(task.cancel());
+        Thread.sleep(200);
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void HeldLaneWaitsForRelease() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        dispatcher.hold("gocarrot.com", 1, TimeUnit.MINUTES);
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        dispatcher.execute("gocarrot.com", ran::countDown);
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+
+        dispatcher.release("gocarrot.com");
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void ReportsQueueTime() throws InterruptedException {
+        final RequestDispatcher dispatcher = new RequestDispatcher(1);
+        assertEquals(-1, RequestDispatcher.getCurrentTaskQueueTime());
+
+        final CountDownLatch release = block(dispatcher, "gocarrot.com");
+        final AtomicInteger queueTime = new AtomicInteger(-1);
+        dispatcher.execute("gocarrot.com", () -> queueTime.set((int) RequestDispatcher.getCurrentTaskQueueTime()));
+        Thread.sleep(100);
+
+        release.countDown();
+        assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        assertTrue(queueTime.get() >= 100);
+    }
+}
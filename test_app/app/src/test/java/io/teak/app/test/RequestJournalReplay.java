@@ -0,0 +1,146 @@
+package io.teak.app.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.teak.sdk.io.RequestJournal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestJournalReplay {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, Object> payload(Object value) {
+        final Map<String, Object> payload = new HashMap<>();
+        payload.put("value", value);
+        return payload;
+    }
+
+    private RequestJournal open(File file, long maximumBytes, long timeToLiveMs) {
+        return new RequestJournal(file, maximumBytes, timeToLiveMs);
+    }
+
+    @Test
+    public void UnacknowledgedEntriesReplayInOrder() {
+        final File file = new File(folder.getRoot(), "journal");
+        final RequestJournal journal = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS);
+
+        final List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(journal.append("gocarrot.com", "POST", "/me/events", payload(i)));
+        }
+        journal.acknowledge(Arrays.asList(ids.get(2), ids.get(7)));
+        assertTrue(journal.flush(5, TimeUnit.SECONDS));
+        assertEquals(8, journal.getPendingCount());
+
+        final List<RequestJournal.Entry> replayed = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS).takeEntriesFromPreviousRun();
+        assertEquals(8, replayed.size());
+
+        final List<Object> values = new ArrayList<>();
+        for (RequestJournal.Entry entry : replayed) {
+            assertEquals("gocarrot.com", entry.hostname);
+            assertEquals("POST", entry.method);
+            assertEquals("/me/events", entry.endpoint);
+            values.add(((Number) entry.payload.get("value")).intValue());
+        }
+        assertEquals(Arrays.<Object>asList(0, 1, 3, 4, 5, 6, 8, 9), values);
+    }
+
+    @Test
+    public void EntriesAreOnlyHandedBackOnce() {
+        final File file = new File(folder.getRoot(), "journal");
+        final RequestJournal journal = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS);
+        journal.append("gocarrot.com", "POST", "/me/events", payload(1));
+        assertTrue(journal.flush(5, TimeUnit.SECONDS));
+
+        final RequestJournal reopened = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS);
+        assertEquals(1, reopened.takeEntriesFromPreviousRun().size());
+        assertEquals(0, reopened.takeEntriesFromPreviousRun().size());
+    }
+
+    @Test
+    public void ReplayedEntriesCanBeAcknowledged() {
+        final File file = new File(folder.getRoot(), "journal");
+        final RequestJournal journal = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS);
+        journal.append("gocarrot.com", "POST", "/me/events", payload(1));
+        journal.append("gocarrot.com", "POST", "/me/events", payload(2));
+        assertTrue(journal.flush(5, TimeUnit.SECONDS));
+
+        // Replayed entries are renumbered, and must not collide with entries made in this run
+        final RequestJournal reopened = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS);
+        final List<RequestJournal.Entry> replayed = reopened.takeEntriesFromPreviousRun();
+        final long newId = reopened.append("gocarrot.com", "POST", "/me/events", payload(3));
+        for (RequestJournal.Entry entry : replayed) {
+            assertTrue(entry.id != newId);
+        }
+
+        reopened.acknowledge(Arrays.asList(replayed.get(0).id, newId));
+        assertTrue(reopened.flush(5, TimeUnit.SECONDS));
+
+        final List<RequestJournal.Entry> remaining = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS).takeEntriesFromPreviousRun();
+        assertEquals(1, remaining.size());
+        assertEquals(2, ((Number) remaining.get(0).payload.get("value")).intValue());
+    }
+
+    @Test
+    public void UnicodePayloadsRoundTrip() {
+        final File file = new File(folder.getRoot(), "journal");
+        final RequestJournal journal = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS);
+        final String value = "héllo 世界 😀";
+        journal.append("gocarrot.com", "POST", "/me/events", payload(value));
+        assertTrue(journal.flush(5, TimeUnit.SECONDS));
+
+        final List<RequestJournal.Entry> replayed = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, RequestJournal.DEFAULT_TIME_TO_LIVE_MS).takeEntriesFromPreviousRun();
+        assertEquals(1, replayed.size());
+        assertEquals(value, replayed.get(0).payload.get("value"));
+    }
+
+    @Test
+    public void CompactionKeepsTheFileWithinBudget() {
+        final File file = new File(folder.getRoot(), "journal");
+        final long maximumBytes = 4096;
+        final RequestJournal journal = open(file, maximumBytes, RequestJournal.DEFAULT_TIME_TO_LIVE_MS);
+
+        // Non-ASCII, so a budget counted in characters rather than bytes would be exceeded
+        final String value = "éééééééééé世世世世世";
+        long lastId = 0;
+        for (int i = 0; i < 200; i++) {
+            lastId = journal.append("gocarrot.com", "POST", "/me/events", payload(value));
+            if (i % 2 == 0) {
+                journal.acknowledge(Arrays.asList(lastId));
+            }
+            assertTrue(journal.flush(5, TimeUnit.SECONDS));
+            assertTrue("Journal is " + file.length() + " bytes", file.length() <= maximumBytes);
+        }
+
+        // The newest entries are kept, the oldest are dropped
+        final List<RequestJournal.Entry> replayed = open(file, maximumBytes, RequestJournal.DEFAULT_TIME_TO_LIVE_MS).takeEntriesFromPreviousRun();
+        assertTrue(replayed.size() > 0);
+        assertTrue(replayed.size() < 100);
+    }
+
+    @Test
+    public void ExpiredEntriesAreNotReplayed() throws InterruptedException {
+        final File file = new File(folder.getRoot(), "journal");
+        final RequestJournal journal = open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, 50);
+        journal.append("gocarrot.com", "POST", "/me/events", payload(1));
+        assertTrue(journal.flush(5, TimeUnit.SECONDS));
+
+        Thread.sleep(100);
+        assertEquals(0, open(file, RequestJournal.DEFAULT_MAXIMUM_BYTES, 50).takeEntriesFromPreviousRun().size());
+    }
+}
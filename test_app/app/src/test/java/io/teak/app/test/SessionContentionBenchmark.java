@@ -0,0 +1,88 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.teak.sdk.core.Session;
+import io.teak.sdk.event.TrackEventEvent;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Track event submission from several threads while the user id is not yet ready.
+ *
+ * There is no running SDK here, so there is no current session, and every event takes the
+ * path a game's startup does: a lock free check of the session's state, then the queue lock,
+ * then aggregation into the pending buffer. A separate thread keeps queueing other work, the
+ * way the rest of the SDK does while the session moves towards UserIdentified, which starts a
+ * new pending buffer each time.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SessionContentionBenchmark {
+    private static final int EVENTS_PER_THREAD = 100000;
+
+    // Distinct events, so the pending buffer aggregates instead of filling up and dropping
+    private static final int DISTINCT_EVENTS = 16;
+
+    private static double eventsPerSecond(int threads) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+                for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                    Session.whenUserIdIsReadyTrackEvent(TrackEventEvent.payloadForEvent("action_" + (i % DISTINCT_EVENTS), "object_type", null, i));
+                }
+                done.countDown();
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        final Thread otherWork = new Thread(() -> {
+            while (done.getCount() > 0) {
+                Session.whenUserIdIsReadyRun(session -> {});
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+            }
+        });
+
+        final long startedAt = System.nanoTime();
+        start.countDown();
+        otherWork.start();
+        assertTrue(done.await(120, TimeUnit.SECONDS));
+        final double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+
+        otherWork.join();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return threads * EVENTS_PER_THREAD / elapsedSeconds;
+    }
+
+    @Test
+    public void TrackEventsBeforeUserIdIsReady() throws InterruptedException {
+        Benchmark.assumeEnabled();
+
+        // Warm up
+        eventsPerSecond(2);
+
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            Benchmark.report("session_contention", "%d threads: %.0f events/s", threads, eventsPerSecond(threads));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.teak.sdk.io.RequestBodyBuffer;
+import io.teak.sdk.io.StandardAttributes;
+import io.teak.sdk.json.JSONObject;
+
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StandardAttributesBenchmark {
+    private static final int ITERATIONS = 1000;
+
+    private static final StandardAttributes attributes = StandardAttributes.Empty.with(standardAttributes());
+
+    private static Map<String, Object> standardAttributes() {
+        final Map<String, Object> values = new HashMap<>();
+        values.put("sdk_version", "4.3.0");
+        values.put("sdk_platform", "android_33");
+        values.put("app_version", "1.0");
+        values.put("app_version_name", "1.0.0");
+        values.put("game_id", "1136371193060244");
+        values.put("bundle_id", "io.teak.app.test");
+        values.put("appstore_name", "google_play");
+        values.put("device_manufacturer", "Google");
+        values.put("device_model", "Pixel 7");
+        values.put("device_fallback", "Google Pixel 7");
+        values.put("device_memory_class", 256);
+        values.put("device_id", "e5e9b6f6-0ab9-4f7b-9b39-3e7a3b1c1b70");
+        values.put("server_timezone", "America/Los_Angeles");
+        return values;
+    }
+
+    private static List<Map<String, Object>> eventsOf(int count) {
+        final List<Map<String, Object>> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final Map<String, Object> event = new HashMap<>();
+            event.put("name", "push_state");
+            event.put("notifications_enabled", true);
+            event.put("channel", "channel_" + i);
+            events.add(event);
+        }
+        return events;
+    }
+
+    @Test
+    public void SharedEnvelopeVersusPerEventSplice() {
+        Benchmark.assumeEnabled();
+
+        for (int count : new int[] {1, 10, 100}) {
+            final List<Map<String, Object>> events = eventsOf(count);
+            final int[] splicedLength = new int[1];
+            final int[] sharedLength = new int[1];
+
+            // The standard attributes repeated in every event
+            final Runnable spliced = () -> {
+                final List<Object> batch = new ArrayList<>();
+                for (Map<String, Object> event : events) {
+                    batch.add(attributes.splice(event));
+                }
+                final Map<String, Object> payload = new HashMap<>();
+                payload.put("batch", batch);
+
+                final RequestBodyBuffer buffer = RequestBodyBuffer.obtain();
+                buffer.writeJson(new JSONObject(payload), null);
+                splicedLength[0] = buffer.getLength();
+            };
+
+            // The standard attributes once, at the top level of the batch
+            final Runnable shared = () -> {
+                final Map<String, Object> payload = new HashMap<>();
+                payload.put("batch", events);
+                payload.put("attributes", attributes);
+
+                final RequestBodyBuffer buffer = RequestBodyBuffer.obtain();
+                buffer.writeJson(new JSONObject(payload), null);
+                sharedLength[0] = buffer.getLength();
+            };
+
+            final double splicedNanos = Benchmark.nanosPerOp(ITERATIONS, spliced);
+            final double sharedNanos = Benchmark.nanosPerOp(ITERATIONS, shared);
+
+            Benchmark.report("standard_attributes", "%d events: per event %d B %.1f us/op, shared %d B %.1f us/op",
+                count, splicedLength[0], splicedNanos / 1000.0, sharedLength[0], sharedNanos / 1000.0);
+
+            if (count >= 10) {
+                assertTrue(sharedLength[0] < splicedLength[0]);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.teak.sdk.io.RequestBodyBuffer;
+import io.teak.sdk.io.StandardAttributes;
+import io.teak.sdk.json.JSONObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StandardAttributesSplice {
+    private static Map<String, Object> map(Object... keysAndValues) {
+        final Map<String, Object> ret = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            ret.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return ret;
+    }
+
+    /**
+     * What Request used to do: copy the payload, then the attributes over it.
+     */
+    private static JSONObject merged(StandardAttributes attributes, Map<String, Object> payload) {
+        final Map<String, Object> merged = new HashMap<>(payload);
+        merged.putAll(attributes.values);
+
+        // Round trip, so numbers have the same types as on the other side of the comparison
+        return new JSONObject(new JSONObject(merged).toString());
+    }
+
+    private static void assertSpliceMatchesMerge(StandardAttributes attributes, Map<String, Object> payload) {
+        final JSONObject spliced = attributes.splice(payload);
+        final JSONObject parsed = new JSONObject(spliced.toString());
+        assertTrue(spliced.toString(), parsed.similar(merged(attributes, payload)));
+    }
+
+    @Test
+    public void EmptyIsVersionZero() {
+        assertEquals(0, StandardAttributes.Empty.version);
+        assertEquals(0, StandardAttributes.Empty.values.size());
+        assertEquals("{}", StandardAttributes.Empty.toJSONString());
+    }
+
+    @Test
+    public void WithMakesANewVersion() {
+        final StandardAttributes first = StandardAttributes.Empty.with(map("sdk_version", "4.3.0"));
+        final StandardAttributes second = first.with(map("game_id", "1136371193060244"));
+
+        assertEquals(1, first.version);
+        assertEquals(2, second.version);
+        assertEquals(1, first.values.size());
+        assertEquals(2, second.values.size());
+        assertEquals("4.3.0", second.values.get("sdk_version"));
+
+        // The older snapshot is untouched
+        assertFalse(first.values.containsKey("game_id"));
+        assertEquals(0, StandardAttributes.Empty.values.size());
+    }
+
+    @Test
+    public void WithReplacesValues() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("device_model", "Pixel 6")).with(map("device_model", "Pixel 7"));
+        assertEquals("Pixel 7", attributes.values.get("device_model"));
+        assertTrue(new JSONObject(attributes.toJSONString()).similar(new JSONObject(map("device_model", "Pixel 7"))));
+    }
+
+    @Test
+    public void ValuesCanNotBeModified() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("sdk_version", "4.3.0"));
+        try {
+            attributes.values.put("sdk_version", "0.0.0");
+            fail("Attributes were modified");
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    @Test
+    public void SpliceMatchesMerge() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("sdk_version", "4.3.0", "game_id", "1136371193060244", "device_memory_class", 256));
+        assertSpliceMatchesMerge(attributes, map("action_type", "level_up", "duration", 3L, "tags", Arrays.asList("a", "b"), "nested", map("x", 1)));
+    }
+
+    @Test
+    public void AttributesWin() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("sdk_version", "4.3.0"));
+        final Map<String, Object> payload = map("sdk_version", "0.0.0", "action_type", "level_up");
+
+        final JSONObject parsed = new JSONObject(attributes.splice(payload).toString());
+        assertEquals("4.3.0", parsed.get("sdk_version"));
+        assertEquals("level_up", parsed.get("action_type"));
+        assertEquals(2, parsed.length());
+
+        // The payload itself is not changed
+        assertEquals("0.0.0", payload.get("sdk_version"));
+    }
+
+    @Test
+    public void SpliceEmptyPayload() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("sdk_version", "4.3.0"));
+        assertSpliceMatchesMerge(attributes, new HashMap<>());
+        assertEquals(attributes.toJSONString(), attributes.splice(new HashMap<>()).toString());
+    }
+
+    @Test
+    public void SpliceEmptyAttributes() {
+        assertSpliceMatchesMerge(StandardAttributes.Empty, map("action_type", "level_up"));
+        assertEquals("{}", StandardAttributes.Empty.splice(new HashMap<>()).toString());
+    }
+
+    @Test
+    public void SpliceEscapesStrings() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("device_model", "\"Quoted\" {braces}, héllo"));
+        assertSpliceMatchesMerge(attributes, map("object_instance_id", "{\"not\": \"json\"} 世界 😀"));
+    }
+
+    @Test
+    public void SpliceIndentedOutput() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("sdk_version", "4.3.0"));
+        final JSONObject spliced = attributes.splice(map("sdk_version", "0.0.0", "action_type", "level_up"));
+        assertTrue(new JSONObject(spliced.toString(2)).similar(merged(attributes, map("action_type", "level_up"))));
+    }
+
+    @Test
+    public void SplicedIntoRequestBody() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("sdk_version", "4.3.0", "game_id", "1136371193060244"));
+        final Map<String, Object> payload = map("action_type", "level_up", "duration", 3L);
+
+        final RequestBodyBuffer buffer = RequestBodyBuffer.obtain();
+        buffer.writeJson(attributes.splice(payload), null);
+        final String body = new String(buffer.getBytes(), 0, buffer.getLength(), StandardCharsets.UTF_8);
+
+        assertTrue(body, new JSONObject(body).similar(merged(attributes, payload)));
+    }
+
+    @Test
+    public void SharedBetweenPayloads() {
+        final StandardAttributes attributes = StandardAttributes.Empty.with(map("sdk_version", "4.3.0"));
+        final JSONObject a = attributes.splice(map("n", 1));
+        final JSONObject b = attributes.splice(map("n", 2));
+
+        assertEquals(1, new JSONObject(a.toString()).getInt("n"));
+        assertEquals(2, new JSONObject(b.toString()).getInt("n"));
+    }
+}
@@ -0,0 +1,97 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.teak.sdk.TeakEvent;
+
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TeakEventBenchmark {
+    private static final int EVENTS = 50000;
+
+    // About as many as the SDK registers: Session, Request, RemoteConfiguration, PushState, TeakCore, TeakInstance
+    private static final int LISTENERS = 6;
+
+    private static class BenchmarkEvent extends TeakEvent {
+        BenchmarkEvent(String eventType) {
+            super(eventType);
+        }
+    }
+
+    /**
+     * Counts down on events of one type, and ignores the rest, like the SDK's listeners do.
+     */
+    private static class Listener implements TeakEvent.EventListener {
+        private final String eventType;
+        private final CountDownLatch latch;
+
+        Listener(String eventType, CountDownLatch latch) {
+            this.eventType = eventType;
+            this.latch = latch;
+        }
+
+        @Override
+        public void onNewEvent(TeakEvent event) {
+            if (this.eventType.equals(event.eventType)) {
+                this.latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * @return Events per second, from the first post until the interested listener has seen them all.
+     */
+    private static double eventsPerSecond(boolean typed, String eventType) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(EVENTS);
+        final List<TeakEvent.EventListener> listeners = new ArrayList<>();
+        for (int i = 0; i < LISTENERS; i++) {
+            final String listenerEventType = i == 0 ? eventType : eventType + ".other." + i;
+            final TeakEvent.EventListener listener = new Listener(listenerEventType, i == 0 ? latch : new CountDownLatch(0));
+            listeners.add(listener);
+            if (typed) {
+                TeakEvent.addEventListener(listener, listenerEventType);
+            } else {
+                TeakEvent.addEventListener(listener);
+            }
+        }
+
+        try {
+            final TeakEvent event = new BenchmarkEvent(eventType);
+            final long startedAt = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                TeakEvent.postEvent(event);
+            }
+            assertTrue(latch.await(60, TimeUnit.SECONDS));
+            return EVENTS / ((System.nanoTime() - startedAt) / 1e9);
+        } finally {
+            for (TeakEvent.EventListener listener : listeners) {
+                TeakEvent.removeEventListener(listener);
+            }
+        }
+    }
+
+    @Test
+    public void EventsPerSecond() throws InterruptedException {
+        Benchmark.assumeEnabled();
+
+        // Warm up both paths
+        eventsPerSecond(false, "benchmark.warmup.untyped");
+        eventsPerSecond(true, "benchmark.warmup.typed");
+
+        final double untyped = eventsPerSecond(false, "benchmark.untyped");
+        final double typed = eventsPerSecond(true, "benchmark.typed");
+
+        Benchmark.report("teak_event", "%d listeners, one interested: every listener %.0f events/s, by event type %.0f events/s",
+            LISTENERS, untyped, typed);
+
+        assertTrue(typed > untyped);
+    }
+}
@@ -0,0 +1,140 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import io.teak.sdk.core.TrackEventAggregator;
+import io.teak.sdk.event.TrackEventEvent;
+import io.teak.sdk.json.JSONObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrackEventAggregation {
+    @Test
+    public void SumsIntoMatchingRow() {
+        final TrackEventAggregator aggregator = new TrackEventAggregator();
+        final Map<String, Object> row = TrackEventEvent.payloadForEvent("a", "b", "c", 3);
+        aggregator.addRow(row);
+
+        assertTrue(aggregator.aggregate(TrackEventEvent.payloadForEvent("a", "b", "c", 4)));
+        aggregator.writeToRows();
+
+        assertEquals(7L, row.get(TrackEventEvent.DurationKey));
+        assertEquals(2L, row.get(TrackEventEvent.CountKey));
+        assertEquals(25L, row.get(TrackEventEvent.SumOfSquaresKey));
+    }
+
+    @Test
+    public void DifferentKeysDoNotMatch() {
+        final TrackEventAggregator aggregator = new TrackEventAggregator();
+        aggregator.addRow(TrackEventEvent.payloadForEvent("a", "b", "c", 1));
+
+        assertFalse(aggregator.hasRowFor(TrackEventEvent.payloadForEvent("a", "b", null, 1)));
+        assertFalse(aggregator.hasRowFor(TrackEventEvent.payloadForEvent("a", null, null, 1)));
+        assertFalse(aggregator.aggregate(TrackEventEvent.payloadForEvent("x", "b", "c", 1)));
+        assertTrue(aggregator.hasRowFor(TrackEventEvent.payloadForEvent("a", "b", "c", 42)));
+    }
+
+    @Test
+    public void NullKeysMatch() {
+        final TrackEventAggregator aggregator = new TrackEventAggregator();
+        final Map<String, Object> row = TrackEventEvent.payloadForEvent("a", null, null, 1);
+        aggregator.addRow(row);
+
+        assertTrue(aggregator.aggregate(TrackEventEvent.payloadForEvent("a", null, null, 1)));
+        aggregator.writeToRows();
+        assertEquals(2L, row.get(TrackEventEvent.CountKey));
+    }
+
+    @Test
+    public void OverflowSwitchesToBigInteger() {
+        final TrackEventAggregator aggregator = new TrackEventAggregator();
+        final Map<String, Object> row = TrackEventEvent.payloadForEvent("a", "b", "c", Long.MAX_VALUE - 1);
+        aggregator.addRow(row);
+
+        aggregator.aggregate(TrackEventEvent.payloadForEvent("a", "b", "c", 2));
+        aggregator.writeToRows();
+
+        final BigInteger expectedDuration = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+        assertEquals(expectedDuration, row.get(TrackEventEvent.DurationKey));
+
+        final BigInteger expectedSumOfSquares = BigInteger.valueOf(Long.MAX_VALUE - 1).pow(2).add(BigInteger.valueOf(4));
+        assertEquals(expectedSumOfSquares, row.get(TrackEventEvent.SumOfSquaresKey));
+    }
+
+    @Test
+    public void NegativeOverflowSwitchesToBigInteger() {
+        final TrackEventAggregator aggregator = new TrackEventAggregator();
+        final Map<String, Object> row = TrackEventEvent.payloadForEvent("a", "b", "c", Long.MIN_VALUE + 1);
+        aggregator.addRow(row);
+
+        aggregator.aggregate(TrackEventEvent.payloadForEvent("a", "b", "c", -2));
+        aggregator.writeToRows();
+
+        assertEquals(BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE), row.get(TrackEventEvent.DurationKey));
+    }
+
+    @Test
+    public void NonNumericValuesAreLeftAlone() {
+        final TrackEventAggregator aggregator = new TrackEventAggregator();
+        final Map<String, Object> row = TrackEventEvent.payloadForEvent("a", "b", "c", 1);
+        row.put(TrackEventEvent.DurationKey, "not a number");
+        aggregator.addRow(row);
+
+        aggregator.aggregate(TrackEventEvent.payloadForEvent("a", "b", "c", 5));
+        aggregator.writeToRows();
+
+        assertEquals("not a number", row.get(TrackEventEvent.DurationKey));
+        assertEquals(2L, row.get(TrackEventEvent.CountKey));
+    }
+
+    @Test
+    public void RowsCanBeHandedToAnotherAggregator() {
+        // Rows written by one aggregator, like PendingTrackEvents, must keep summing in the batch
+        final TrackEventAggregator pending = new TrackEventAggregator();
+        final Map<String, Object> pendingRow = TrackEventEvent.payloadForEvent("a", "b", "c", 3);
+        pending.addRow(pendingRow);
+        pending.aggregate(TrackEventEvent.payloadForEvent("a", "b", "c", 4));
+        pending.writeToRows();
+
+        final TrackEventAggregator batch = new TrackEventAggregator();
+        final Map<String, Object> batchRow = TrackEventEvent.payloadForEvent("a", "b", "c", 5);
+        batch.addRow(batchRow);
+        assertTrue(batch.aggregate(pendingRow));
+        batch.writeToRows();
+
+        assertEquals(12L, batchRow.get(TrackEventEvent.DurationKey));
+        assertEquals(3L, batchRow.get(TrackEventEvent.CountKey));
+        assertEquals(50L, batchRow.get(TrackEventEvent.SumOfSquaresKey));
+    }
+
+    @Test
+    public void SumOfSquaresIsSentAsAString() {
+        final TrackEventAggregator aggregator = new TrackEventAggregator();
+        final Map<String, Object> row = TrackEventEvent.payloadForEvent("a", "b", "c", 3);
+        final Map<String, Object> overflowRow = TrackEventEvent.payloadForEvent("x", "y", "z", Long.MAX_VALUE - 1);
+        aggregator.addRow(row);
+        aggregator.addRow(overflowRow);
+        aggregator.aggregate(TrackEventEvent.payloadForEvent("a", "b", "c", 4));
+        aggregator.aggregate(TrackEventEvent.payloadForEvent("x", "y", "z", 2));
+        aggregator.writeToRows();
+
+        // Summed as a long and as a BigInteger, both are serialized as base 10 strings
+        TrackEventEvent.stringifySumOfSquares(row);
+        TrackEventEvent.stringifySumOfSquares(overflowRow);
+        final JSONObject serialized = new JSONObject(new JSONObject(row).toString());
+        final JSONObject serializedOverflow = new JSONObject(new JSONObject(overflowRow).toString());
+
+        assertTrue(serialized.get(TrackEventEvent.SumOfSquaresKey) instanceof String);
+        assertEquals("25", serialized.get(TrackEventEvent.SumOfSquaresKey));
+        assertTrue(serializedOverflow.get(TrackEventEvent.SumOfSquaresKey) instanceof String);
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE - 1).pow(2).add(BigInteger.valueOf(4)).toString(10), serializedOverflow.get(TrackEventEvent.SumOfSquaresKey));
+    }
+}
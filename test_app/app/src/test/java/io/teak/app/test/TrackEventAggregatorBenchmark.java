@@ -0,0 +1,68 @@
+package io.teak.app.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.teak.sdk.core.TrackEventAggregator;
+import io.teak.sdk.event.TrackEventEvent;
+
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TrackEventAggregatorBenchmark {
+    private static final int ITERATIONS = 20000;
+
+    private static List<Map<String, Object>> rowsOf(int count) {
+        final List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(TrackEventEvent.payloadForEvent("action_" + i, "object_type", "object_instance_" + i, i));
+        }
+        return rows;
+    }
+
+    @Test
+    public void AggregateIntoBatch() {
+        Benchmark.assumeEnabled();
+
+        for (int rows : new int[] {10, 100, 1000}) {
+            final List<Map<String, Object>> batch = rowsOf(rows);
+            final TrackEventAggregator aggregator = new TrackEventAggregator();
+            for (Map<String, Object> row : batch) {
+                aggregator.addRow(row);
+            }
+
+            // The newest row, which is the worst case for a scan of the batch
+            final Map<String, Object> event = TrackEventEvent.payloadForEvent("action_" + (rows - 1), "object_type", "object_instance_" + (rows - 1), 1);
+
+            // What BatchedTrackEventRequest.add used to do: compare against every row, and rebox
+            // the sums on a match
+            final Runnable legacy = () -> {
+                for (Map<String, Object> row : batch) {
+                    if (TrackEventEvent.payloadEquals(row, event)) {
+                        row.put(TrackEventEvent.CountKey, ((Number) row.get(TrackEventEvent.CountKey)).longValue() + 1);
+                        break;
+                    }
+                }
+            };
+
+            final Runnable aggregated = () -> aggregator.aggregate(event);
+
+            final double legacyNanos = Benchmark.nanosPerOp(ITERATIONS, legacy);
+            final double aggregatedNanos = Benchmark.nanosPerOp(ITERATIONS, aggregated);
+            final double aggregatedBytes = Benchmark.bytesPerOp(ITERATIONS, aggregated);
+
+            Benchmark.report("track_event_aggregator", "%d rows: scan %.0f ns/op, aggregate %.0f ns/op %.0f B/op",
+                rows, legacyNanos, aggregatedNanos, aggregatedBytes);
+
+            // A hash lookup, so a large batch must not cost anything like a scan of it
+            if (rows >= 1000) {
+                assertTrue(aggregatedNanos < legacyNanos);
+            }
+        }
+    }
+}